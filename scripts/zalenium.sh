@@ -405,6 +405,10 @@ StartUp()
     -servlet de.zalando.ep.zalenium.servlet.ZaleniumConsoleServlet \
     -servlet de.zalando.ep.zalenium.servlet.ZaleniumResourceServlet \
     -servlet de.zalando.ep.zalenium.dashboard.DashboardCleanupServlet \
+    -servlet de.zalando.ep.zalenium.dashboard.DashboardTestsServlet \
+    -servlet de.zalando.ep.zalenium.servlet.CommandMetricsServlet \
+    -servlet de.zalando.ep.zalenium.servlet.ZaleniumMetricsServlet \
+    -servlet de.zalando.ep.zalenium.servlet.DrainServlet \
     -debug ${DEBUG_ENABLED} > logs/stdout.zalenium.hub.log &
     echo $! > ${PID_PATH_SELENIUM}
 
@@ -4,17 +4,44 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import de.zalando.ep.zalenium.util.CommonProxyUtilities;
+import de.zalando.ep.zalenium.util.Environment;
 import org.apache.commons.io.FileUtils;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
 import static java.nio.charset.StandardCharsets.*;
 
 /**
  * Class in charge of building the dashboard, using templates and coordinating video downloads.
+ *
+ * Each test is appended to an index of pages (videos/tests/page-N.html, oldest first, 100 tests per page) and counted
+ * in the summary (executedTestsInfo.json). The dashboard page loads the newest page and the summary, older pages are
+ * loaded on demand, so adding a test takes the same time with ten or fifty thousand tests in the dashboard. Tests are
+ * also added to a TestResultStore, which can be queried by test name, group, browser, proxy, result and time.
+ *
+ * The counters (DashboardCounters) and the position in the index are read from the summary once, kept in memory and
+ * written back every ZALENIUM_DASHBOARD_CHECKPOINT_SECONDS and when the hub stops. The proxies do not update the
+ * dashboard themselves, they hand the tests to the DashboardPublisher, which adds them in batches.
  */
 
 @SuppressWarnings({"ResultOfMethodCallIgnored", "WeakerAccess"})
@@ -24,17 +51,32 @@ public class Dashboard {
     public static final String LOGS_FOLDER_NAME = "logs";
     private static final String TEST_COUNT_FILE = "executedTestsInfo.json";
     private static final String TEST_LIST_FILE = "list.html";
+    private static final String INDEX_FOLDER_NAME = "tests";
+    private static final int TESTS_PER_INDEX_PAGE = 100;
     private static final String DASHBOARD_FILE = "dashboard.html";
     private static final String DASHBOARD_TEMPLATE_FILE = "dashboard_template.html";
-    private static final String EXECUTED_TESTS_FIELD = "executedTests";
-    private static final String EXECUTED_TESTS_WITH_VIDEO_FIELD = "executedTestsWithVideo";
+    private static final String INDEX_PAGES_FIELD = "indexPages";
+    private static final String TESTS_IN_LAST_INDEX_PAGE_FIELD = "testsInLastIndexPage";
+    private static final String STORED_TESTS_FIELD = "storedTests";
     private static final String ZALANDO_ICO = "zalando.ico";
     private static final String CSS_FOLDER = "/css";
     private static final String JS_FOLDER = "/js";
     private static final Logger LOGGER = Logger.getLogger(Dashboard.class.getName());
+    private static final Environment env = new Environment();
+    private static final long CHECKPOINT_SECONDS = Math.max(1,
+            env.getIntEnvVariable("ZALENIUM_DASHBOARD_CHECKPOINT_SECONDS", 5));
+    private static final DashboardCounters counters = new DashboardCounters();
     private static CommonProxyUtilities commonProxyUtilities = new CommonProxyUtilities();
-    private static int executedTests = 0;
-    private static int executedTestsWithVideo = 0;
+    private static int lastIndexPage = 0;
+    private static int testsInLastIndexPage = 0;
+    private static TestResultStore testResultStore;
+    private static File testResultStoreFolder;
+    // Tests of the store that are counted, the ones after them are replayed when the summary is loaded
+    private static int countedStoredTests = 0;
+    // Videos folder the summary was loaded from, and whether it was written there since
+    private static File summaryFolder;
+    private static boolean summaryWritten;
+    private static ScheduledExecutorService checkpointScheduler;
 
     public static String getCurrentLocalPath() {
         return commonProxyUtilities.currentLocalPath();
@@ -46,77 +88,79 @@ public class Dashboard {
 
     @VisibleForTesting
     public static int getExecutedTests() {
-        return executedTests;
+        return (int) counters.getExecutedTests();
     }
 
     @VisibleForTesting
     public static int getExecutedTestsWithVideo() {
-        return executedTestsWithVideo;
+        return (int) counters.getExecutedTestsWithVideo();
+    }
+
+    public static DashboardCounters getCounters() {
+        return counters;
     }
 
     @SuppressWarnings("SameParameterValue")
     @VisibleForTesting
     public static void setExecutedTests(int executedTests, int executedTestsWithVideo) {
-        Dashboard.executedTests = executedTests;
-        Dashboard.executedTestsWithVideo = executedTestsWithVideo;
+        counters.set(executedTests, executedTestsWithVideo);
     }
 
-    public static synchronized void updateDashboard(TestInformation testInformation) {
-        File testCountFile = new File(getLocalVideosPath(), TEST_COUNT_FILE);
+    /*
+        Adds a single test, errors are logged.
+     */
+    public static void updateDashboard(TestInformation testInformation) {
         try {
-            synchronizeExecutedTestsValues(testCountFile);
-
-            String testEntry = FileUtils.readFileToString(new File(getCurrentLocalPath(), "list_template.html"), UTF_8);
-            testEntry = testEntry.replace("{fileName}", testInformation.getFileName()).
-                    replace("{testName}", testInformation.getTestName()).
-                    replace("{dateAndTime}", commonProxyUtilities.getShortDateAndTime()).
-                    replace("{browserAndPlatform}", testInformation.getBrowserAndPlatform()).
-                    replace("{proxyName}", testInformation.getProxyName()).
-                    replace("{seleniumLogFileName}", testInformation.getSeleniumLogFileName()).
-                    replace("{browserDriverLogFileName}", testInformation.getBrowserDriverLogFileName());
-
-            File testList = new File(getLocalVideosPath(), TEST_LIST_FILE);
-            // Putting the new entry at the top
-            if (testList.exists()) {
-                String testListContents = FileUtils.readFileToString(testList, UTF_8);
-                testEntry = testEntry.concat("\n").concat(testListContents);
-            }
-            FileUtils.writeStringToFile(testList, testEntry, UTF_8);
-
-            executedTests++;
-            if (testInformation.isVideoRecorded()) {
-                executedTestsWithVideo++;
-            }
+            updateDashboard(Collections.singletonList(testInformation));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error while updating the dashboard.", e);
+        }
+    }
 
-            LOGGER.log(Level.FINE, "Test count: " + executedTests);
-            LOGGER.log(Level.FINE, "Test count with video: " + executedTestsWithVideo);
-            JsonObject testQuantities = new JsonObject();
-            testQuantities.addProperty(EXECUTED_TESTS_FIELD, executedTests);
-            testQuantities.addProperty(EXECUTED_TESTS_WITH_VIDEO_FIELD, executedTestsWithVideo);
-            FileUtils.writeStringToFile(testCountFile, testQuantities.toString(), UTF_8);
-
-            File dashboardHtml = new File(getLocalVideosPath(), DASHBOARD_FILE);
-            String dashboard = FileUtils.readFileToString(new File(getCurrentLocalPath(), DASHBOARD_TEMPLATE_FILE), UTF_8);
-            dashboard = dashboard.replace("{testList}", testEntry).
-                    replace("{executedTests}", String.valueOf(executedTests));
-            FileUtils.writeStringToFile(dashboardHtml, dashboard, UTF_8);
-
-            File zalandoIco = new File(getLocalVideosPath(), ZALANDO_ICO);
-            if (!zalandoIco.exists()) {
-                FileUtils.copyFile(new File(getCurrentLocalPath(), ZALANDO_ICO), zalandoIco);
-            }
+    /*
+        Adds the tests to the index and counts them, with one write to the TestResultStore and one to each index page.
+        Tests are appended to the last page of the index, so the cost does not depend on the number of tests already
+        in the dashboard.
 
-            File cssFolder = new File(getLocalVideosPath() + CSS_FOLDER);
-            File jsFolder = new File(getLocalVideosPath() + JS_FOLDER);
+        The store is written first and works as a write-ahead log: the summary keeps how many stored tests it counts,
+        the tests stored after that are counted and added to the index again when the summary is loaded after a crash.
+        Errors are thrown, so the caller knows the tests are not in the dashboard.
+     */
+    public static synchronized void updateDashboard(List<TestInformation> tests) throws IOException {
+        if (tests.isEmpty()) {
+            return;
+        }
+        File testCountFile = new File(getLocalVideosPath(), TEST_COUNT_FILE);
+        try {
+            loadSummary(testCountFile);
+            migrateTestList();
 
-            if (!cssFolder.exists()) {
-                FileUtils.copyDirectory(new File(getCurrentLocalPath() + CSS_FOLDER), cssFolder);
+            String dateAndTime = commonProxyUtilities.getShortDateAndTime();
+            List<JsonObject> newTests = new ArrayList<>();
+            for (TestInformation testInformation : tests) {
+                if (lastIndexPage == 0 || testsInLastIndexPage >= TESTS_PER_INDEX_PAGE) {
+                    lastIndexPage++;
+                    testsInLastIndexPage = 0;
+                }
+                testsInLastIndexPage++;
+                long videoBytes = sizeOf(new File(getLocalVideosPath(), testInformation.getFileName()));
+                long bytes = videoBytes + sizeOf(new File(getLocalVideosPath(), testInformation.getLogsFolderName()));
+                newTests.add(TestResultStore.newTest(testInformation, dateAndTime, lastIndexPage, videoBytes, bytes));
             }
-            if (!jsFolder.exists()) {
-                FileUtils.copyDirectory(new File(getCurrentLocalPath() + JS_FOLDER), jsFolder);
+            int storedTests = addToTestResultStore(newTests);
+            // The entries are in the index before the summary counts them
+            appendToIndex(newTests);
+            newTests.forEach(counters::count);
+            countedStoredTests = storedTests;
+
+            LOGGER.log(Level.FINE, "Test count: " + counters.getExecutedTests());
+            LOGGER.log(Level.FINE, "Test count with video: " + counters.getExecutedTestsWithVideo());
+            // Later changes are written by the checkpoints
+            if (!testCountFile.exists()) {
+                writeSummary(testCountFile);
             }
-        } catch (IOException e) {
-            LOGGER.log(Level.WARNING, "Error while updating the dashboard.", e);
+        } finally {
+            DashboardRetention.start();
         }
     }
 
@@ -131,13 +175,17 @@ public class Dashboard {
             FileUtils.forceDelete(file);
         }
         FileUtils.forceDelete(logsFolder);
-        FileUtils.forceDelete(testList);
+        FileUtils.deleteQuietly(testList);
+        closeTestResultStore();
+        FileUtils.deleteQuietly(new File(getLocalVideosPath(), INDEX_FOLDER_NAME));
         FileUtils.forceDelete(testCountFile);
         FileUtils.forceDelete(dashboardHtml);
-        String dashboard = FileUtils.readFileToString(new File(getCurrentLocalPath(), DASHBOARD_TEMPLATE_FILE), UTF_8);
-        dashboard = dashboard.replace("{testList}", "").
-                replace("{executedTests}", "0");
-        FileUtils.writeStringToFile(dashboardHtml, dashboard, UTF_8);
+        counters.reset();
+        lastIndexPage = 0;
+        testsInLastIndexPage = 0;
+        countedStoredTests = 0;
+        summaryWritten = false;
+        writeDashboardPage(dashboardHtml, new File(getCurrentLocalPath(), DASHBOARD_TEMPLATE_FILE));
     }
 
     @VisibleForTesting
@@ -146,17 +194,344 @@ public class Dashboard {
             JsonObject executedTestData = new JsonParser()
                     .parse(FileUtils.readFileToString(testCountFile, UTF_8))
                     .getAsJsonObject();
-            String executedTestsInFile = executedTestData.get(EXECUTED_TESTS_FIELD).getAsString();
-            String executedTestsWithVideoInFile = executedTestData.get(EXECUTED_TESTS_WITH_VIDEO_FIELD).getAsString();
+            counters.load(executedTestData);
+            // Summaries written before the index existed do not have these fields
+            lastIndexPage = executedTestData.has(INDEX_PAGES_FIELD) ?
+                    executedTestData.get(INDEX_PAGES_FIELD).getAsInt() : 0;
+            testsInLastIndexPage = executedTestData.has(TESTS_IN_LAST_INDEX_PAGE_FIELD) ?
+                    executedTestData.get(TESTS_IN_LAST_INDEX_PAGE_FIELD).getAsInt() : 0;
+            // Summaries written before the store was replayed count all the stored tests
+            countedStoredTests = executedTestData.has(STORED_TESTS_FIELD) ?
+                    executedTestData.get(STORED_TESTS_FIELD).getAsInt() : Integer.MAX_VALUE;
+        } else {
+            counters.reset();
+            lastIndexPage = 0;
+            testsInLastIndexPage = 0;
+            countedStoredTests = 0;
+        }
+    }
+
+    /*
+        Writes the summary when the counters changed since the last time. The file is replaced in one step, so a
+        crash leaves the previous summary.
+     */
+    public static synchronized void checkpoint() {
+        // The folder is gone, e.g. removed by hand, the next test loads the summary again
+        if (summaryFolder == null || !summaryFolder.exists() || !counters.takeChanged()) {
+            return;
+        }
+        try {
+            writeSummary(new File(summaryFolder, TEST_COUNT_FILE));
+        } catch (IOException e) {
+            counters.markChanged();
+            LOGGER.log(Level.WARNING, "Error while writing the dashboard summary.", e);
+        }
+    }
+
+    /*
+        The summary is read once per videos folder, and again when it was removed after being written (e.g. the
+        folder was emptied by hand).
+     */
+    private static void loadSummary(File testCountFile) throws IOException {
+        File videosFolder = testCountFile.getParentFile();
+        if (videosFolder.equals(summaryFolder) && !(summaryWritten && !testCountFile.exists())) {
+            return;
+        }
+        synchronizeExecutedTestsValues(testCountFile);
+        summaryFolder = videosFolder;
+        summaryWritten = testCountFile.exists();
+        replayStoredTests();
+        copyStaticAssets();
+        if (checkpointScheduler == null) {
+            checkpointScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "DashboardCheckpoint");
+                thread.setDaemon(true);
+                return thread;
+            });
+            checkpointScheduler.scheduleWithFixedDelay(Dashboard::checkpoint, CHECKPOINT_SECONDS, CHECKPOINT_SECONDS,
+                    TimeUnit.SECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(Dashboard::checkpoint, "DashboardCheckpointOnShutdown"));
+        }
+    }
+
+    /*
+        The dashboard page, icon, css and js are copied when the videos folder is loaded, not checked for every test.
+        The page is written again when its template is newer.
+     */
+    private static void copyStaticAssets() throws IOException {
+        File dashboardHtml = new File(getLocalVideosPath(), DASHBOARD_FILE);
+        File dashboardTemplate = new File(getCurrentLocalPath(), DASHBOARD_TEMPLATE_FILE);
+        if (!dashboardHtml.exists() || dashboardHtml.lastModified() < dashboardTemplate.lastModified()) {
+            writeDashboardPage(dashboardHtml, dashboardTemplate);
+        }
+
+        File zalandoIco = new File(getLocalVideosPath(), ZALANDO_ICO);
+        if (!zalandoIco.exists()) {
+            FileUtils.copyFile(new File(getCurrentLocalPath(), ZALANDO_ICO), zalandoIco);
+        }
+
+        File cssFolder = new File(getLocalVideosPath() + CSS_FOLDER);
+        File jsFolder = new File(getLocalVideosPath() + JS_FOLDER);
+
+        if (!cssFolder.exists()) {
+            FileUtils.copyDirectory(new File(getCurrentLocalPath() + CSS_FOLDER), cssFolder);
+        }
+        if (!jsFolder.exists()) {
+            FileUtils.copyDirectory(new File(getCurrentLocalPath() + JS_FOLDER), jsFolder);
+        }
+    }
+
+    /*
+        Store of the tests in the dashboard, in the index folder of the current videos folder. It is opened again when
+        its files were removed (e.g. the videos folder was cleaned up by hand).
+     */
+    public static synchronized TestResultStore getTestResultStore() throws IOException {
+        File folder = new File(getLocalVideosPath(), INDEX_FOLDER_NAME);
+        if (testResultStore == null || !folder.equals(testResultStoreFolder) ||
+                !new File(folder, TestResultStore.DATA_FILE_NAME).exists()) {
+            closeTestResultStore();
+            testResultStore = TestResultStore.open(folder);
+            testResultStoreFolder = folder;
+        }
+        return testResultStore;
+    }
+
+    /*
+        The dashboard pages do not depend on the store, tests that cannot be stored are still added to them. Returns
+        the stored tests to count once the tests are in the index.
+     */
+    private static int addToTestResultStore(List<JsonObject> tests) {
+        try {
+            TestResultStore store = getTestResultStore();
+            store.addAll(tests);
+            return store.size();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error while adding the tests to the result store.", e);
+            return countedStoredTests;
+        }
+    }
+
+    /*
+        Appends the entries of the tests, rendered straight into each index page, which is opened once.
+     */
+    private static void appendToIndex(List<JsonObject> tests) throws IOException {
+        DashboardTemplate listTemplate = getListTemplate();
+        Map<Integer, List<JsonObject>> testsByIndexPage = new TreeMap<>();
+        for (JsonObject test : tests) {
+            testsByIndexPage.computeIfAbsent(test.get("indexPage").getAsInt(), page -> new ArrayList<>()).add(test);
+        }
+        for (Map.Entry<Integer, List<JsonObject>> pageTests : testsByIndexPage.entrySet()) {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    FileUtils.openOutputStream(getIndexPage(pageTests.getKey()), true), UTF_8))) {
+                for (JsonObject test : pageTests.getValue()) {
+                    listTemplate.render(placeholder -> getEntryValue(test, placeholder), writer);
+                    writer.write('\n');
+                }
+            }
+        }
+    }
+
+    /*
+        Tests stored after the last summary was written are counted, and added to the index when their entry did not
+        make it there. The position in the index is taken from the pages.
+     */
+    private static void replayStoredTests() throws IOException {
+        TestResultStore store = getTestResultStore();
+        if (countedStoredTests >= store.size()) {
+            countedStoredTests = store.size();
+            return;
+        }
+        DashboardTemplate listTemplate = getListTemplate();
+        Map<Integer, String> indexPages = new HashMap<>();
+        int replayed = 0;
+        for (int id = countedStoredTests; id < store.size(); id++) {
+            JsonObject test = store.get(id);
+            // Removed by the retention, so it was already in the index
+            if (test == null) {
+                continue;
+            }
+            int page = test.get("indexPage").getAsInt();
+            String entry = listTemplate.render(placeholder -> getEntryValue(test, placeholder));
+            String contents = indexPages.computeIfAbsent(page, Dashboard::readIndexPage);
+            if (!contents.contains(entry.trim())) {
+                FileUtils.writeStringToFile(getIndexPage(page), entry.concat("\n"), UTF_8, true);
+                indexPages.put(page, contents.concat(entry).concat("\n"));
+            }
+            counters.count(test);
+            lastIndexPage = Math.max(lastIndexPage, page);
+            replayed++;
+        }
+        testsInLastIndexPage = splitEntries(readIndexPage(lastIndexPage)).size();
+        countedStoredTests = store.size();
+        LOGGER.log(Level.INFO, "{0} tests replayed from the result store", replayed);
+    }
+
+    private static String readIndexPage(int page) {
+        File indexPage = getIndexPage(page);
+        try {
+            return indexPage.exists() ? FileUtils.readFileToString(indexPage, UTF_8) : "";
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error while reading " + indexPage, e);
+            return "";
+        }
+    }
+
+    private static DashboardTemplate getListTemplate() throws IOException {
+        return DashboardTemplate.load(new File(getCurrentLocalPath(), "list_template.html"));
+    }
+
+    /*
+        Value of a list_template.html placeholder, taken from the test as stored. Tests stored by older versions do
+        not have all the values.
+     */
+    private static String getEntryValue(JsonObject test, String placeholder) {
+        String field = "proxyName".equals(placeholder) ? TestResultStore.Field.PROXY.getJsonName() : placeholder;
+        return test.has(field) && !test.get(field).isJsonNull() ? test.get(field).getAsString() : "";
+    }
+
+    private static long sizeOf(File file) {
+        return file.exists() ? FileUtils.sizeOf(file) : 0;
+    }
+
+    private static void closeTestResultStore() {
+        if (testResultStore != null) {
             try {
-                executedTests = Integer.parseInt(executedTestsInFile);
-                executedTestsWithVideo = Integer.parseInt(executedTestsWithVideoInFile);
-            } catch (Exception e) {
+                testResultStore.close();
+            } catch (IOException e) {
                 LOGGER.log(Level.FINE, e.toString(), e);
             }
-        } else {
-            executedTests = 0;
-            executedTestsWithVideo = 0;
+            testResultStore = null;
+            testResultStoreFolder = null;
+        }
+    }
+
+    @VisibleForTesting
+    static File getIndexPage(int page) {
+        return new File(getLocalVideosPath(), INDEX_FOLDER_NAME + "/page-" + page + ".html");
+    }
+
+    @VisibleForTesting
+    static int getLastIndexPage() {
+        return lastIndexPage;
+    }
+
+    /*
+        As after a restart, the summary and the store are loaded again by the next update.
+     */
+    @VisibleForTesting
+    static synchronized void reload() {
+        summaryFolder = null;
+        closeTestResultStore();
+    }
+
+    /*
+        Takes the tests with the given videos out of the index pages, e.g. when the retention removed them.
+     */
+    public static synchronized void removeFromIndex(Map<Integer, Set<String>> videosByIndexPage) throws IOException {
+        for (Map.Entry<Integer, Set<String>> videos : videosByIndexPage.entrySet()) {
+            File indexPage = getIndexPage(videos.getKey());
+            if (!indexPage.exists()) {
+                continue;
+            }
+            StringBuilder keptEntries = new StringBuilder();
+            for (String entry : splitEntries(FileUtils.readFileToString(indexPage, UTF_8))) {
+                if (videos.getValue().stream().noneMatch(video -> entry.contains("data-video=\"" + video + "\""))) {
+                    keptEntries.append(entry).append("\n");
+                }
+            }
+            File temporaryFile = new File(indexPage.getPath() + ".tmp");
+            FileUtils.writeStringToFile(temporaryFile, keptEntries.toString(), UTF_8);
+            moveAtomically(temporaryFile, indexPage);
+        }
+    }
+
+    /*
+        Dashboards from before the index kept all tests in list.html, newest first. They are moved to the index once,
+        oldest first like the tests added later.
+     */
+    private static void migrateTestList() throws IOException {
+        File testList = new File(getLocalVideosPath(), TEST_LIST_FILE);
+        if (!testList.exists()) {
+            return;
+        }
+        List<String> entries = splitEntries(FileUtils.readFileToString(testList, UTF_8));
+        Collections.reverse(entries);
+        for (String entry : entries) {
+            if (lastIndexPage == 0 || testsInLastIndexPage >= TESTS_PER_INDEX_PAGE) {
+                lastIndexPage++;
+                testsInLastIndexPage = 0;
+            }
+            FileUtils.writeStringToFile(getIndexPage(lastIndexPage), entry.concat("\n"), UTF_8, true);
+            testsInLastIndexPage++;
+        }
+        writeSummary(new File(getLocalVideosPath(), TEST_COUNT_FILE));
+        FileUtils.forceDelete(testList);
+        LOGGER.log(Level.INFO, "{0} tests moved from {1} to the dashboard index", new Object[]{entries.size(),
+                TEST_LIST_FILE});
+    }
+
+    /*
+        Entries as written with list_template.html, each one starts with what the template has before its first
+        placeholder.
+     */
+    private static List<String> splitEntries(String contents) throws IOException {
+        String entryStart = getListTemplate().getText().trim().split("\n", 2)[0].split("\\{", 2)[0].trim();
+        List<String> entries = new ArrayList<>();
+        if (entryStart.isEmpty()) {
+            if (!contents.trim().isEmpty()) {
+                entries.add(contents.trim());
+            }
+            return entries;
+        }
+        for (String entry : contents.split("(?=" + Pattern.quote(entryStart) + ")")) {
+            if (!entry.trim().isEmpty()) {
+                entries.add(entry.trim());
+            }
+        }
+        return entries;
+    }
+
+    /*
+        The summary is replaced in one step, the dashboard page reads it while tests are being added.
+     */
+    private static void writeSummary(File testCountFile) throws IOException {
+        JsonObject testQuantities = new JsonObject();
+        counters.addTo(testQuantities);
+        testQuantities.addProperty(INDEX_PAGES_FIELD, lastIndexPage);
+        testQuantities.addProperty(TESTS_IN_LAST_INDEX_PAGE_FIELD, testsInLastIndexPage);
+        testQuantities.addProperty(STORED_TESTS_FIELD, countedStoredTests);
+        File temporaryFile = new File(testCountFile.getPath() + ".tmp");
+        FileUtils.writeStringToFile(temporaryFile, testQuantities.toString(), UTF_8);
+        moveAtomically(temporaryFile, testCountFile);
+        summaryWritten = true;
+    }
+
+    private static void moveAtomically(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /*
+        The page loads the tests from the index, it only needs to be written again when the template changes.
+     */
+    private static void writeDashboardPage(File dashboardHtml, File dashboardTemplate) throws IOException {
+        String executedTests = String.valueOf(counters.getExecutedTests());
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(FileUtils.openOutputStream(dashboardHtml),
+                UTF_8))) {
+            DashboardTemplate.load(dashboardTemplate).render(placeholder -> {
+                switch (placeholder) {
+                    case "testList":
+                        return "";
+                    case "executedTests":
+                        return executedTests;
+                    default:
+                        return null;
+                }
+            }, writer);
         }
     }
 
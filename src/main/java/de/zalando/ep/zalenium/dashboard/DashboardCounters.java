@@ -0,0 +1,184 @@
+package de.zalando.ep.zalenium.dashboard;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Counters of the tests in the dashboard, tests removed by the retention are taken out of them. They are kept in
+ * memory and updated without locks. They are loaded from the summary (executedTestsInfo.json) once per videos folder,
+ * and added to it when Dashboard writes a checkpoint.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DashboardCounters {
+
+    private static final Logger LOGGER = Logger.getLogger(DashboardCounters.class.getName());
+    static final String EXECUTED_TESTS_FIELD = "executedTests";
+    static final String EXECUTED_TESTS_WITH_VIDEO_FIELD = "executedTestsWithVideo";
+    private static final String FAILED_TESTS_FIELD = "failedTests";
+    private static final String VIDEO_BYTES_FIELD = "videoBytes";
+    private static final String TESTS_BY_BROWSER_FIELD = "testsByBrowser";
+    private static final String TESTS_BY_PROXY_FIELD = "testsByProxy";
+
+    private final LongAdder executedTests = new LongAdder();
+    private final LongAdder executedTestsWithVideo = new LongAdder();
+    private final LongAdder failedTests = new LongAdder();
+    private final LongAdder videoBytes = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> testsByBrowser = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> testsByProxy = new ConcurrentHashMap<>();
+    // Set when the counters changed after the last checkpoint
+    private final AtomicBoolean changed = new AtomicBoolean();
+
+    /*
+        Counts a test as stored in the TestResultStore, so tests replayed from the store are counted the same way.
+     */
+    public void count(JsonObject test) {
+        executedTests.increment();
+        if (test.has("videoRecorded") && test.get("videoRecorded").getAsBoolean()) {
+            executedTestsWithVideo.increment();
+        }
+        if ("failed".equals(getString(test, TestResultStore.Field.RESULT.getJsonName()))) {
+            failedTests.increment();
+        }
+        videoBytes.add(getLong(test, VIDEO_BYTES_FIELD));
+        increment(testsByBrowser, getString(test, TestResultStore.Field.BROWSER.getJsonName()));
+        increment(testsByProxy, getString(test, TestResultStore.Field.PROXY.getJsonName()));
+        changed.set(true);
+    }
+
+    /*
+        Takes a test removed from the dashboard (see DashboardRetention) out of the counters. Counters loaded from
+        summaries that did not have them do not go below 0.
+     */
+    public void remove(JsonObject test) {
+        decrement(executedTests, 1);
+        if (test.has("videoRecorded") && test.get("videoRecorded").getAsBoolean()) {
+            decrement(executedTestsWithVideo, 1);
+        }
+        if ("failed".equals(getString(test, TestResultStore.Field.RESULT.getJsonName()))) {
+            decrement(failedTests, 1);
+        }
+        decrement(videoBytes, getLong(test, VIDEO_BYTES_FIELD));
+        decrement(testsByBrowser.get(String.valueOf(getString(test, TestResultStore.Field.BROWSER.getJsonName()))), 1);
+        decrement(testsByProxy.get(String.valueOf(getString(test, TestResultStore.Field.PROXY.getJsonName()))), 1);
+        changed.set(true);
+    }
+
+    public long getExecutedTests() {
+        return executedTests.sum();
+    }
+
+    public long getExecutedTestsWithVideo() {
+        return executedTestsWithVideo.sum();
+    }
+
+    public long getFailedTests() {
+        return failedTests.sum();
+    }
+
+    public long getVideoBytes() {
+        return videoBytes.sum();
+    }
+
+    public JsonObject toJson() {
+        JsonObject counters = new JsonObject();
+        addTo(counters);
+        return counters;
+    }
+
+    void set(long executedTests, long executedTestsWithVideo) {
+        reset();
+        this.executedTests.add(executedTests);
+        this.executedTestsWithVideo.add(executedTestsWithVideo);
+    }
+
+    void reset() {
+        executedTests.reset();
+        executedTestsWithVideo.reset();
+        failedTests.reset();
+        videoBytes.reset();
+        testsByBrowser.clear();
+        testsByProxy.clear();
+        changed.set(true);
+    }
+
+    /*
+        Summaries written by older versions only have the executed tests, values that cannot be read are left at 0.
+     */
+    void load(JsonObject summary) {
+        reset();
+        executedTests.add(getLong(summary, EXECUTED_TESTS_FIELD));
+        executedTestsWithVideo.add(getLong(summary, EXECUTED_TESTS_WITH_VIDEO_FIELD));
+        failedTests.add(getLong(summary, FAILED_TESTS_FIELD));
+        videoBytes.add(getLong(summary, VIDEO_BYTES_FIELD));
+        loadMap(summary, TESTS_BY_BROWSER_FIELD, testsByBrowser);
+        loadMap(summary, TESTS_BY_PROXY_FIELD, testsByProxy);
+        changed.set(false);
+    }
+
+    void addTo(JsonObject summary) {
+        summary.addProperty(EXECUTED_TESTS_FIELD, getExecutedTests());
+        summary.addProperty(EXECUTED_TESTS_WITH_VIDEO_FIELD, getExecutedTestsWithVideo());
+        summary.addProperty(FAILED_TESTS_FIELD, getFailedTests());
+        summary.addProperty(VIDEO_BYTES_FIELD, getVideoBytes());
+        summary.add(TESTS_BY_BROWSER_FIELD, toJson(testsByBrowser));
+        summary.add(TESTS_BY_PROXY_FIELD, toJson(testsByProxy));
+    }
+
+    /*
+        Whether the counters changed after the last call.
+     */
+    boolean takeChanged() {
+        return changed.getAndSet(false);
+    }
+
+    void markChanged() {
+        changed.set(true);
+    }
+
+    private static void increment(ConcurrentMap<String, LongAdder> counters, String key) {
+        counters.computeIfAbsent(String.valueOf(key), k -> new LongAdder()).increment();
+    }
+
+    private static void decrement(LongAdder counter, long value) {
+        if (counter != null) {
+            counter.add(-Math.min(value, counter.sum()));
+        }
+    }
+
+    private static JsonObject toJson(Map<String, LongAdder> counters) {
+        JsonObject json = new JsonObject();
+        counters.forEach((key, counter) -> json.addProperty(key, counter.sum()));
+        return json;
+    }
+
+    private static void loadMap(JsonObject summary, String field, Map<String, LongAdder> counters) {
+        if (summary.has(field) && summary.get(field).isJsonObject()) {
+            for (Map.Entry<String, JsonElement> counter : summary.getAsJsonObject(field).entrySet()) {
+                LongAdder adder = new LongAdder();
+                adder.add(getLong(summary.getAsJsonObject(field), counter.getKey()));
+                counters.put(counter.getKey(), adder);
+            }
+        }
+    }
+
+    private static String getString(JsonObject json, String field) {
+        return json.has(field) && !json.get(field).isJsonNull() ? json.get(field).getAsString() : null;
+    }
+
+    private static long getLong(JsonObject json, String field) {
+        try {
+            return json.has(field) ? Long.parseLong(json.get(field).getAsString()) : 0;
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, e.toString(), e);
+            return 0;
+        }
+    }
+}
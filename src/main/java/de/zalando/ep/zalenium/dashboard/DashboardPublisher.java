@@ -0,0 +1,253 @@
+package de.zalando.ep.zalenium.dashboard;
+
+import com.google.gson.JsonObject;
+import de.zalando.ep.zalenium.util.Environment;
+import de.zalando.ep.zalenium.util.VideoConverter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Single writer of the dashboard. Proxies publish their finished tests here instead of updating the dashboard while
+ * the test slot or the download thread waits on disk I/O. One thread takes the tests published within
+ * ZALENIUM_DASHBOARD_BATCH_MILLIS of each other (up to MAX_BATCH_SIZE) and adds them with one Dashboard update, so
+ * concurrent tests cost one write to the store, one append per index page and at most one summary write.
+ *
+ * Tests with a video go first through a background stage (ZALENIUM_DASHBOARD_POSTER_THREADS) that takes a poster
+ * image and the duration of the video with ffmpeg, so the dashboard can show the posters and load a video only when it
+ * is played. Tests are added without them when ffmpeg is not available.
+ *
+ * Tests still queued when the hub stops are added by a shutdown hook, the ones still waiting for their poster are
+ * added without it. A crash loses only the queued tests, the ones written to the store are replayed by the Dashboard.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DashboardPublisher {
+
+    private static final Logger LOGGER = Logger.getLogger(DashboardPublisher.class.getName());
+    private static final Environment env = new Environment();
+    private static final long BATCH_MILLIS = Math.max(0, env.getIntEnvVariable("ZALENIUM_DASHBOARD_BATCH_MILLIS", 100));
+    private static final int MAX_BATCH_SIZE = 500;
+    private static final int POSTER_THREADS = Math.max(1,
+            env.getIntEnvVariable("ZALENIUM_DASHBOARD_POSTER_THREADS", 2));
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 15;
+    private static final BlockingQueue<PendingTest> queue = new LinkedBlockingQueue<>();
+    // Tells the writer to add what it took and stop
+    private static final PendingTest STOP = new PendingTest(null);
+    // Tests in the poster stage, guarded by itself. Taking a test out of it is what allows it to be queued.
+    private static final Set<PendingTest> waitingForPoster = new HashSet<>();
+    private static final AtomicInteger pendingTests = new AtomicInteger();
+    private static final AtomicLong publishedTests = new AtomicLong();
+    private static final AtomicLong batches = new AtomicLong();
+    private static final AtomicLong failedTests = new AtomicLong();
+    private static final AtomicLong failedBatches = new AtomicLong();
+    private static final AtomicLong posters = new AtomicLong();
+    private static Thread writer;
+    private static ExecutorService posterExecutor;
+    private static volatile boolean stopping;
+
+    /*
+        Queues the test for the dashboard. The future completes once the test was added.
+     */
+    public static CompletableFuture<Void> publish(TestInformation testInformation) {
+        PendingTest pendingTest = new PendingTest(testInformation);
+        pendingTests.incrementAndGet();
+        startWriter();
+        File video = new File(Dashboard.getLocalVideosPath(), testInformation.getFileName());
+        if (testInformation.isVideoRecorded() && video.length() > 0 && !stopping) {
+            synchronized (waitingForPoster) {
+                waitingForPoster.add(pendingTest);
+            }
+            try {
+                posterExecutor.execute(() -> {
+                    try {
+                        if (!stopping) {
+                            addPoster(testInformation, video);
+                        }
+                    } finally {
+                        queueAfterPoster(pendingTest);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // The hub is stopping
+                queueAfterPoster(pendingTest);
+            }
+        } else {
+            queue.add(pendingTest);
+        }
+        return pendingTest.added;
+    }
+
+    /*
+        Tests published but not added to the dashboard yet.
+     */
+    public static int getPendingTests() {
+        return pendingTests.get();
+    }
+
+    public static JsonObject getMetrics() {
+        JsonObject metrics = new JsonObject();
+        metrics.addProperty("publishedTests", publishedTests.get());
+        metrics.addProperty("batches", batches.get());
+        metrics.addProperty("failedTests", failedTests.get());
+        metrics.addProperty("failedBatches", failedBatches.get());
+        metrics.addProperty("pendingTests", pendingTests.get());
+        metrics.addProperty("posters", posters.get());
+        return metrics;
+    }
+
+    private static synchronized void startWriter() {
+        if (writer != null) {
+            return;
+        }
+        writer = new Thread(DashboardPublisher::writeBatches, "DashboardPublisher");
+        writer.setDaemon(true);
+        writer.start();
+        AtomicInteger posterThreads = new AtomicInteger();
+        posterExecutor = Executors.newFixedThreadPool(POSTER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "DashboardPoster-" + posterThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(DashboardPublisher::writeQueuedTests,
+                "DashboardPublisherOnShutdown"));
+    }
+
+    private static void writeBatches() {
+        boolean stopped = false;
+        while (!stopped && !Thread.currentThread().isInterrupted()) {
+            List<PendingTest> batch = new ArrayList<>();
+            try {
+                PendingTest pendingTest = queue.take();
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BATCH_MILLIS);
+                while (pendingTest != STOP) {
+                    batch.add(pendingTest);
+                    if (batch.size() >= MAX_BATCH_SIZE) {
+                        break;
+                    }
+                    pendingTest = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (pendingTest == null) {
+                        break;
+                    }
+                }
+                stopped = pendingTest == STOP;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            write(batch);
+        }
+    }
+
+    /*
+        Queues the test unless the shutdown hook took it already.
+     */
+    private static void queueAfterPoster(PendingTest pendingTest) {
+        synchronized (waitingForPoster) {
+            if (waitingForPoster.remove(pendingTest)) {
+                queue.add(pendingTest);
+            }
+        }
+    }
+
+    /*
+        The poster and duration are optional, the test is added without them when they cannot be read.
+     */
+    private static void addPoster(TestInformation testInformation, File video) {
+        try {
+            double durationSeconds = VideoConverter.probeDurationSeconds(video);
+            if (durationSeconds > 0) {
+                testInformation.setVideoDurationSeconds(Math.round(durationSeconds));
+            }
+            File poster = new File(Dashboard.getLocalVideosPath(), testInformation.getLogsFolderName() + "/" +
+                    TestInformation.POSTER_FILE_NAME);
+            if (!poster.getParentFile().exists() && !poster.getParentFile().mkdirs()) {
+                return;
+            }
+            // A frame a little into the video, the first ones often show an empty browser
+            double posterSeconds = durationSeconds > 0 ? Math.min(1, durationSeconds / 2) : 0;
+            if (VideoConverter.createPoster(video, poster, posterSeconds)) {
+                testInformation.setPosterCreated(true);
+                posters.incrementAndGet();
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "No poster for " + video, e);
+        }
+    }
+
+    /*
+        Posters not started are not taken anymore and the ones being taken are interrupted. The writer adds the batch
+        it has, and the tests left are added here, the ones still waiting for their poster without it.
+     */
+    private static void writeQueuedTests() {
+        stopping = true;
+        posterExecutor.shutdownNow();
+        try {
+            posterExecutor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            queue.add(STOP);
+            writer.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_TIMEOUT_SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<PendingTest> batch = new ArrayList<>();
+        synchronized (waitingForPoster) {
+            batch.addAll(waitingForPoster);
+            waitingForPoster.clear();
+            queue.drainTo(batch);
+        }
+        batch.remove(STOP);
+        write(batch);
+    }
+
+    private static void write(List<PendingTest> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<TestInformation> tests = new ArrayList<>();
+        batch.forEach(pendingTest -> tests.add(pendingTest.testInformation));
+        Exception error = null;
+        try {
+            Dashboard.updateDashboard(tests);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Error while adding " + batch.size() + " tests to the dashboard.", e);
+            error = e;
+        }
+        // Counted before the futures complete, so the metrics include the batch once a publisher sees it added
+        if (error == null) {
+            publishedTests.addAndGet(batch.size());
+            batches.incrementAndGet();
+        } else {
+            failedTests.addAndGet(batch.size());
+            failedBatches.incrementAndGet();
+        }
+        pendingTests.addAndGet(-batch.size());
+        for (PendingTest pendingTest : batch) {
+            if (error == null) {
+                pendingTest.added.complete(null);
+            } else {
+                pendingTest.added.completeExceptionally(error);
+            }
+        }
+    }
+
+    private static class PendingTest {
+        private final TestInformation testInformation;
+        private final CompletableFuture<Void> added = new CompletableFuture<>();
+
+        private PendingTest(TestInformation testInformation) {
+            this.testInformation = testInformation;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package de.zalando.ep.zalenium.dashboard;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.JsonObject;
+import de.zalando.ep.zalenium.util.Environment;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Removes the videos and logs of old tests in the background, so the videos folder does not grow until the disk is
+ * full. Tests are taken oldest first from the TestResultStore (no directory scans) and removed when:
+ *
+ * - they are older than ZALENIUM_RETENTION_MAX_AGE_HOURS, or ZALENIUM_RETENTION_FAILED_MAX_AGE_HOURS for failed tests
+ * (to keep them longer), or
+ * - the tests in the dashboard use more than ZALENIUM_RETENTION_MAX_SIZE_MB. Tests that did not fail go first, failed
+ * tests are only removed when that is not enough.
+ *
+ * Removed tests are taken out of the store, the dashboard index and the counters. A limit set to 0 (the default) is
+ * not applied, the retention runs every ZALENIUM_RETENTION_INTERVAL_SECONDS when at least one limit is set.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DashboardRetention {
+
+    private static final Logger LOGGER = Logger.getLogger(DashboardRetention.class.getName());
+    private static final Environment env = new Environment();
+    private static final int BATCH_SIZE = 100;
+    private static final String FAILED_RESULT = "failed";
+    private static final AtomicLong removedTests = new AtomicLong();
+    private static final AtomicLong reclaimedBytes = new AtomicLong();
+    private static ScheduledExecutorService scheduler;
+
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final long failedMaxAgeMillis;
+    private final LongSupplier clock;
+    // Tests up to these ids were removed or are of the other kind, for the store they were taken from
+    private TestResultStore cursorStore;
+    private int failedCursor;
+    private int otherCursor;
+
+    @VisibleForTesting
+    DashboardRetention(long maxBytes, long maxAgeMillis, long failedMaxAgeMillis, LongSupplier clock) {
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.failedMaxAgeMillis = failedMaxAgeMillis;
+        this.clock = clock;
+    }
+
+    /*
+        Starts the retention in the background, once, when a limit is configured.
+     */
+    public static synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        long maxAgeHours = env.getIntEnvVariable("ZALENIUM_RETENTION_MAX_AGE_HOURS", 0);
+        DashboardRetention retention = new DashboardRetention(
+                env.getIntEnvVariable("ZALENIUM_RETENTION_MAX_SIZE_MB", 0) * 1024L * 1024L,
+                TimeUnit.HOURS.toMillis(maxAgeHours),
+                TimeUnit.HOURS.toMillis(env.getIntEnvVariable("ZALENIUM_RETENTION_FAILED_MAX_AGE_HOURS",
+                        (int) maxAgeHours)),
+                System::currentTimeMillis);
+        if (!retention.isEnabled()) {
+            return;
+        }
+        long intervalSeconds = Math.max(1, env.getIntEnvVariable("ZALENIUM_RETENTION_INTERVAL_SECONDS", 300));
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DashboardRetention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                retention.run();
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Error while removing old tests from the dashboard.", e);
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        LOGGER.log(Level.INFO, "Dashboard retention started, max. size {0} bytes, max. age {1} ms ({2} ms for failed " +
+                "tests)", new Object[]{retention.maxBytes, retention.maxAgeMillis, retention.failedMaxAgeMillis});
+    }
+
+    public static JsonObject getMetrics() {
+        JsonObject metrics = new JsonObject();
+        metrics.addProperty("removedTests", removedTests.get());
+        metrics.addProperty("reclaimedBytes", reclaimedBytes.get());
+        return metrics;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0 || maxAgeMillis > 0 || failedMaxAgeMillis > 0;
+    }
+
+    /*
+        Removes the tests that are over the limits and returns the bytes reclaimed. Failed tests and the other ones are
+        each taken oldest first, from where the previous run stopped, until the first one that is kept.
+     */
+    public long run() throws IOException {
+        TestResultStore store = Dashboard.getTestResultStore();
+        if (store != cursorStore) {
+            cursorStore = store;
+            failedCursor = -1;
+            otherCursor = -1;
+        }
+        long now = clock.getAsLong();
+        Removal removal = new Removal(store);
+        if (failedMaxAgeMillis > 0) {
+            failedCursor = removeOldest(removal, failedCursor, true,
+                    id -> now - store.getTimestamp(id) > failedMaxAgeMillis);
+        }
+        // Tests that did not fail go first to make room
+        otherCursor = removeOldest(removal, otherCursor, false,
+                id -> (maxAgeMillis > 0 && now - store.getTimestamp(id) > maxAgeMillis) || removal.isOverSize());
+        // Only failed tests are left to make room
+        if (maxBytes > 0) {
+            failedCursor = removeOldest(removal, failedCursor, true, id -> removal.isOverSize());
+        }
+        removal.flush();
+
+        if (removal.removed > 0) {
+            removedTests.addAndGet(removal.removed);
+            reclaimedBytes.addAndGet(removal.reclaimed);
+            LOGGER.log(Level.INFO, "Removed {0} old tests from the dashboard, {1} bytes reclaimed, {2} bytes used",
+                    new Object[]{removal.removed, removal.reclaimed, store.getStoredBytes()});
+        }
+        return removal.reclaimed;
+    }
+
+    /*
+        Removes the failed (or the other) tests after the cursor while they can be removed, and returns the cursor for
+        the next run: newer tests of the same kind are younger still.
+     */
+    private static int removeOldest(Removal removal, int cursor, boolean failed, Removable removable)
+            throws IOException {
+        TestResultStore store = removal.store;
+        int lastId = store.size() - 1;
+        int id = store.nextId(cursor, TestResultStore.Field.RESULT, FAILED_RESULT, failed);
+        while (id != -1) {
+            if (!removable.test(id)) {
+                return id - 1;
+            }
+            removal.add(id);
+            lastId = store.size() - 1;
+            id = store.nextId(id, TestResultStore.Field.RESULT, FAILED_RESULT, failed);
+        }
+        return lastId;
+    }
+
+    private static long remove(TestResultStore store, List<JsonObject> tests) throws IOException {
+        long reclaimed = 0;
+        Map<Integer, Set<String>> videosByIndexPage = new HashMap<>();
+        for (JsonObject test : tests) {
+            if (!store.remove(test.get("id").getAsInt())) {
+                continue;
+            }
+            Dashboard.getCounters().remove(test);
+            String fileName = test.get("fileName").getAsString();
+            File video = new File(Dashboard.getLocalVideosPath(), fileName);
+            FileUtils.deleteQuietly(video);
+            if (test.has("logsFolderName")) {
+                FileUtils.deleteQuietly(new File(Dashboard.getLocalVideosPath(),
+                        test.get("logsFolderName").getAsString()));
+            }
+            if (test.has("indexPage")) {
+                videosByIndexPage.computeIfAbsent(test.get("indexPage").getAsInt(), page -> new HashSet<>())
+                        .add(fileName);
+            }
+            reclaimed += getBytes(test);
+        }
+        Dashboard.removeFromIndex(videosByIndexPage);
+        return reclaimed;
+    }
+
+    private static long getBytes(JsonObject test) {
+        return test.has("bytes") ? test.get("bytes").getAsLong() : 0;
+    }
+
+    private interface Removable {
+        boolean test(int id) throws IOException;
+    }
+
+    /*
+        Tests chosen in a run, removed in batches.
+     */
+    private final class Removal {
+        private final TestResultStore store;
+        private final List<JsonObject> toRemove = new ArrayList<>();
+        private long bytesToRemove;
+        private long reclaimed;
+        private int removed;
+
+        private Removal(TestResultStore store) {
+            this.store = store;
+        }
+
+        private boolean isOverSize() {
+            return maxBytes > 0 && store.getStoredBytes() - bytesToRemove > maxBytes;
+        }
+
+        private void add(int id) throws IOException {
+            JsonObject test = store.get(id);
+            if (test == null) {
+                return;
+            }
+            toRemove.add(test);
+            bytesToRemove += getBytes(test);
+            if (toRemove.size() >= BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            if (toRemove.isEmpty()) {
+                return;
+            }
+            reclaimed += remove(store, toRemove);
+            removed += toRemove.size();
+            toRemove.clear();
+            bytesToRemove = 0;
+        }
+    }
+}
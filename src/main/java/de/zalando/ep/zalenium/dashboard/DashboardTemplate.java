@@ -0,0 +1,106 @@
+package de.zalando.ep.zalenium.dashboard;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Dashboard template (list_template.html, dashboard_template.html) parsed once into the text between its
+ * placeholders ({testName}, {fileName}, ...) and the placeholder names, and rendered straight into a Writer. Templates
+ * are cached per file and parsed again only when the file changes.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DashboardTemplate {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{([A-Za-z]+)}");
+    private static final Map<File, DashboardTemplate> templates = new ConcurrentHashMap<>();
+
+    private final String text;
+    // Text before each placeholder, the last one is the text after the last placeholder
+    private final String[] literals;
+    private final String[] placeholders;
+    private final long lastModified;
+    private final long length;
+
+    private DashboardTemplate(String text, long lastModified, long length) {
+        this.text = text;
+        this.lastModified = lastModified;
+        this.length = length;
+        List<String> literalList = new ArrayList<>();
+        List<String> placeholderList = new ArrayList<>();
+        Matcher matcher = PLACEHOLDER.matcher(text);
+        int start = 0;
+        while (matcher.find()) {
+            literalList.add(text.substring(start, matcher.start()));
+            placeholderList.add(matcher.group(1));
+            start = matcher.end();
+        }
+        literalList.add(text.substring(start));
+        literals = literalList.toArray(new String[0]);
+        placeholders = placeholderList.toArray(new String[0]);
+    }
+
+    public static DashboardTemplate compile(String text) {
+        return new DashboardTemplate(text, 0, text.length());
+    }
+
+    /*
+        The template in the file, parsed when it was not cached or the file changed since.
+     */
+    public static DashboardTemplate load(File file) throws IOException {
+        DashboardTemplate template = templates.get(file);
+        if (template == null || template.lastModified != file.lastModified() || template.length != file.length()) {
+            long lastModified = file.lastModified();
+            long length = file.length();
+            template = new DashboardTemplate(FileUtils.readFileToString(file, UTF_8), lastModified, length);
+            templates.put(file, template);
+        }
+        return template;
+    }
+
+    /*
+        Writes the template with each placeholder replaced by its value. Placeholders without a value are written as
+        they are.
+     */
+    public void render(Function<String, String> values, Writer writer) throws IOException {
+        for (int i = 0; i < placeholders.length; i++) {
+            writer.write(literals[i]);
+            String value = values.apply(placeholders[i]);
+            if (value == null) {
+                writer.write('{');
+                writer.write(placeholders[i]);
+                writer.write('}');
+            } else {
+                writer.write(value);
+            }
+        }
+        writer.write(literals[placeholders.length]);
+    }
+
+    public String render(Function<String, String> values) {
+        StringWriter writer = new StringWriter(text.length() + 256);
+        try {
+            render(values, writer);
+        } catch (IOException e) {
+            // StringWriter does not throw
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+    public String getText() {
+        return text;
+    }
+}
@@ -0,0 +1,143 @@
+package de.zalando.ep.zalenium.dashboard;
+
+import com.google.common.io.ByteStreams;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import de.zalando.ep.zalenium.dashboard.TestResultStore.Field;
+import de.zalando.ep.zalenium.dashboard.TestResultStore.Query;
+import org.openqa.grid.internal.Registry;
+import org.openqa.grid.web.servlet.RegistryBasedServlet;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+    Serves the tests of the dashboard as JSON, newest first, from the TestResultStore. Pages are chosen by id: the
+    response has the id to pass as "before" to get the next (older) page, so a page does not move when tests are
+    added. Tests can be filtered by testName, group, browser, proxy and result (exact values), and by time with "from"
+    and "to" (epoch millis). E.g. /api/tests?browser=chrome&result=failed&limit=50
+
+    The ETag and Last-Modified of a page change only when tests are added to it or tests are removed from the store
+    (retention, cleanup), so a client polling the newest page gets a 304 until there is something new.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DashboardTestsServlet extends RegistryBasedServlet {
+
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOGGER = Logger.getLogger(DashboardTestsServlet.class.getName());
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int MAX_LIMIT = 500;
+
+    @SuppressWarnings("unused")
+    public DashboardTestsServlet() {
+        this(null);
+    }
+
+    public DashboardTestsServlet(Registry registry) {
+        super(registry);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        process(request, response);
+    }
+
+    protected void process(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Query query = new Query();
+        int limit;
+        int before;
+        long from;
+        long to;
+        try {
+            limit = Math.min(MAX_LIMIT, getIntParameter(request, "limit", DEFAULT_LIMIT));
+            before = getIntParameter(request, "before", Integer.MAX_VALUE);
+            from = getLongParameter(request, "from", 0);
+            to = getLongParameter(request, "to", Long.MAX_VALUE);
+        } catch (NumberFormatException e) {
+            LOGGER.log(Level.FINE, e.toString(), e);
+            sendMessage(response, "ERROR " + e.getMessage(), "text/plain", 400);
+            return;
+        }
+        StringBuilder filters = new StringBuilder();
+        for (Field field : Field.values()) {
+            String value = request.getParameter(field.getJsonName());
+            if (value != null && !value.isEmpty()) {
+                query.where(field, value);
+                filters.append(field.getJsonName()).append('=').append(value).append('&');
+            }
+        }
+
+        TestResultStore store = Dashboard.getTestResultStore();
+        // The page is built from the tests stored up to now, even if more are added meanwhile
+        int newestId = Math.min(store.size(), before) - 1;
+        long lastModified = Math.max(store.getTimestamp(newestId), store.getLastRemovalMillis());
+        String eTag = String.format("\"%d-%d-%d-%08x\"", store.getGeneration(), newestId, lastModified,
+                filters.append(from).append('&').append(to).append('&').append(limit).toString().hashCode());
+        response.setHeader("ETag", eTag);
+        response.setHeader("Cache-Control", "no-cache");
+        if (lastModified > 0) {
+            response.setDateHeader("Last-Modified", lastModified);
+        }
+        if (isNotModified(request, eTag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        List<JsonObject> tests = store.query(query.before(newestId + 1).from(from).to(to).limit(limit));
+        JsonArray testsArray = new JsonArray();
+        tests.forEach(testsArray::add);
+        JsonObject page = new JsonObject();
+        page.add("tests", testsArray);
+        if (tests.size() == limit && limit > 0) {
+            page.addProperty("next", tests.get(tests.size() - 1).get("id").getAsInt());
+        }
+        sendMessage(response, page.toString(), "application/json", 200);
+    }
+
+    /*
+        If-None-Match wins over If-Modified-Since, which only has a precision of seconds.
+     */
+    private static boolean isNotModified(HttpServletRequest request, String eTag, long lastModified) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String requestETag : ifNoneMatch.split(",")) {
+                String value = requestETag.trim();
+                if (value.equals(eTag) || value.equals("W/" + eTag) || value.equals("*")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        return ifModifiedSince > 0 && lastModified > 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    private static int getIntParameter(HttpServletRequest request, String name, int defaultValue) {
+        String value = request.getParameter(name);
+        return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static long getLongParameter(HttpServletRequest request, String name, long defaultValue) {
+        String value = request.getParameter(name);
+        return value == null || value.isEmpty() ? defaultValue : Long.parseLong(value);
+    }
+
+    private void sendMessage(HttpServletResponse response, String message, String contentType, int statusCode)
+            throws IOException {
+        response.setContentType(contentType);
+        response.setCharacterEncoding("UTF-8");
+        response.setStatus(statusCode);
+
+        try (InputStream in = new ByteArrayInputStream(message.getBytes("UTF-8"))) {
+            ByteStreams.copy(in, response.getOutputStream());
+        } finally {
+            response.getOutputStream().close();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package de.zalando.ep.zalenium.dashboard;
 
 import de.zalando.ep.zalenium.dashboard.Dashboard;
+import de.zalando.ep.zalenium.util.CommandTimeline;
 import de.zalando.ep.zalenium.util.CommonProxyUtilities;
 
 import java.util.ArrayList;
@@ -13,6 +14,7 @@ import java.util.List;
 public class TestInformation {
     private static final String TEST_FILE_NAME_TEMPLATE = "{proxyName}_{testName}_{browser}_{platform}_{timestamp}";
     private static final String FILE_NAME_TEMPLATE = "{fileName}{fileExtension}";
+    public static final String POSTER_FILE_NAME = "poster.jpg";
     private static final CommonProxyUtilities commonProxyUtilities = new CommonProxyUtilities();
     private String seleniumSessionId;
     private String testName;
@@ -29,6 +31,14 @@ public class TestInformation {
     private String logsFolderPath;
     private String testNameNoExtension;
     private boolean videoRecorded;
+    private String commandLatency;
+    private boolean commandTimelineRecorded;
+    private boolean posterCreated;
+    // 0 while unknown
+    private long videoDurationSeconds;
+    private String testGroup;
+    // Unknown (null) unless the provider reports the result
+    private Boolean testFailed;
 
     public TestInformation(String seleniumSessionId, String testName, String proxyName, String browser,
                            String browserVersion, String platform) {
@@ -60,6 +70,67 @@ public class TestInformation {
         this.videoRecorded = videoRecorded;
     }
 
+    public boolean isTestFailed() {
+        return Boolean.TRUE.equals(testFailed);
+    }
+
+    public String getTestResult() {
+        if (testFailed == null) {
+            return "unknown";
+        }
+        return testFailed ? "failed" : "passed";
+    }
+
+    public void setTestFailed(boolean testFailed) {
+        this.testFailed = testFailed;
+    }
+
+    public String getTestGroup() {
+        return testGroup == null ? "" : testGroup;
+    }
+
+    public void setTestGroup(String testGroup) {
+        this.testGroup = testGroup;
+    }
+
+    public String getCommandLatency() {
+        return commandLatency == null ? "" : commandLatency;
+    }
+
+    public void setCommandLatency(String commandLatency) {
+        this.commandLatency = commandLatency;
+    }
+
+    public void setCommandTimelineRecorded(boolean commandTimelineRecorded) {
+        this.commandTimelineRecorded = commandTimelineRecorded;
+    }
+
+    public String getCommandTimelineFileName() {
+        if (!commandTimelineRecorded) {
+            return "";
+        }
+        return Dashboard.LOGS_FOLDER_NAME + "/" + testNameNoExtension + "/" + CommandTimeline.TIMELINE_FILE_NAME;
+    }
+
+    public void setPosterCreated(boolean posterCreated) {
+        this.posterCreated = posterCreated;
+    }
+
+    public String getPosterFileName() {
+        if (!posterCreated) {
+            return "";
+        }
+        return getLogsFolderName() + "/" + POSTER_FILE_NAME;
+    }
+
+    public long getVideoDurationSeconds() {
+        return videoDurationSeconds;
+    }
+
+    public void setVideoDurationSeconds(long videoDurationSeconds) {
+        this.videoDurationSeconds = videoDurationSeconds;
+    }
+
     public String getVideoFolderPath() {
         return videoFolderPath;
     }
@@ -68,6 +139,14 @@ public class TestInformation {
         return testName == null ? seleniumSessionId : testName;
     }
 
+    public String getSeleniumSessionId() {
+        return seleniumSessionId;
+    }
+
+    public String getBrowser() {
+        return browser;
+    }
+
     public String getProxyName() {
         return proxyName;
     }
@@ -88,6 +167,10 @@ public class TestInformation {
         return logsFolderPath;
     }
 
+    public String getLogsFolderName() {
+        return Dashboard.LOGS_FOLDER_NAME + "/" + testNameNoExtension;
+    }
+
     public String getSeleniumLogFileName() {
         String seleniumLogFileName = Dashboard.LOGS_FOLDER_NAME + "/" + testNameNoExtension + "/";
         if ("Zalenium".equalsIgnoreCase(proxyName)) {
@@ -110,7 +193,10 @@ public class TestInformation {
         return browserDriverLogFileName.concat("not_implemented.log");
     }
 
-    @SuppressWarnings("SameParameterValue")
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
     public void setFileExtension(String fileExtension) {
         this.fileExtension = fileExtension;
         buildVideoFileName();
@@ -126,9 +212,9 @@ public class TestInformation {
         this.fileName = FILE_NAME_TEMPLATE.replace("{fileName}", testNameNoExtension).
                 replace("{fileExtension}", fileExtension).
                 replace(" ", "_");
-        this.videoFolderPath = commonProxyUtilities.currentLocalPath() + "/" + Dashboard.VIDEOS_FOLDER_NAME;
-        this.logsFolderPath = commonProxyUtilities.currentLocalPath() + "/" + Dashboard.VIDEOS_FOLDER_NAME + "/" +
-                Dashboard.LOGS_FOLDER_NAME + "/" + testNameNoExtension;
+        this.videoFolderPath = Dashboard.getLocalVideosPath();
+        this.logsFolderPath = Dashboard.getLocalVideosPath() + "/" + Dashboard.LOGS_FOLDER_NAME + "/" +
+                testNameNoExtension;
     }
 
     public String getBrowserAndPlatform() {
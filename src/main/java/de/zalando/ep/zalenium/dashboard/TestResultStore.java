@@ -0,0 +1,760 @@
+package de.zalando.ep.zalenium.dashboard;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * File based store of the executed tests, queried by the dashboard. No external service is needed, it is made of two
+ * append-only files in the index folder of the dashboard:
+ *
+ * results.log: one JSON object per line and test.
+ * results.idx: a header with the version of the layout, then one fixed size entry per test (the id is the position):
+ * offset and length of the test in results.log, flags (removed), timestamp, bytes used by its video and logs, and for
+ * each indexed field (test name, group, browser, proxy and result) the hash of its value and the id of the previous
+ * test whose value falls in the same hash bucket.
+ *
+ * Only the newest test of each bucket and the number of tests in it are kept in memory, a few MB no matter how many
+ * tests are stored. A query walks, newest first, the bucket chain of its most selective field, and checks the other
+ * fields with the hashes in the index entries; a test is only read from results.log when it is returned. Timestamps
+ * grow with the id, so time ranges are found with a binary search on the index.
+ *
+ * Tests are removed (see DashboardRetention) by flagging their index entry, they stay in the chains and are skipped.
+ *
+ * After a crash, the index is rebuilt from the tests in results.log that it is missing and partial writes are dropped.
+ * An index without the header or with another version is rebuilt from results.log as a whole.
+ */
+@SuppressWarnings("WeakerAccess")
+public class TestResultStore implements Closeable {
+
+    public static final String DATA_FILE_NAME = "results.log";
+    public static final String INDEX_FILE_NAME = "results.idx";
+    private static final Logger LOGGER = Logger.getLogger(TestResultStore.class.getName());
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32();
+    private static final int BUCKETS = 1 << 16;
+    private static final int NO_TEST = -1;
+    private static final int FIELDS = Field.values().length;
+    private static final int INDEX_MAGIC = 0x5A524958;
+    // Changes with the layout of the entries
+    private static final int INDEX_VERSION = 2;
+    @VisibleForTesting
+    static final int INDEX_HEADER_SIZE = 8;
+    private static final int RECOVERY_CHUNK_SIZE = 1024 * 1024;
+    private static final int OFFSET_POSITION = 0;
+    private static final int LENGTH_POSITION = 8;
+    private static final int FLAGS_POSITION = 12;
+    private static final int TIMESTAMP_POSITION = 16;
+    private static final int BYTES_POSITION = 24;
+    private static final int HASHES_POSITION = 32;
+    private static final int PREVIOUS_POSITION = HASHES_POSITION + 4 * FIELDS;
+    @VisibleForTesting
+    static final int ENTRY_SIZE = PREVIOUS_POSITION + 4 * FIELDS;
+    private static final int REMOVED_FLAG = 1;
+    // Starts at the time the hub starts, so generations are not reused after a restart
+    private static final AtomicLong generations = new AtomicLong(System.currentTimeMillis());
+
+    public enum Field {
+        TEST_NAME("testName"), GROUP("group"), BROWSER("browser"), PROXY("proxy"), RESULT("result");
+
+        private final String jsonName;
+
+        Field(String jsonName) {
+            this.jsonName = jsonName;
+        }
+
+        public String getJsonName() {
+            return jsonName;
+        }
+    }
+
+    private final FileChannel data;
+    private final FileChannel index;
+    private final ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+    // Per field and bucket: newest test, number of tests, hash of the first value and whether other values share it
+    private final int[][] heads = new int[FIELDS][BUCKETS];
+    private final int[][] counts = new int[FIELDS][BUCKETS];
+    private final int[][] bucketHashes = new int[FIELDS][BUCKETS];
+    private final BitSet[] sharedBuckets = new BitSet[FIELDS];
+    private int size;
+    // Tests that were not removed
+    private int liveTests;
+    // Oldest test that was not removed
+    private int oldestId;
+    private long storedBytes;
+    private long dataEnd;
+    private long lastTimestamp;
+    // Changes when tests are removed, and with each store opened, e.g. after a cleanup of the dashboard
+    private long generation = generations.incrementAndGet();
+    private long lastRemovalMillis;
+
+    private TestResultStore(File folder) throws IOException {
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Could not create " + folder);
+        }
+        data = FileChannel.open(new File(folder, DATA_FILE_NAME).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = FileChannel.open(new File(folder, INDEX_FILE_NAME).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        for (int field = 0; field < FIELDS; field++) {
+            Arrays.fill(heads[field], NO_TEST);
+            sharedBuckets[field] = new BitSet(BUCKETS);
+        }
+    }
+
+    public static TestResultStore open(File folder) throws IOException {
+        TestResultStore store = new TestResultStore(folder);
+        try {
+            store.load();
+        } catch (IOException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    /*
+        Stores the test and returns its id. Ids start at 0 and grow by one with each test. The bytes are the size of
+        its video and logs, and the index page is the page of the dashboard index where it was added.
+     */
+    public synchronized int add(TestInformation testInformation, String dateAndTime, int indexPage, long bytes)
+            throws IOException {
+        return addAll(Collections.singletonList(newTest(testInformation, dateAndTime, indexPage, 0, bytes)));
+    }
+
+    /*
+        Stores the tests (see newTest) with one write to each file, and returns the id of the first one. Each test
+        gets its "timestamp" and "id".
+     */
+    public synchronized int addAll(List<JsonObject> tests) throws IOException {
+        int firstId = size;
+        if (tests.isEmpty()) {
+            return firstId;
+        }
+        long timestamp = Math.max(lastTimestamp, System.currentTimeMillis());
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        int[] lengths = new int[tests.size()];
+        for (int i = 0; i < tests.size(); i++) {
+            tests.get(i).addProperty("timestamp", timestamp);
+            byte[] line = tests.get(i).toString().concat("\n").getBytes(UTF_8);
+            lines.write(line, 0, line.length);
+            lengths[i] = line.length;
+        }
+        long firstOffset = dataEnd;
+        writeFully(data, ByteBuffer.wrap(lines.toByteArray()), firstOffset);
+        dataEnd += lines.size();
+
+        // The tests are in results.log before they are in the index, so the index can always be rebuilt
+        ByteBuffer entries = ByteBuffer.allocate(tests.size() * ENTRY_SIZE);
+        long offset = firstOffset;
+        for (int i = 0; i < tests.size(); i++) {
+            fillEntry(offset, lengths[i] - 1, timestamp, getLong(tests.get(i), "bytes"), tests.get(i));
+            entries.put(entry.array());
+            // The next tests of the batch are chained to this one
+            setHeads(firstId + i);
+            offset += lengths[i];
+        }
+        try {
+            writeFully(index, entries, getEntryPosition(firstId));
+        } catch (IOException e) {
+            // Nothing of the batch is kept, the previous heads are the ones the entries point to
+            for (int i = tests.size() - 1; i >= 0; i--) {
+                for (int field = 0; field < FIELDS; field++) {
+                    heads[field][entries.getInt(i * ENTRY_SIZE + HASHES_POSITION + 4 * field) & (BUCKETS - 1)] =
+                            entries.getInt(i * ENTRY_SIZE + PREVIOUS_POSITION + 4 * field);
+                }
+            }
+            dataEnd = firstOffset;
+            try {
+                data.truncate(firstOffset);
+            } catch (IOException truncateError) {
+                e.addSuppressed(truncateError);
+            }
+            throw e;
+        }
+        for (int i = 0; i < tests.size(); i++) {
+            entry.clear();
+            entry.put(entries.array(), i * ENTRY_SIZE, ENTRY_SIZE);
+            track(firstId + i, timestamp);
+            tests.get(i).addProperty("id", firstId + i);
+        }
+        return firstId;
+    }
+
+    /*
+        The test as it is stored. The video bytes are counted by the dashboard, the bytes (video and logs) are used by
+        the retention.
+     */
+    public static JsonObject newTest(TestInformation testInformation, String dateAndTime, int indexPage,
+                                     long videoBytes, long bytes) {
+        JsonObject test = new JsonObject();
+        test.addProperty("dateAndTime", dateAndTime);
+        test.addProperty("sessionId", testInformation.getSeleniumSessionId());
+        test.addProperty(Field.TEST_NAME.getJsonName(), testInformation.getTestName());
+        test.addProperty(Field.GROUP.getJsonName(), testInformation.getTestGroup());
+        test.addProperty(Field.BROWSER.getJsonName(), testInformation.getBrowser());
+        test.addProperty(Field.PROXY.getJsonName(), testInformation.getProxyName());
+        test.addProperty(Field.RESULT.getJsonName(), testInformation.getTestResult());
+        test.addProperty("browserAndPlatform", testInformation.getBrowserAndPlatform());
+        test.addProperty("videoRecorded", testInformation.isVideoRecorded());
+        test.addProperty("fileName", testInformation.getFileName());
+        test.addProperty("posterFileName", testInformation.getPosterFileName());
+        test.addProperty("videoDuration", testInformation.getVideoDurationSeconds());
+        test.addProperty("seleniumLogFileName", testInformation.getSeleniumLogFileName());
+        test.addProperty("browserDriverLogFileName", testInformation.getBrowserDriverLogFileName());
+        test.addProperty("commandLatency", testInformation.getCommandLatency());
+        test.addProperty("commandTimelineFileName", testInformation.getCommandTimelineFileName());
+        test.addProperty("logsFolderName", testInformation.getLogsFolderName());
+        test.addProperty("indexPage", indexPage);
+        test.addProperty("videoBytes", videoBytes);
+        test.addProperty("bytes", bytes);
+        return test;
+    }
+
+    /*
+        Number of tests stored, removed tests included.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /*
+        Bytes used by the videos and logs of the tests that were not removed.
+     */
+    public synchronized long getStoredBytes() {
+        return storedBytes;
+    }
+
+    /*
+        Tests that were not removed, oldest first, starting after the given id.
+     */
+    public synchronized List<JsonObject> oldest(int afterId, int limit) throws IOException {
+        List<JsonObject> tests = new ArrayList<>();
+        for (int id = Math.max(afterId + 1, oldestId); id < size && tests.size() < limit; id++) {
+            readEntry(id);
+            if (!isRemoved()) {
+                tests.add(readTest(id, entry.getLong(OFFSET_POSITION), entry.getInt(LENGTH_POSITION)));
+            }
+        }
+        return tests;
+    }
+
+    /*
+        Next test that was not removed after the given id, with (or without) the given value in the field, -1 when
+        there is none. Only the index is read, values are told apart by their hash.
+     */
+    public synchronized int nextId(int afterId, Field field, String value, boolean withValue) throws IOException {
+        int hash = hash(value);
+        for (int id = Math.max(afterId + 1, oldestId); id < size; id++) {
+            readEntry(id);
+            if (!isRemoved() && (entry.getInt(HASHES_POSITION + 4 * field.ordinal()) == hash) == withValue) {
+                return id;
+            }
+        }
+        return NO_TEST;
+    }
+
+    /*
+        Flags the test as removed, queries do not return it anymore. Returns false when it was already removed.
+     */
+    public synchronized boolean remove(int id) throws IOException {
+        if (id < 0 || id >= size) {
+            return false;
+        }
+        readEntry(id);
+        if (isRemoved()) {
+            return false;
+        }
+        ByteBuffer flags = ByteBuffer.allocate(4);
+        flags.putInt(0, entry.getInt(FLAGS_POSITION) | REMOVED_FLAG);
+        writeFully(index, flags, getEntryPosition(id) + FLAGS_POSITION);
+        untrack();
+        while (oldestId < size && isRemovedId(oldestId)) {
+            oldestId++;
+        }
+        generation = generations.incrementAndGet();
+        lastRemovalMillis = System.currentTimeMillis();
+        return true;
+    }
+
+    /*
+        Changes when tests are removed or the store is opened again, adding tests does not change it.
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /*
+        Time when a test was last removed, 0 when none was removed since the store was opened.
+     */
+    public synchronized long getLastRemovalMillis() {
+        return lastRemovalMillis;
+    }
+
+    /*
+        Time when the test was stored, 0 when there is no test with that id.
+     */
+    public synchronized long getTimestamp(int id) throws IOException {
+        if (id < 0 || id >= size) {
+            return 0;
+        }
+        readEntry(id);
+        return entry.getLong(TIMESTAMP_POSITION);
+    }
+
+    /*
+        Bytes used by the video and logs of the test, 0 when there is no test with that id.
+     */
+    public synchronized long getBytes(int id) throws IOException {
+        if (id < 0 || id >= size) {
+            return 0;
+        }
+        readEntry(id);
+        return entry.getLong(BYTES_POSITION);
+    }
+
+    public synchronized JsonObject get(int id) throws IOException {
+        if (id < 0 || id >= size) {
+            return null;
+        }
+        readEntry(id);
+        if (isRemoved()) {
+            return null;
+        }
+        return readTest(id, entry.getLong(OFFSET_POSITION), entry.getInt(LENGTH_POSITION));
+    }
+
+    /*
+        Tests matching the query, newest first. Each test has its "id", which can be used as Query.before() to get the
+        next page.
+     */
+    public synchronized List<JsonObject> query(Query query) throws IOException {
+        List<JsonObject> tests = new ArrayList<>();
+        if (query.limit <= 0) {
+            return tests;
+        }
+        walk(query, (id, offset, length) -> {
+            JsonObject test = readTest(id, offset, length);
+            // Values with the same hash are told apart here
+            if (matchesValues(test, query)) {
+                tests.add(test);
+            }
+            return tests.size() < query.limit;
+        });
+        return tests;
+    }
+
+    /*
+        Number of tests matching the query, removed tests are not counted. Without filters, or when the only filter is
+        a value that has its hash bucket to itself, the count is kept in memory.
+     */
+    public synchronized int count(Query query) throws IOException {
+        if (query.filters.isEmpty() && query.fromMillis == 0 && query.toMillis == Long.MAX_VALUE &&
+                query.beforeId >= size) {
+            return liveTests;
+        }
+        boolean sharedHashes = false;
+        for (Map.Entry<Field, String> filter : query.filters.entrySet()) {
+            int bucket = hash(filter.getValue()) & (BUCKETS - 1);
+            sharedHashes |= sharedBuckets[filter.getKey().ordinal()].get(bucket);
+        }
+        if (query.filters.size() == 1 && !sharedHashes && query.fromMillis == 0 &&
+                query.toMillis == Long.MAX_VALUE && query.beforeId == Integer.MAX_VALUE) {
+            Map.Entry<Field, String> filter = query.filters.entrySet().iterator().next();
+            int field = filter.getKey().ordinal();
+            int hash = hash(filter.getValue());
+            int bucket = hash & (BUCKETS - 1);
+            return bucketHashes[field][bucket] == hash ? counts[field][bucket] : 0;
+        }
+        boolean checkValues = sharedHashes;
+        int[] count = {0};
+        walk(query, (id, offset, length) -> {
+            if (!checkValues || matchesValues(readTest(id, offset, length), query)) {
+                count[0]++;
+            }
+            return true;
+        });
+        return count[0];
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            data.close();
+        } finally {
+            index.close();
+        }
+    }
+
+    private interface TestVisitor {
+        // Returns false to stop
+        boolean visit(int id, long offset, int length) throws IOException;
+    }
+
+    /*
+        Visits, newest first, the tests that match the query by hash and time.
+     */
+    private void walk(Query query, TestVisitor visitor) throws IOException {
+        int upper = Math.min(size, query.beforeId) - 1;
+        if (query.toMillis != Long.MAX_VALUE) {
+            upper = Math.min(upper, firstIdAtOrAfter(query.toMillis) - 1);
+        }
+        int lower = query.fromMillis > 0 ? firstIdAtOrAfter(query.fromMillis) : 0;
+        if (upper < lower) {
+            return;
+        }
+        if (query.filters.isEmpty()) {
+            for (int id = upper; id >= lower; id--) {
+                readEntry(id);
+                if (!isRemoved() &&
+                        !visitor.visit(id, entry.getLong(OFFSET_POSITION), entry.getInt(LENGTH_POSITION))) {
+                    return;
+                }
+            }
+            return;
+        }
+
+        int[] fieldHashes = new int[FIELDS];
+        boolean[] filtered = new boolean[FIELDS];
+        int chainField = -1;
+        for (Map.Entry<Field, String> filter : query.filters.entrySet()) {
+            int field = filter.getKey().ordinal();
+            int hash = hash(filter.getValue());
+            int bucket = hash & (BUCKETS - 1);
+            if (counts[field][bucket] == 0) {
+                return;
+            }
+            fieldHashes[field] = hash;
+            filtered[field] = true;
+            // The shortest chain is walked
+            if (chainField == -1 ||
+                    counts[field][bucket] < counts[chainField][fieldHashes[chainField] & (BUCKETS - 1)]) {
+                chainField = field;
+            }
+        }
+
+        int id = heads[chainField][fieldHashes[chainField] & (BUCKETS - 1)];
+        while (id != NO_TEST && id >= lower) {
+            readEntry(id);
+            int previous = entry.getInt(PREVIOUS_POSITION + 4 * chainField);
+            if (id <= upper && !isRemoved()) {
+                boolean matches = true;
+                for (int field = 0; field < FIELDS && matches; field++) {
+                    matches = !filtered[field] || entry.getInt(HASHES_POSITION + 4 * field) == fieldHashes[field];
+                }
+                if (matches && !visitor.visit(id, entry.getLong(OFFSET_POSITION), entry.getInt(LENGTH_POSITION))) {
+                    return;
+                }
+            }
+            id = previous;
+        }
+    }
+
+    private static boolean matchesValues(JsonObject test, Query query) {
+        for (Map.Entry<Field, String> filter : query.filters.entrySet()) {
+            JsonElement value = test.get(filter.getKey().getJsonName());
+            String testValue = value == null || value.isJsonNull() ? "" : value.getAsString();
+            if (!testValue.equals(filter.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int firstIdAtOrAfter(long timestamp) throws IOException {
+        int low = 0;
+        int high = size;
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            buffer.clear();
+            readFully(index, buffer, getEntryPosition(middle) + TIMESTAMP_POSITION);
+            if (buffer.getLong(0) < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void addToIndex(long offset, int length, long timestamp, long bytes, JsonObject test)
+            throws IOException {
+        int id = size;
+        fillEntry(offset, length, timestamp, bytes, test);
+        writeFully(index, entry, getEntryPosition(id));
+        track(id, timestamp);
+    }
+
+    /*
+        Puts the index entry of the next test in the buffer.
+     */
+    private void fillEntry(long offset, int length, long timestamp, long bytes, JsonObject test) {
+        entry.clear();
+        entry.putLong(OFFSET_POSITION, offset);
+        entry.putInt(LENGTH_POSITION, length);
+        entry.putInt(FLAGS_POSITION, 0);
+        entry.putLong(TIMESTAMP_POSITION, timestamp);
+        entry.putLong(BYTES_POSITION, bytes);
+        for (Field field : Field.values()) {
+            JsonElement value = test.get(field.getJsonName());
+            int hash = hash(value == null || value.isJsonNull() ? "" : value.getAsString());
+            entry.putInt(HASHES_POSITION + 4 * field.ordinal(), hash);
+            entry.putInt(PREVIOUS_POSITION + 4 * field.ordinal(), heads[field.ordinal()][hash & (BUCKETS - 1)]);
+        }
+    }
+
+    /*
+        Makes the entry in the buffer the newest test of its buckets.
+     */
+    private void setHeads(int id) {
+        for (int field = 0; field < FIELDS; field++) {
+            heads[field][entry.getInt(HASHES_POSITION + 4 * field) & (BUCKETS - 1)] = id;
+        }
+    }
+
+    /*
+        Adds the entry in the buffer to the buckets kept in memory. Removed tests stay in the chains, but are not
+        counted.
+     */
+    private void track(int id, long timestamp) {
+        boolean removed = isRemoved();
+        for (int field = 0; field < FIELDS; field++) {
+            int hash = entry.getInt(HASHES_POSITION + 4 * field);
+            int bucket = hash & (BUCKETS - 1);
+            heads[field][bucket] = id;
+            if (removed) {
+                continue;
+            }
+            if (counts[field][bucket] == 0) {
+                bucketHashes[field][bucket] = hash;
+            } else if (bucketHashes[field][bucket] != hash) {
+                sharedBuckets[field].set(bucket);
+            }
+            counts[field][bucket]++;
+        }
+        if (removed) {
+            if (oldestId == id) {
+                oldestId++;
+            }
+        } else {
+            storedBytes += entry.getLong(BYTES_POSITION);
+            liveTests++;
+        }
+        size = id + 1;
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+    }
+
+    /*
+        Takes the entry in the buffer, which was just removed, out of the counts.
+     */
+    private void untrack() {
+        for (int field = 0; field < FIELDS; field++) {
+            counts[field][entry.getInt(HASHES_POSITION + 4 * field) & (BUCKETS - 1)]--;
+        }
+        storedBytes -= entry.getLong(BYTES_POSITION);
+        liveTests--;
+    }
+
+    private boolean isRemoved() {
+        return (entry.getInt(FLAGS_POSITION) & REMOVED_FLAG) != 0;
+    }
+
+    private boolean isRemovedId(int id) throws IOException {
+        ByteBuffer flags = ByteBuffer.allocate(4);
+        readFully(index, flags, getEntryPosition(id) + FLAGS_POSITION);
+        return (flags.getInt(0) & REMOVED_FLAG) != 0;
+    }
+
+    private void load() throws IOException {
+        if (!hasCurrentHeader()) {
+            if (index.size() > 0) {
+                LOGGER.log(Level.WARNING, "{0} has an older layout, it is rebuilt from {1}",
+                        new Object[]{INDEX_FILE_NAME, DATA_FILE_NAME});
+            }
+            index.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_SIZE);
+            header.putInt(0, INDEX_MAGIC);
+            header.putInt(4, INDEX_VERSION);
+            writeFully(index, header, 0);
+        }
+        long completeEntries = (index.size() - INDEX_HEADER_SIZE) / ENTRY_SIZE;
+        if ((index.size() - INDEX_HEADER_SIZE) % ENTRY_SIZE != 0) {
+            index.truncate(getEntryPosition((int) completeEntries));
+        }
+        long indexedDataEnd = 0;
+        for (int id = 0; id < completeEntries; id++) {
+            readEntry(id);
+            long end = entry.getLong(OFFSET_POSITION) + entry.getInt(LENGTH_POSITION) + 1;
+            if (end > data.size()) {
+                // The index is ahead of results.log, entries from here on are dropped
+                index.truncate(getEntryPosition(id));
+                LOGGER.log(Level.WARNING, "Dropped {0} index entries without data", completeEntries - id);
+                break;
+            }
+            track(id, entry.getLong(TIMESTAMP_POSITION));
+            indexedDataEnd = end;
+        }
+        dataEnd = indexedDataEnd;
+        recoverDataTail();
+    }
+
+    /*
+        Tests written to results.log but not to the index are indexed again, an incomplete last line is dropped. The
+        file is read in chunks, it is read as a whole when the index is rebuilt.
+     */
+    private void recoverDataTail() throws IOException {
+        long dataSize = data.size();
+        if (dataSize == dataEnd) {
+            return;
+        }
+        ByteBuffer chunk = ByteBuffer.allocate(RECOVERY_CHUNK_SIZE);
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int recovered = 0;
+        long lineStart = dataEnd;
+        for (long position = dataEnd; position < dataSize; position += chunk.limit()) {
+            chunk.clear();
+            chunk.limit((int) Math.min(RECOVERY_CHUNK_SIZE, dataSize - position));
+            readFully(data, chunk, position);
+            byte[] bytes = chunk.array();
+            int start = 0;
+            for (int i = 0; i < chunk.limit(); i++) {
+                if (bytes[i] != '\n') {
+                    continue;
+                }
+                line.write(bytes, start, i - start);
+                try {
+                    JsonObject test = new JsonParser().parse(new String(line.toByteArray(), UTF_8))
+                            .getAsJsonObject();
+                    long timestamp = test.has("timestamp") ? test.get("timestamp").getAsLong() : lastTimestamp;
+                    addToIndex(lineStart, line.size(), Math.max(lastTimestamp, timestamp), getLong(test, "bytes"),
+                            test);
+                    recovered++;
+                } catch (JsonParseException | IllegalStateException e) {
+                    LOGGER.log(Level.WARNING, "Skipped an unreadable test in " + DATA_FILE_NAME, e);
+                }
+                lineStart += line.size() + 1;
+                line.reset();
+                start = i + 1;
+            }
+            line.write(bytes, start, chunk.limit() - start);
+        }
+        dataEnd = lineStart;
+        if (dataEnd < dataSize) {
+            data.truncate(dataEnd);
+        }
+        LOGGER.log(Level.INFO, "{0} tests recovered from {1}", new Object[]{recovered, DATA_FILE_NAME});
+    }
+
+    private boolean hasCurrentHeader() throws IOException {
+        if (index.size() < INDEX_HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_SIZE);
+        readFully(index, header, 0);
+        return header.getInt(0) == INDEX_MAGIC && header.getInt(4) == INDEX_VERSION;
+    }
+
+    private static long getEntryPosition(int id) {
+        return INDEX_HEADER_SIZE + (long) id * ENTRY_SIZE;
+    }
+
+    private void readEntry(int id) throws IOException {
+        entry.clear();
+        readFully(index, entry, getEntryPosition(id));
+    }
+
+    private JsonObject readTest(int id, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(data, buffer, offset);
+        JsonObject test = new JsonParser().parse(new String(buffer.array(), UTF_8)).getAsJsonObject();
+        test.addProperty("id", id);
+        return test;
+    }
+
+    private static long getLong(JsonObject test, String field) {
+        return test.has(field) ? test.get(field).getAsLong() : 0;
+    }
+
+    private static int hash(String value) {
+        return HASH_FUNCTION.hashString(value == null ? "" : value, UTF_8).asInt();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.rewind();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /*
+        Filters of a query, all of them have to match. Values are compared as they are, case included.
+     */
+    public static class Query {
+        private final Map<Field, String> filters = new EnumMap<>(Field.class);
+        private long fromMillis = 0;
+        private long toMillis = Long.MAX_VALUE;
+        private int beforeId = Integer.MAX_VALUE;
+        private int limit = 100;
+
+        public Query where(Field field, String value) {
+            filters.put(field, value == null ? "" : value);
+            return this;
+        }
+
+        // Tests stored at or after this time
+        public Query from(long fromMillis) {
+            this.fromMillis = fromMillis;
+            return this;
+        }
+
+        // Tests stored before this time
+        public Query to(long toMillis) {
+            this.toMillis = toMillis;
+            return this;
+        }
+
+        // Tests older than this id, to get the page after a test
+        public Query before(int beforeId) {
+            this.beforeId = beforeId;
+            return this;
+        }
+
+        public Query limit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+    }
+}
@@ -1,20 +1,41 @@
 package de.zalando.ep.zalenium.matcher;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.MapMaker;
 import de.zalando.ep.zalenium.proxy.DockerSeleniumRemoteProxy;
 import de.zalando.ep.zalenium.proxy.DockerSeleniumStarterRemoteProxy;
+import de.zalando.ep.zalenium.util.NormalizedCapabilities;
 import org.openqa.grid.internal.utils.DefaultCapabilityMatcher;
 import org.openqa.grid.selenium.proxy.DefaultRemoteProxy;
 import org.openqa.selenium.remote.CapabilityType;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * The purpose of this class is to let docker-selenium process requests where a capability "version=latest" is present
+ *
+ * The requested capability is never modified. It is reduced to a key of the capabilities that are matched (version
+ * "latest" dropped, screenResolution and tz defaulted for docker-selenium nodes) and the result is cached per key and
+ * node capability (the map of a test slot, compared by identity). Per-test values like the name are not part of the
+ * key, so queued requests for the same browser share one entry. The key of each interned requested capability is
+ * remembered while the capability is in use. The cache belongs to the proxy that owns this matcher, so it goes away
+ * when the proxy leaves the registry.
  */
 public class DockerSeleniumCapabilityMatcher extends DefaultCapabilityMatcher {
+    private static final String[] SCREEN_RESOLUTION_NAMES = {"screenResolution", "resolution", "screen-resolution"};
+    private static final String TIME_ZONE_NAME = "tz";
+    private static final String LATEST_VERSION = "latest";
+    private static final int MAX_CACHED_REQUESTS = 1024;
     private final Logger logger = Logger.getLogger(DockerSeleniumCapabilityMatcher.class.getName());
+    // Weak keys are compared by identity, which is fine for interned capabilities
+    private final Map<NormalizedCapabilities, RequestKey> requestKeys = new MapMaker().weakKeys().makeMap();
+    private final Map<RequestKey, Map<Map<String, Object>, Boolean>> cachedResults = new ConcurrentHashMap<>();
     private DefaultRemoteProxy proxy;
 
     public DockerSeleniumCapabilityMatcher(DefaultRemoteProxy defaultRemoteProxy) {
@@ -26,71 +47,140 @@ public class DockerSeleniumCapabilityMatcher extends DefaultCapabilityMatcher {
     public boolean matches(Map<String, Object> nodeCapability, Map<String, Object> requestedCapability) {
         logger.log(Level.FINE, ()-> String.format("Validating %s in node with capabilities %s", requestedCapability,
                 nodeCapability));
+        if (nodeCapability == null || requestedCapability == null) {
+            return false;
+        }
+
+        RequestKey requestKey = requestKeys.computeIfAbsent(NormalizedCapabilities.of(requestedCapability),
+                this::normalize);
+        Map<Map<String, Object>, Boolean> resultsPerNode = cachedResults.get(requestKey);
+        if (resultsPerNode == null) {
+            // Only reached with that many different browser, version, platform, resolution and time zone requests
+            if (cachedResults.size() >= MAX_CACHED_REQUESTS) {
+                cachedResults.clear();
+            }
+            resultsPerNode = cachedResults.computeIfAbsent(requestKey, r -> new MapMaker().weakKeys().makeMap());
+        }
+        Boolean cachedResult = resultsPerNode.get(nodeCapability);
+        if (cachedResult != null) {
+            return cachedResult;
+        }
+
+        boolean result = matchesNode(nodeCapability, requestKey);
+        resultsPerNode.put(nodeCapability, result);
+        return result;
+    }
+
+    @VisibleForTesting
+    int getCachedRequests() {
+        return cachedResults.size();
+    }
+
+    /*
+        Only the capabilities considered by the DefaultCapabilityMatcher, plus the screen resolution and time zone for
+        docker-selenium nodes, are kept.
+     */
+    private RequestKey normalize(NormalizedCapabilities requestedCapability) {
+        Map<String, Object> capabilities = new HashMap<>();
+        for (String capability : toConsider) {
+            Object value = requestedCapability.get(capability);
+            if (value != null) {
+                capabilities.put(capability, value);
+            }
+        }
 
         /*
-            If after removing 'latest', the capabilities match docker-selenium, we leave the requestedCapabilities
-            without the version. If not, we put the requested capability back in the requestedCapability object, so it
-            can be matched by any of the Cloud Testing Providers.
+            If after removing 'latest' the capabilities match docker-selenium, the version is ignored. If not, the
+            version is matched as requested, so it can be matched by any of the Cloud Testing Providers.
          */
-        boolean browserVersionCapabilityMatches = false;
-        if (requestedCapability.containsKey(CapabilityType.VERSION)) {
-            String requestedVersion = requestedCapability.get(CapabilityType.VERSION).toString();
-            if ("latest".equalsIgnoreCase(requestedVersion)) {
-                requestedCapability.remove(CapabilityType.VERSION);
-                if (super.matches(nodeCapability, requestedCapability)) {
-                    browserVersionCapabilityMatches = true;
-                } else {
-                    requestedCapability.put(CapabilityType.VERSION, requestedVersion);
-                }
-            }
+        Object latestVersion = null;
+        Object requestedVersion = capabilities.get(CapabilityType.VERSION);
+        if (requestedVersion != null && LATEST_VERSION.equalsIgnoreCase(requestedVersion.toString())) {
+            latestVersion = capabilities.remove(CapabilityType.VERSION);
         }
 
-        boolean screenResolutionCapabilityMatches = true;
-        boolean containsScreenResolutionCapability = false;
+        Map<String, Object> requiredNodeValues = new HashMap<>();
+        Map<String, Object> defaultNodeValues = new HashMap<>();
         // This validation is only done for docker-selenium nodes
         if (proxy instanceof DockerSeleniumRemoteProxy) {
-            String[] screenResolutionNames = {"screenResolution", "resolution", "screen-resolution"};
-            for (String screenResolutionName : screenResolutionNames) {
-                if (requestedCapability.containsKey(screenResolutionName)) {
-                    screenResolutionCapabilityMatches = nodeCapability.containsKey(screenResolutionName) &&
-                            requestedCapability.get(screenResolutionName).equals(nodeCapability.get(screenResolutionName));
-                    containsScreenResolutionCapability = true;
+            for (String screenResolutionName : SCREEN_RESOLUTION_NAMES) {
+                Object screenResolution = requestedCapability.get(screenResolutionName);
+                if (screenResolution != null) {
+                    requiredNodeValues.put(screenResolutionName, screenResolution);
                 }
             }
             // This is done to avoid having the test run on a node with a configured screen resolution different from
-            // the global configured one. But not putting it to tests that should go to a cloud provider.
-            if (!containsScreenResolutionCapability && super.matches(nodeCapability, requestedCapability)) {
-                String screenResolution = String.format("%sx%s", DockerSeleniumStarterRemoteProxy.getConfiguredScreenWidth(),
-                        DockerSeleniumStarterRemoteProxy.getConfiguredScreenHeight());
-                requestedCapability.put(screenResolutionNames[0], screenResolution);
+            // the global configured one.
+            if (requiredNodeValues.isEmpty()) {
+                defaultNodeValues.put(SCREEN_RESOLUTION_NAMES[0], String.format("%sx%s",
+                        DockerSeleniumStarterRemoteProxy.getConfiguredScreenWidth(),
+                        DockerSeleniumStarterRemoteProxy.getConfiguredScreenHeight()));
+            }
+            Object timeZone = requestedCapability.get(TIME_ZONE_NAME);
+            if (timeZone != null) {
+                requiredNodeValues.put(TIME_ZONE_NAME, timeZone);
+            } else {
+                defaultNodeValues.put(TIME_ZONE_NAME, DockerSeleniumStarterRemoteProxy.getConfiguredTimeZone());
             }
         }
+        return new RequestKey(capabilities, latestVersion, requiredNodeValues, defaultNodeValues);
+    }
 
-        boolean timeZoneCapabilityMatches = true;
-        boolean containsTimeZoneCapability = false;
-        // This validation is only done for docker-selenium nodes
-        if (proxy instanceof DockerSeleniumRemoteProxy) {
-            String timeZoneName = "tz";
-            if (requestedCapability.containsKey(timeZoneName)) {
-                timeZoneCapabilityMatches = nodeCapability.containsKey(timeZoneName) &&
-                        requestedCapability.get(timeZoneName).equals(nodeCapability.get(timeZoneName));
-                containsTimeZoneCapability = true;
+    private boolean matchesNode(Map<String, Object> nodeCapability, RequestKey requestKey) {
+        for (Map.Entry<String, Object> required : requestKey.requiredNodeValues.entrySet()) {
+            if (!required.getValue().equals(nodeCapability.get(required.getKey()))) {
+                return false;
             }
-            // This is done to avoid having the test run on a node with a configured time zone different from
-            // the global configured one. But not putting it to tests that should go to a cloud provider.
-            if (!containsTimeZoneCapability && super.matches(nodeCapability, requestedCapability)) {
-                requestedCapability.put(timeZoneName, DockerSeleniumStarterRemoteProxy.getConfiguredTimeZone());
+        }
+        // Nodes that do not declare the value are not restricted by the global configuration
+        for (Map.Entry<String, Object> defaultValue : requestKey.defaultNodeValues.entrySet()) {
+            Object nodeValue = nodeCapability.get(defaultValue.getKey());
+            if (nodeValue != null && !defaultValue.getValue().equals(nodeValue)) {
+                return false;
             }
         }
+        if (super.matches(nodeCapability, requestKey.capabilities)) {
+            return true;
+        }
+        if (requestKey.latestVersion == null) {
+            return false;
+        }
+        Map<String, Object> withVersion = new HashMap<>(requestKey.capabilities);
+        withVersion.put(CapabilityType.VERSION, requestKey.latestVersion);
+        return super.matches(nodeCapability, withVersion);
+    }
+
+    private static final class RequestKey {
+        private final Map<String, Object> capabilities;
+        private final Object latestVersion;
+        private final Map<String, Object> requiredNodeValues;
+        private final Map<String, Object> defaultNodeValues;
+
+        private RequestKey(Map<String, Object> capabilities, Object latestVersion,
+                           Map<String, Object> requiredNodeValues, Map<String, Object> defaultNodeValues) {
+            this.capabilities = Collections.unmodifiableMap(capabilities);
+            this.latestVersion = latestVersion;
+            this.requiredNodeValues = Collections.unmodifiableMap(requiredNodeValues);
+            this.defaultNodeValues = Collections.unmodifiableMap(defaultNodeValues);
+        }
 
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RequestKey)) {
+                return false;
+            }
+            RequestKey that = (RequestKey) o;
+            return capabilities.equals(that.capabilities) && Objects.equals(latestVersion, that.latestVersion) &&
+                    requiredNodeValues.equals(that.requiredNodeValues) &&
+                    defaultNodeValues.equals(that.defaultNodeValues);
+        }
 
-            // If the browser version has been matched, then implicitly the matcher from the super class has also been
-        // invoked.
-        if (browserVersionCapabilityMatches) {
-            return screenResolutionCapabilityMatches && timeZoneCapabilityMatches;
-        } else {
-            return super.matches(nodeCapability, requestedCapability) && screenResolutionCapabilityMatches &&
-                    timeZoneCapabilityMatches;
+        @Override
+        public int hashCode() {
+            return Objects.hash(capabilities, latestVersion, requiredNodeValues, defaultNodeValues);
         }
     }
 }
@@ -0,0 +1,111 @@
+package de.zalando.ep.zalenium.matcher;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.MapMaker;
+import de.zalando.ep.zalenium.util.NormalizedCapabilities;
+import org.openqa.grid.internal.Registry;
+import org.openqa.grid.internal.RemoteProxy;
+import org.openqa.selenium.remote.CapabilityType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the DockerSeleniumStarterRemoteProxy instances registered in each registry, so the Cloud Testing
+ * proxies can check if a request can be served by docker-selenium without going through all the proxies of the
+ * registry. The index is updated when a starter proxy is registered or torn down.
+ *
+ * A starter proxy only matches on the capabilities considered by the DefaultCapabilityMatcher, so the result for a
+ * request is cached by their values until the registered starter proxies change. The values are taken once per
+ * interned request, the hub checks the same queued request again on every matching loop.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DockerSeleniumStarterCapabilityIndex {
+
+    private static final Map<Registry, DockerSeleniumStarterCapabilityIndex> indexes = new WeakHashMap<>();
+    private static final List<String> MATCHED_CAPABILITIES = Arrays.asList(CapabilityType.PLATFORM,
+            CapabilityType.BROWSER_NAME, CapabilityType.VERSION, "browserVersion", CapabilityType.APPLICATION_NAME);
+    private static final int MAX_CACHED_REQUESTS = 1024;
+
+    private final Set<RemoteProxy> starterProxies = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<List<Object>, Boolean> cachedResults = new ConcurrentHashMap<>();
+    // Weak keys are compared by identity, which is enough for interned requests
+    private final Map<NormalizedCapabilities, List<Object>> requestKeys = new MapMaker().weakKeys().makeMap();
+    private volatile List<RemoteProxy> starterProxiesSnapshot = Collections.emptyList();
+    private long generation;
+
+    public static synchronized DockerSeleniumStarterCapabilityIndex forRegistry(Registry registry) {
+        return indexes.computeIfAbsent(registry, r -> new DockerSeleniumStarterCapabilityIndex());
+    }
+
+    public synchronized void add(RemoteProxy starterProxy) {
+        if (starterProxies.add(starterProxy)) {
+            starterProxiesChanged();
+        }
+    }
+
+    public synchronized void remove(RemoteProxy starterProxy) {
+        if (starterProxies.remove(starterProxy)) {
+            starterProxiesChanged();
+        }
+    }
+
+    /*
+        True if any of the registered starter proxies has the requested capability. The requested capability is not
+        modified.
+     */
+    public boolean canBeServed(Map<String, Object> requestedCapability) {
+        List<Object> key = requestKeys.computeIfAbsent(NormalizedCapabilities.of(requestedCapability),
+                this::getMatchedValues);
+        Boolean cachedResult = cachedResults.get(key);
+        if (cachedResult != null) {
+            return cachedResult;
+        }
+
+        long currentGeneration;
+        List<RemoteProxy> proxies;
+        synchronized (this) {
+            currentGeneration = generation;
+            proxies = starterProxiesSnapshot;
+        }
+        boolean result = false;
+        for (RemoteProxy proxy : proxies) {
+            if (proxy.hasCapability(requestedCapability)) {
+                result = true;
+                break;
+            }
+        }
+        synchronized (this) {
+            if (currentGeneration == generation && cachedResults.size() < MAX_CACHED_REQUESTS) {
+                cachedResults.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    private List<Object> getMatchedValues(NormalizedCapabilities requestedCapability) {
+        List<Object> key = new ArrayList<>(MATCHED_CAPABILITIES.size());
+        for (String capability : MATCHED_CAPABILITIES) {
+            key.add(requestedCapability.get(capability));
+        }
+        return key;
+    }
+
+    @VisibleForTesting
+    synchronized int size() {
+        return starterProxies.size();
+    }
+
+    private void starterProxiesChanged() {
+        generation++;
+        starterProxiesSnapshot = new ArrayList<>(starterProxies);
+        cachedResults.clear();
+    }
+}
@@ -1,7 +1,5 @@
 package de.zalando.ep.zalenium.matcher;
 
-import de.zalando.ep.zalenium.proxy.DockerSeleniumStarterRemoteProxy;
-import org.openqa.grid.internal.RemoteProxy;
 import org.openqa.grid.internal.utils.DefaultCapabilityMatcher;
 import org.openqa.grid.selenium.proxy.DefaultRemoteProxy;
 import org.openqa.selenium.remote.CapabilityType;
@@ -37,13 +35,10 @@ public class ZaleniumCapabilityMatcher extends DefaultCapabilityMatcher {
             return false;
         }
 
-        for (RemoteProxy remoteProxy : proxy.getRegistry().getAllProxies()) {
-            if ((remoteProxy instanceof DockerSeleniumStarterRemoteProxy) &&
-                    remoteProxy.hasCapability(requestedCapability)) {
-                logger.log(Level.FINE, "Capability supported by docker-selenium, should not be processed by " +
-                        "a Cloud Testing Provider: {0}", requestedCapability);
-                return false;
-            }
+        if (DockerSeleniumStarterCapabilityIndex.forRegistry(proxy.getRegistry()).canBeServed(requestedCapability)) {
+            logger.log(Level.FINE, "Capability supported by docker-selenium, should not be processed by " +
+                    "a Cloud Testing Provider: {0}", requestedCapability);
+            return false;
         }
 
         return true;
@@ -51,6 +51,19 @@ public class BrowserStackRemoteProxy extends CloudTestingRemoteProxy {
         return addCapabilitiesToRegistrationRequest(registrationRequest, 1, BROWSER_STACK_PROXY_NAME);
     }
 
+    @Override
+    AccountConcurrency fetchAccountConcurrency() {
+        JsonElement bsAccountInfo = getCommonProxyUtilities().readJSONFromUrl(BROWSER_STACK_ACCOUNT_INFO,
+                BROWSER_STACK_USER, BROWSER_STACK_KEY);
+        if (bsAccountInfo == null) {
+            return null;
+        }
+        JsonObject plan = bsAccountInfo.getAsJsonObject();
+        int running = plan.has("parallel_sessions_running") ? plan.get("parallel_sessions_running").getAsInt()
+                : AccountConcurrency.UNKNOWN;
+        return new AccountConcurrency(plan.get("parallel_sessions_max_allowed").getAsInt(), running);
+    }
+
     @Override
     public String getUserNameProperty() {
         return "browserstack.user";
@@ -91,8 +104,12 @@ public class BrowserStackRemoteProxy extends CloudTestingRemoteProxy {
         String platformVersion = automation_session.get("os_version").getAsString();
         String videoUrl = automation_session.get("video_url").getAsString();
         List<String> logUrls = new ArrayList<>();
-        return new TestInformation(seleniumSessionId, testName, getProxyName(), browser, browserVersion, platform,
-                platformVersion, getVideoFileExtension(), videoUrl, logUrls);
+        TestInformation testInformation = new TestInformation(seleniumSessionId, testName, getProxyName(), browser,
+                browserVersion, platform, platformVersion, getVideoFileExtension(), videoUrl, logUrls);
+        String status = automation_session.has("status") && !automation_session.get("status").isJsonNull() ?
+                automation_session.get("status").getAsString() : "";
+        testInformation.setTestFailed("failed".equalsIgnoreCase(status) || "error".equalsIgnoreCase(status));
+        return testInformation;
     }
 
     @Override
@@ -0,0 +1,163 @@
+package de.zalando.ep.zalenium.proxy;
+
+import com.google.common.annotations.VisibleForTesting;
+import de.zalando.ep.zalenium.util.Environment;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stops sending sessions to a Cloud Testing Provider that is failing. The outcome of the recent session starts (a
+ * start slower than ZALENIUM_CLOUD_SLOW_START_SECONDS counts as failed) and of the calls to the provider API are kept;
+ * when at least half of them failed the breaker opens and the proxy does not take new sessions, so they go to
+ * docker-selenium or wait in the queue. After ZALENIUM_CLOUD_BREAKER_OPEN_SECONDS a single session is let through as
+ * a probe, its outcome closes the breaker or opens it again.
+ */
+@SuppressWarnings("WeakerAccess")
+public class CloudProviderCircuitBreaker {
+
+    private static final Logger LOGGER = Logger.getLogger(CloudProviderCircuitBreaker.class.getName());
+    private static final Environment env = new Environment();
+    private static final int WINDOW_SIZE = 20;
+    private static final int MIN_OUTCOMES = 5;
+    private static final double FAILURE_THRESHOLD = 0.5;
+    private static final long OPEN_MILLIS = TimeUnit.SECONDS.toMillis(
+            env.getIntEnvVariable("ZALENIUM_CLOUD_BREAKER_OPEN_SECONDS", 60));
+    private static final long SLOW_START_MILLIS = TimeUnit.SECONDS.toMillis(
+            env.getIntEnvVariable("ZALENIUM_CLOUD_SLOW_START_SECONDS", 120));
+    private static final ConcurrentMap<String, CloudProviderCircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String providerName;
+    private final LongSupplier clock;
+    // Last outcomes, true when failed
+    private final boolean[] outcomes = new boolean[WINDOW_SIZE];
+    private int outcomeCount;
+    private int nextOutcome;
+    private State state = State.CLOSED;
+    private long openedMillis;
+    private boolean probeInFlight;
+    private long probeStartedMillis;
+
+    @VisibleForTesting
+    CloudProviderCircuitBreaker(String providerName, LongSupplier clock) {
+        this.providerName = providerName;
+        this.clock = clock;
+    }
+
+    public static CloudProviderCircuitBreaker forProvider(String providerName) {
+        String name = String.valueOf(providerName);
+        CloudProviderCircuitBreaker breaker = breakers.get(name);
+        if (breaker == null) {
+            breaker = breakers.computeIfAbsent(name, n -> new CloudProviderCircuitBreaker(n, System::currentTimeMillis));
+        }
+        return breaker;
+    }
+
+    @VisibleForTesting
+    static void reset() {
+        breakers.clear();
+    }
+
+    /*
+        Whether a new session can be sent to the provider. When the breaker has been open long enough, the first
+        caller gets to send the probe.
+     */
+    public synchronized boolean allowSession() {
+        long now = clock.getAsLong();
+        if (state == State.HALF_OPEN && probeInFlight && now - probeStartedMillis > SLOW_START_MILLIS) {
+            // The probe never reported back
+            probeInFlight = false;
+            open();
+        }
+        if (state == State.OPEN && now - openedMillis >= OPEN_MILLIS) {
+            setState(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN && !probeInFlight) {
+            probeInFlight = true;
+            probeStartedMillis = now;
+            return true;
+        }
+        return state == State.CLOSED;
+    }
+
+    /*
+        The session allowed as a probe was not created after all (e.g. no free slot), the next one can be the probe.
+     */
+    public synchronized void cancelProbe() {
+        probeInFlight = false;
+    }
+
+    public synchronized void sessionStartFinished(boolean started, long startMillis) {
+        boolean failed = !started || startMillis > SLOW_START_MILLIS;
+        if (state == State.HALF_OPEN && probeInFlight) {
+            probeInFlight = false;
+            if (failed) {
+                open();
+            } else {
+                clearOutcomes();
+                setState(State.CLOSED);
+            }
+            return;
+        }
+        record(failed);
+    }
+
+    /*
+        API calls do not probe, they only count while the breaker is closed.
+     */
+    public synchronized void apiCallFinished(boolean failed) {
+        record(failed);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failed) {
+        if (state != State.CLOSED) {
+            return;
+        }
+        outcomes[nextOutcome] = failed;
+        nextOutcome = (nextOutcome + 1) % WINDOW_SIZE;
+        outcomeCount = Math.min(WINDOW_SIZE, outcomeCount + 1);
+        if (outcomeCount < MIN_OUTCOMES) {
+            return;
+        }
+        int failures = 0;
+        for (int i = 0; i < outcomeCount; i++) {
+            if (outcomes[i]) {
+                failures++;
+            }
+        }
+        if (failures >= outcomeCount * FAILURE_THRESHOLD) {
+            open();
+        }
+    }
+
+    private void open() {
+        openedMillis = clock.getAsLong();
+        clearOutcomes();
+        setState(State.OPEN);
+    }
+
+    private void clearOutcomes() {
+        outcomeCount = 0;
+        nextOutcome = 0;
+    }
+
+    private void setState(State newState) {
+        if (state != newState) {
+            LOGGER.log(newState == State.OPEN ? Level.WARNING : Level.INFO,
+                    "[{0}] Circuit breaker changed from {1} to {2}", new Object[]{providerName, state, newState});
+            state = newState;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package de.zalando.ep.zalenium.proxy;
+
+import com.google.common.annotations.VisibleForTesting;
+import de.zalando.ep.zalenium.util.Environment;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Orders the Cloud Testing Providers for the requests that any of them can serve. The registry tries the proxies
+ * sorted by their resource usage, so each provider reports a usage between 99 and 100 (always after docker-selenium)
+ * that grows with its score:
+ *
+ * - "latency" (default): the expected time to start a session, i.e. the average start time of the recent sessions
+ *   divided by their success rate.
+ * - "cost": the cost per minute, ZALENIUM_[PROVIDER]_COST_PER_MINUTE (e.g. ZALENIUM_SAUCELABS_COST_PER_MINUTE), divided
+ *   by the success rate. The latency breaks ties.
+ *
+ * The policy is set with ZALENIUM_CLOUD_ROUTING. Recent sessions weigh more, providers without sessions yet are tried
+ * first. Providers with no free slot are skipped by the registry anyway.
+ */
+@SuppressWarnings("WeakerAccess")
+public class CloudProviderRouting {
+
+    private static final Logger LOGGER = Logger.getLogger(CloudProviderRouting.class.getName());
+    private static final Environment env = new Environment();
+    // Weight of the last session in the averages, about the last 10 sessions count
+    private static final double SMOOTHING = 0.2;
+    private static final double MIN_SUCCESS_RATE = 0.05;
+    private static final float BASE_USAGE = 99;
+    private static final ConcurrentMap<String, ProviderStatistics> providers = new ConcurrentHashMap<>();
+    private static Policy policy = getPolicy(env.getStringEnvVariable("ZALENIUM_CLOUD_ROUTING", "latency"));
+
+    public enum Policy {
+        LATENCY, COST
+    }
+
+    private CloudProviderRouting() {
+    }
+
+    public static ProviderStatistics getStatistics(String providerName) {
+        String name = String.valueOf(providerName);
+        ProviderStatistics statistics = providers.get(name);
+        if (statistics == null) {
+            statistics = providers.computeIfAbsent(name, ProviderStatistics::new);
+        }
+        return statistics;
+    }
+
+    /*
+        Between 99 and 100, lower is tried first.
+     */
+    public static float getResourceUsageInPercent(String providerName) {
+        ProviderStatistics statistics = getStatistics(providerName);
+        double primary;
+        double secondary;
+        if (policy == Policy.COST) {
+            primary = statistics.getCostPerMinute() / statistics.getSuccessRate();
+            secondary = statistics.getExpectedStartSeconds();
+        } else {
+            primary = statistics.getExpectedStartSeconds();
+            secondary = statistics.getCostPerMinute() / statistics.getSuccessRate();
+        }
+        return BASE_USAGE + (float) (0.9 * normalize(primary) + 0.09 * normalize(secondary));
+    }
+
+    @VisibleForTesting
+    static void setPolicy(Policy routingPolicy) {
+        policy = routingPolicy;
+    }
+
+    @VisibleForTesting
+    static void reset() {
+        providers.clear();
+        policy = getPolicy(env.getStringEnvVariable("ZALENIUM_CLOUD_ROUTING", "latency"));
+    }
+
+    // Keeps the order of the values, mapping them to [0, 1)
+    private static double normalize(double value) {
+        return value <= 0 ? 0 : value / (value + 1);
+    }
+
+    private static Policy getPolicy(String name) {
+        try {
+            return Policy.valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Unknown ZALENIUM_CLOUD_ROUTING {0}, using latency", name);
+            return Policy.LATENCY;
+        }
+    }
+
+    public static final class ProviderStatistics {
+        private final String providerName;
+        private final double costPerMinute;
+        private long startedSessions;
+        private long failedSessions;
+        private double averageStartMillis = -1;
+        private double failureRate;
+
+        private ProviderStatistics(String providerName) {
+            this.providerName = providerName;
+            String variable = "ZALENIUM_" + providerName.toUpperCase(Locale.ENGLISH).replaceAll("[^A-Z0-9]", "") +
+                    "_COST_PER_MINUTE";
+            double cost = 0;
+            try {
+                cost = Double.parseDouble(env.getStringEnvVariable(variable, "0"));
+            } catch (NumberFormatException e) {
+                LOGGER.log(Level.WARNING, "{0} is not a number", variable);
+            }
+            this.costPerMinute = Math.max(0, cost);
+        }
+
+        public synchronized void sessionStarted(long startNanos) {
+            startedSessions++;
+            record(startNanos, 0);
+        }
+
+        public synchronized void sessionFailed(long startNanos) {
+            failedSessions++;
+            record(startNanos, 1);
+        }
+
+        private void record(long startNanos, double failed) {
+            double startMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            averageStartMillis = averageStartMillis < 0 ? startMillis :
+                    averageStartMillis + SMOOTHING * (startMillis - averageStartMillis);
+            failureRate = failureRate + SMOOTHING * (failed - failureRate);
+        }
+
+        public String getProviderName() {
+            return providerName;
+        }
+
+        public double getCostPerMinute() {
+            return costPerMinute;
+        }
+
+        public synchronized long getStartedSessions() {
+            return startedSessions;
+        }
+
+        public synchronized long getFailedSessions() {
+            return failedSessions;
+        }
+
+        // -1 when no session was started yet
+        public synchronized double getAverageStartMillis() {
+            return averageStartMillis;
+        }
+
+        public synchronized double getFailureRate() {
+            return failureRate;
+        }
+
+        synchronized double getSuccessRate() {
+            return Math.max(MIN_SUCCESS_RATE, 1 - failureRate);
+        }
+
+        synchronized double getExpectedStartSeconds() {
+            return averageStartMillis < 0 ? 0 : averageStartMillis / 1000 / getSuccessRate();
+        }
+    }
+}
@@ -0,0 +1,546 @@
+package de.zalando.ep.zalenium.proxy;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.JsonObject;
+import de.zalando.ep.zalenium.dashboard.Dashboard;
+import de.zalando.ep.zalenium.dashboard.TestInformation;
+import de.zalando.ep.zalenium.util.CommandTimeline;
+import de.zalando.ep.zalenium.util.Environment;
+import de.zalando.ep.zalenium.util.ExponentialBackoff;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Processes the tests finished in a Cloud Testing Provider: fetching the test information, downloading the video and
+ * logs, converting the video and updating the dashboard. Each stage has its own bounded thread pools (per provider
+ * for the metadata and the downloads), so a large run finishing at once does not start a thread and a download per
+ * test. Once the test information is known, failed
+ * tests go ahead of the passed ones.
+ *
+ * Videos and logs are usually not ready right after the test finished. Instead of blocking a thread while waiting
+ * for them, a stage that finds them not ready is scheduled again with an exponential backoff (with jitter), until
+ * ZALENIUM_CLOUD_ARTIFACT_TIMEOUT_MINUTES. The readiness is checked with HEAD requests before downloading.
+ *
+ * Pending tests are written to a journal in the videos folder. Tests still pending when the hub stopped are processed
+ * again when a proxy of the same provider registers after the restart. The journal is rewritten with only the pending
+ * tests once the done ones outnumber them, so it stays as small as the backlog.
+ */
+@SuppressWarnings("WeakerAccess")
+public class CloudTestProcessingQueue {
+
+    private static final Logger LOGGER = Logger.getLogger(CloudTestProcessingQueue.class.getName());
+    private static final Environment env = new Environment();
+    private static final String JOURNAL_FILE_NAME = "pendingCloudTests.journal";
+    private static final String ADDED = "A";
+    private static final String DONE = "D";
+    // Videos are not kept for long by the providers, older pending tests are dropped when the journal is read
+    private static final long MAX_PENDING_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+    // Below this, rewriting the journal costs more than the lines it saves
+    private static final int MIN_DONE_ENTRIES_TO_COMPACT = 100;
+
+    private static final int METADATA_THREADS = env.getIntEnvVariable("ZALENIUM_CLOUD_METADATA_THREADS", 2);
+    private static final int DOWNLOAD_THREADS = env.getIntEnvVariable("ZALENIUM_CLOUD_DOWNLOAD_THREADS", 4);
+    // Videos are encoded on a single thread each
+    private static final int TRANSCODE_THREADS = env.getIntEnvVariable("ZALENIUM_CLOUD_TRANSCODE_THREADS",
+            Runtime.getRuntime().availableProcessors());
+    private static final long RETRY_INITIAL_DELAY_MS = TimeUnit.SECONDS.toMillis(2);
+    private static final long RETRY_MAX_DELAY_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final long ARTIFACT_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(
+            env.getIntEnvVariable("ZALENIUM_CLOUD_ARTIFACT_TIMEOUT_MINUTES", 10));
+    // After the settings above, its executors and timeouts are read from them
+    private static final CloudTestProcessingQueue instance = new CloudTestProcessingQueue();
+
+    // Per provider, so retries against a provider that is down do not hold back the tests of the other ones
+    private final Map<String, ThreadPoolExecutor> metadataExecutors = new ConcurrentHashMap<>();
+    private final Map<String, ThreadPoolExecutor> downloadExecutors = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor transcodeExecutor = newExecutor("transcode", TRANSCODE_THREADS);
+    // Only hands the stages back to their executors when their delay is over
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cloud-test-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger waitingForRetry = new AtomicInteger();
+    private final Set<Job> pendingJobs = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile long artifactTimeoutMillis = ARTIFACT_TIMEOUT_MS;
+    private Map<String, JournalEntry> journaledJobs;
+    private File journalFile;
+    private int doneEntries;
+
+    public static CloudTestProcessingQueue getInstance() {
+        return instance;
+    }
+
+    public void add(CloudTestingRemoteProxy proxy, String seleniumSessionId, CommandTimeline commandTimeline) {
+        long enqueuedMillis = System.currentTimeMillis();
+        Job job = new Job(proxy, seleniumSessionId, commandTimeline, enqueuedMillis);
+        // Together, so a compaction of the journal sees the job either in it or in the pending ones
+        synchronized (this) {
+            pendingJobs.add(job);
+            appendToJournal(ADDED, enqueuedMillis, proxy.getProxyClassName(), seleniumSessionId);
+        }
+        fetchTestInformationLater(job);
+    }
+
+    /*
+        Queues again the tests of the given provider that were pending when the hub stopped.
+     */
+    public void resume(CloudTestingRemoteProxy proxy) {
+        List<Job> jobs = new ArrayList<>();
+        synchronized (this) {
+            for (JournalEntry entry : getJournaledJobs().values()) {
+                if (entry.proxyClassName.equals(String.valueOf(proxy.getProxyClassName()))) {
+                    jobs.add(new Job(proxy, entry.seleniumSessionId, null, entry.enqueuedMillis));
+                }
+            }
+            for (Job job : jobs) {
+                journaledJobs.remove(job.seleniumSessionId);
+                pendingJobs.add(job);
+            }
+        }
+        for (Job job : jobs) {
+            LOGGER.log(Level.INFO, "Resuming the processing of test {0}", job.seleniumSessionId);
+            fetchTestInformationLater(job);
+        }
+    }
+
+    /*
+        Tests being processed, the ones in the journal waiting for their provider to register are not included.
+     */
+    public int getPendingTests() {
+        return pendingJobs.size();
+    }
+
+    public JsonObject getStatus() {
+        JsonObject status = new JsonObject();
+        status.add("metadata", getExecutorStatus(metadataExecutors.values()));
+        status.add("download", getExecutorStatus(downloadExecutors.values()));
+        status.add("transcode", getExecutorStatus(Collections.singleton(transcodeExecutor)));
+        status.addProperty("waitingForRetry", waitingForRetry.get());
+        status.addProperty("pending", pendingJobs.size());
+        synchronized (this) {
+            status.addProperty("waitingForProvider", getJournaledJobs().size());
+        }
+        long oldestEnqueuedMillis = pendingJobs.stream().mapToLong(job -> job.enqueuedMillis).min()
+                .orElse(System.currentTimeMillis());
+        status.addProperty("lagSeconds",
+                TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - oldestEnqueuedMillis));
+        return status;
+    }
+
+    @VisibleForTesting
+    boolean isPending(String seleniumSessionId) {
+        return pendingJobs.stream().anyMatch(job -> job.seleniumSessionId.equals(seleniumSessionId));
+    }
+
+    @VisibleForTesting
+    synchronized void setJournalFile(File journalFile) {
+        this.journalFile = journalFile;
+        this.journaledJobs = null;
+    }
+
+    /*
+        Drops the tests of the provider being processed, without marking them as done, and waits for the stages that
+        are running. The executors of the provider are created again for its next tests.
+     */
+    @VisibleForTesting
+    void stopProcessing(String proxyClassName) throws InterruptedException {
+        synchronized (this) {
+            for (Job job : pendingJobs) {
+                if (proxyClassName.equals(String.valueOf(job.proxy.getProxyClassName()))) {
+                    job.finished.set(true);
+                    pendingJobs.remove(job);
+                }
+            }
+        }
+        for (ThreadPoolExecutor executor : Arrays.asList(metadataExecutors.remove(proxyClassName),
+                downloadExecutors.remove(proxyClassName))) {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    @VisibleForTesting
+    void setArtifactTimeoutMillis(long artifactTimeoutMillis) {
+        this.artifactTimeoutMillis = artifactTimeoutMillis;
+    }
+
+    @VisibleForTesting
+    void resetArtifactTimeout() {
+        this.artifactTimeoutMillis = ARTIFACT_TIMEOUT_MS;
+    }
+
+    @VisibleForTesting
+    synchronized int getDoneEntries() {
+        return doneEntries;
+    }
+
+    private void fetchTestInformationLater(Job job) {
+        ThreadPoolExecutor executor = getExecutor(metadataExecutors, "metadata", job, METADATA_THREADS);
+        executor.execute(new StageTask(job, executor, () -> fetchTestInformation(job)));
+    }
+
+    /*
+        A test without information yet is retried like one with incomplete information, it is only done without it
+        once ZALENIUM_CLOUD_ARTIFACT_TIMEOUT_MINUTES passed.
+     */
+    private void fetchTestInformation(Job job) {
+        ThreadPoolExecutor executor = getExecutor(metadataExecutors, "metadata", job, METADATA_THREADS);
+        TestInformation testInformation = job.proxy.fetchTestInformation(job.seleniumSessionId);
+        if (testInformation == null) {
+            if (!retryLater(job, executor, () -> fetchTestInformation(job))) {
+                LOGGER.log(Level.WARNING, "The information of test {0} could not be fetched in time",
+                        job.seleniumSessionId);
+                finish(job);
+            }
+            return;
+        }
+        job.testInformation = testInformation;
+        job.failed = testInformation.isTestFailed();
+        if (job.proxy.isTestInformationComplete(testInformation)) {
+            job.artifacts = new LinkedHashMap<>(job.proxy.getTestArtifacts(testInformation));
+        } else if (retryLater(job, executor, () -> fetchTestInformation(job))) {
+            return;
+        } else {
+            LOGGER.log(Level.WARNING, "The artifacts of test {0} were not published in time, they are not downloaded",
+                    job.seleniumSessionId);
+            job.artifacts = new LinkedHashMap<>();
+        }
+        job.backoff = null;
+        ThreadPoolExecutor downloadExecutor = getExecutor(downloadExecutors, "download", job, DOWNLOAD_THREADS);
+        downloadExecutor.execute(new StageTask(job, downloadExecutor, () -> downloadArtifacts(job)));
+    }
+
+    /*
+        Downloads the artifacts in order, the stage is scheduled again when the next one is not ready yet.
+     */
+    private void downloadArtifacts(Job job) throws InterruptedException {
+        Iterator<Map.Entry<String, String>> artifacts = job.artifacts.entrySet().iterator();
+        while (artifacts.hasNext()) {
+            Map.Entry<String, String> artifact = artifacts.next();
+            boolean downloaded = false;
+            try {
+                downloaded = job.proxy.downloadTestArtifact(artifact.getKey(), artifact.getValue());
+            } catch (IOException e) {
+                LOGGER.log(Level.INFO, "Download of {0} failed, {1}", new Object[]{artifact.getKey(), e.toString()});
+            }
+            if (!downloaded) {
+                if (retryLater(job, getExecutor(downloadExecutors, "download", job, DOWNLOAD_THREADS),
+                        () -> downloadArtifacts(job))) {
+                    return;
+                }
+                LOGGER.log(Level.WARNING, "{0} could not be downloaded in time", artifact.getKey());
+                job.proxy.discardTestArtifact(artifact.getValue());
+            }
+            artifacts.remove();
+            job.backoff = null;
+        }
+        if (job.proxy.convertVideoFileToMP4()) {
+            transcodeExecutor.execute(new StageTask(job, transcodeExecutor, () -> transcode(job)));
+        } else {
+            finish(job);
+        }
+    }
+
+    /*
+        Schedules the stage again after the next backoff delay, returns false when the job ran out of time.
+     */
+    private boolean retryLater(Job job, ThreadPoolExecutor executor, Stage stage) {
+        if (job.backoff == null) {
+            job.backoff = new ExponentialBackoff(RETRY_INITIAL_DELAY_MS, RETRY_MAX_DELAY_MS, artifactTimeoutMillis);
+        }
+        long delay = job.backoff.nextDelayMillis();
+        if (delay == ExponentialBackoff.DEADLINE_REACHED) {
+            return false;
+        }
+        waitingForRetry.incrementAndGet();
+        retryScheduler.schedule(() -> {
+            waitingForRetry.decrementAndGet();
+            if (!job.finished.get()) {
+                executor.execute(new StageTask(job, executor, stage));
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    private void transcode(Job job) {
+        job.proxy.convertTestVideo(job.testInformation);
+        finish(job);
+    }
+
+    private void finish(Job job) {
+        if (!job.finished.compareAndSet(false, true)) {
+            return;
+        }
+        boolean added = false;
+        try {
+            if (job.testInformation != null) {
+                job.proxy.completeDashboardUpdate(job.testInformation, job.commandTimeline);
+            }
+            added = true;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, e.toString(), e);
+        } finally {
+            synchronized (this) {
+                pendingJobs.remove(job);
+                if (added) {
+                    appendToJournal(DONE, System.currentTimeMillis(), "", job.seleniumSessionId);
+                } else {
+                    // Not marked as done, it is processed again when its provider registers after a restart
+                    getJournaledJobs().put(job.seleniumSessionId, new JournalEntry(
+                            String.valueOf(job.proxy.getProxyClassName()), job.seleniumSessionId, job.enqueuedMillis));
+                }
+            }
+        }
+    }
+
+    private synchronized void appendToJournal(String operation, long timestamp, String proxyClassName,
+                                              String seleniumSessionId) {
+        getJournaledJobs();
+        File journal = getJournalFile();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(journal, true), StandardCharsets.UTF_8)) {
+            writer.write(String.join("\t", operation, String.valueOf(timestamp), String.valueOf(proxyClassName),
+                    seleniumSessionId));
+            writer.write('\n');
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Pending test could not be written to the journal " + journal, e);
+        }
+        if (DONE.equals(operation)) {
+            doneEntries++;
+            int pendingEntries = journaledJobs.size() + pendingJobs.size();
+            if (doneEntries >= MIN_DONE_ENTRIES_TO_COMPACT && doneEntries > pendingEntries) {
+                compactJournal();
+            }
+        }
+    }
+
+    /*
+        Rewrites the journal with the tests waiting for their provider and the ones being processed.
+     */
+    private void compactJournal() {
+        List<JournalEntry> entries = new ArrayList<>(journaledJobs.values());
+        for (Job job : pendingJobs) {
+            entries.add(new JournalEntry(String.valueOf(job.proxy.getProxyClassName()), job.seleniumSessionId,
+                    job.enqueuedMillis));
+        }
+        File journal = getJournalFile();
+        try {
+            writeJournal(journal, entries);
+            doneEntries = 0;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "The journal of pending tests could not be compacted " + journal, e);
+        }
+    }
+
+    /*
+        Written next to the journal and moved in place, a crash leaves either the old or the new one.
+     */
+    private static void writeJournal(File journal, List<JournalEntry> entries) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (JournalEntry entry : entries) {
+            lines.add(String.join("\t", ADDED, String.valueOf(entry.enqueuedMillis), entry.proxyClassName,
+                    entry.seleniumSessionId));
+        }
+        File compacted = new File(journal.getPath() + ".tmp");
+        Files.write(compacted.toPath(), lines, StandardCharsets.UTF_8);
+        try {
+            Files.move(compacted.toPath(), journal.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(compacted.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /*
+        Reads the journal once, keeping the tests added but not done, and writes it again with only those.
+     */
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private Map<String, JournalEntry> getJournaledJobs() {
+        if (journaledJobs != null) {
+            return journaledJobs;
+        }
+        journaledJobs = new LinkedHashMap<>();
+        File journal = getJournalFile();
+        try {
+            if (journal.exists()) {
+                long oldestAllowedMillis = System.currentTimeMillis() - MAX_PENDING_AGE_MILLIS;
+                for (String line : Files.readAllLines(journal.toPath(), StandardCharsets.UTF_8)) {
+                    String[] fields = line.split("\t", -1);
+                    if (fields.length != 4) {
+                        continue;
+                    }
+                    if (ADDED.equals(fields[0]) && Long.parseLong(fields[1]) >= oldestAllowedMillis) {
+                        journaledJobs.put(fields[3], new JournalEntry(fields[2], fields[3], Long.parseLong(fields[1])));
+                    } else if (DONE.equals(fields[0])) {
+                        journaledJobs.remove(fields[3]);
+                    }
+                }
+            }
+            journal.getParentFile().mkdirs();
+            writeJournal(journal, new ArrayList<>(journaledJobs.values()));
+            doneEntries = 0;
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.log(Level.WARNING, "The journal of pending tests could not be read " + journal, e);
+        }
+        return journaledJobs;
+    }
+
+    private File getJournalFile() {
+        if (journalFile == null) {
+            journalFile = new File(Dashboard.getLocalVideosPath(), JOURNAL_FILE_NAME);
+        }
+        return journalFile;
+    }
+
+    private static ThreadPoolExecutor getExecutor(Map<String, ThreadPoolExecutor> executors, String stage, Job job,
+                                                 int threads) {
+        String provider = String.valueOf(job.proxy.getProxyClassName());
+        ThreadPoolExecutor executor = executors.get(provider);
+        if (executor == null) {
+            executor = executors.computeIfAbsent(provider, p -> newExecutor(stage + "-" + p, threads));
+        }
+        return executor;
+    }
+
+    private static JsonObject getExecutorStatus(Collection<ThreadPoolExecutor> executors) {
+        int queued = 0;
+        int active = 0;
+        for (ThreadPoolExecutor executor : executors) {
+            queued += executor.getQueue().size();
+            active += executor.getActiveCount();
+        }
+        JsonObject status = new JsonObject();
+        status.addProperty("queued", queued);
+        status.addProperty("active", active);
+        return status;
+    }
+
+    private static ThreadPoolExecutor newExecutor(String stage, int threads) {
+        int poolSize = Math.max(1, threads);
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "cloud-test-" + stage + "-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+    /*
+        Failed tests first, then in the order they were queued. A stage that fails is run again with the same backoff
+        as the artifacts that are not ready, the test is only done once its time ran out.
+     */
+    private final class StageTask implements Runnable, Comparable<StageTask> {
+        private final Job job;
+        private final ThreadPoolExecutor executor;
+        private final Stage stage;
+        private final boolean failed;
+        private final long order = sequence.incrementAndGet();
+
+        private StageTask(Job job, ThreadPoolExecutor executor, Stage stage) {
+            this.job = job;
+            this.executor = executor;
+            this.stage = stage;
+            this.failed = job.failed;
+        }
+
+        @Override
+        public void run() {
+            if (job.finished.get()) {
+                return;
+            }
+            try {
+                stage.run();
+            } catch (Exception e) {
+                if (job.finished.get()) {
+                    return;
+                }
+                if (retryLater(job, executor, stage)) {
+                    LOGGER.log(Level.INFO, "Processing of test {0} failed, trying again later, {1}",
+                            new Object[]{job.seleniumSessionId, e.toString()});
+                    return;
+                }
+                LOGGER.log(Level.SEVERE, e.toString(), e);
+                finish(job);
+            }
+        }
+
+        @Override
+        public int compareTo(StageTask other) {
+            if (failed != other.failed) {
+                return failed ? -1 : 1;
+            }
+            return Long.compare(order, other.order);
+        }
+    }
+
+    private static final class Job {
+        private final CloudTestingRemoteProxy proxy;
+        private final String seleniumSessionId;
+        private final CommandTimeline commandTimeline;
+        private final long enqueuedMillis;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile TestInformation testInformation;
+        private volatile boolean failed;
+        // Only used by the stage running, the executors hand them over between stages
+        private Map<String, String> artifacts;
+        private ExponentialBackoff backoff;
+
+        private Job(CloudTestingRemoteProxy proxy, String seleniumSessionId, CommandTimeline commandTimeline,
+                    long enqueuedMillis) {
+            this.proxy = proxy;
+            this.seleniumSessionId = seleniumSessionId;
+            this.commandTimeline = commandTimeline;
+            this.enqueuedMillis = enqueuedMillis;
+        }
+    }
+
+    private static final class JournalEntry {
+        private final String proxyClassName;
+        private final String seleniumSessionId;
+        private final long enqueuedMillis;
+
+        private JournalEntry(String proxyClassName, String seleniumSessionId, long enqueuedMillis) {
+            this.proxyClassName = proxyClassName;
+            this.seleniumSessionId = seleniumSessionId;
+            this.enqueuedMillis = enqueuedMillis;
+        }
+    }
+}
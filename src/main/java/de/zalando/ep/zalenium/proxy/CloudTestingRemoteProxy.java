@@ -6,9 +6,7 @@ package de.zalando.ep.zalenium.proxy;
  */
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import de.zalando.ep.zalenium.dashboard.Dashboard;
+import de.zalando.ep.zalenium.dashboard.DashboardPublisher;
 import de.zalando.ep.zalenium.dashboard.TestInformation;
 import de.zalando.ep.zalenium.matcher.ZaleniumCapabilityMatcher;
 import de.zalando.ep.zalenium.servlet.renderer.CloudProxyHtmlRenderer;
@@ -17,6 +15,7 @@ import org.apache.commons.io.FileUtils;
 import org.openqa.grid.common.RegistrationRequest;
 import org.openqa.grid.internal.Registry;
 import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.internal.listeners.RegistrationListener;
 import org.openqa.grid.internal.utils.CapabilityMatcher;
 import org.openqa.grid.internal.utils.HtmlRenderer;
 import org.openqa.grid.selenium.proxy.DefaultRemoteProxy;
@@ -33,26 +32,51 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 @SuppressWarnings("WeakerAccess")
-public class CloudTestingRemoteProxy extends DefaultRemoteProxy {
+public class CloudTestingRemoteProxy extends DefaultRemoteProxy implements RegistrationListener {
 
     private static final Logger logger = Logger.getLogger(CloudTestingRemoteProxy.class.getName());
+    private static final String SESSION_START_NANOS = "cloudSessionStartNanos";
     private static final GoogleAnalyticsApi defaultGA = new GoogleAnalyticsApi();
     private static final CommonProxyUtilities defaultCommonProxyUtilities = new CommonProxyUtilities();
     private static final Environment defaultEnvironment = new Environment();
     private static GoogleAnalyticsApi ga = defaultGA;
     private static CommonProxyUtilities commonProxyUtilities = defaultCommonProxyUtilities;
     private static Environment env = defaultEnvironment;
+    private static final long CONCURRENCY_REFRESH_SECONDS =
+            defaultEnvironment.getIntEnvVariable("ZALENIUM_CLOUD_CONCURRENCY_REFRESH_SECONDS", 60);
+    // Account concurrency read when the registration request was built, in the custom configuration of the proxy
+    private static final String REGISTERED_CONCURRENCY = "zaleniumCloudConcurrency";
+    private static final ScheduledExecutorService concurrencyRefresher =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "cloud-concurrency-refresher");
+                thread.setDaemon(true);
+                return thread;
+            });
     private final HtmlRenderer renderer = new CloudProxyHtmlRenderer(this);
     private CapabilityMatcher capabilityHelper;
+    // Slots that can be used according to the account concurrency, at most the registered ones
+    private volatile int availableSlots;
+    private ScheduledFuture<?> concurrencyRefresh;
 
     @SuppressWarnings("WeakerAccess")
     public CloudTestingRemoteProxy(RegistrationRequest request, Registry registry) {
         super(request, registry);
+        String registeredConcurrency = request.getConfiguration().custom == null ? null :
+                request.getConfiguration().custom.get(REGISTERED_CONCURRENCY);
+        availableSlots = registeredConcurrency == null ? Integer.MAX_VALUE : Integer.parseInt(registeredConcurrency);
     }
 
     protected static GoogleAnalyticsApi getGa() {
@@ -87,18 +111,33 @@ public class CloudTestingRemoteProxy extends DefaultRemoteProxy {
         commonProxyUtilities = defaultCommonProxyUtilities;
     }
 
+    @VisibleForTesting
+    static void setEnv(final Environment env) {
+        CloudTestingRemoteProxy.env = env;
+    }
+
     @VisibleForTesting
     static void restoreEnvironment() {
         env = defaultEnvironment;
     }
 
+    /*
+        The slots are created once, with the account concurrency, or with ZALENIUM_CLOUD_MAX_SLOTS when it is higher,
+        so the concurrency can grow at runtime up to that number without registering the proxy again. Only the account
+        concurrency can be used until it is refreshed.
+     */
     public static RegistrationRequest addCapabilitiesToRegistrationRequest(RegistrationRequest registrationRequest,
                                                                            int concurrency, String proxyName) {
+        int maxSlots = env.getIntEnvVariable("ZALENIUM_CLOUD_MAX_SLOTS", 0);
         DesiredCapabilities desiredCapabilities = new DesiredCapabilities();
-        desiredCapabilities.setCapability(RegistrationRequest.MAX_INSTANCES, concurrency);
+        desiredCapabilities.setCapability(RegistrationRequest.MAX_INSTANCES, Math.max(concurrency, maxSlots));
         desiredCapabilities.setBrowserName(proxyName);
         desiredCapabilities.setPlatform(Platform.ANY);
         registrationRequest.getConfiguration().capabilities.add(desiredCapabilities);
+        if (registrationRequest.getConfiguration().custom == null) {
+            registrationRequest.getConfiguration().custom = new HashMap<>();
+        }
+        registrationRequest.getConfiguration().custom.put(REGISTERED_CONCURRENCY, String.valueOf(concurrency));
         return registrationRequest;
     }
 
@@ -110,41 +149,91 @@ public class CloudTestingRemoteProxy extends DefaultRemoteProxy {
         if (!hasCapability(requestedCapability)) {
             return null;
         }
+        if (DockerSeleniumStarterRemoteProxy.isDraining()) {
+            logger.log(Level.FINE, () -> "Draining, test will not be forwarded to " + getProxyName());
+            return null;
+        }
+        if (getTotalUsed() >= availableSlots) {
+            logger.log(Level.FINE, () -> "Account concurrency reached, test will not be forwarded to " + getProxyName());
+            return null;
+        }
+        CloudProviderCircuitBreaker circuitBreaker = CloudProviderCircuitBreaker.forProvider(getProxyName());
+        if (!circuitBreaker.allowSession()) {
+            logger.log(Level.FINE, () -> "Circuit breaker open, test will not be forwarded to " + getProxyName());
+            return null;
+        }
         logger.log(Level.INFO, () ->"Test will be forwarded to " + getProxyName() + ", " + requestedCapability);
-        return super.getNewSession(requestedCapability);
+        TestSession session = super.getNewSession(requestedCapability);
+        if (session == null) {
+            circuitBreaker.cancelProbe();
+        }
+        return session;
     }
 
+    /*
+        Runs for every forwarded command, only the session start and stop requests are modified or tracked, which are
+        checked through the request type computed when the request was parsed.
+     */
     @Override
     public void beforeCommand(TestSession session, HttpServletRequest request, HttpServletResponse response) {
-        if (request instanceof WebDriverRequest && "POST".equalsIgnoreCase(request.getMethod())) {
+        if (isRequestOfType(request, RequestType.START_SESSION)) {
             WebDriverRequest seleniumRequest = (WebDriverRequest) request;
-            if (seleniumRequest.getRequestType().equals(RequestType.START_SESSION)) {
-                String body = seleniumRequest.getBody();
-                JsonObject jsonObject = new JsonParser().parse(body).getAsJsonObject();
-                JsonObject desiredCapabilities = jsonObject.getAsJsonObject("desiredCapabilities");
-                desiredCapabilities.addProperty(getUserNameProperty(), getUserNameValue());
-                desiredCapabilities.addProperty(getAccessKeyProperty(), getAccessKeyValue());
-                if (!desiredCapabilities.has(CapabilityType.VERSION) && proxySupportsLatestAsCapability()) {
-                    desiredCapabilities.addProperty(CapabilityType.VERSION, "latest");
-                }
-                seleniumRequest.setBody(jsonObject.toString());
-            }
+            Map<String, String> credentials = new LinkedHashMap<>();
+            credentials.put(getUserNameProperty(), getUserNameValue());
+            credentials.put(getAccessKeyProperty(), getAccessKeyValue());
+            Map<String, String> defaults = proxySupportsLatestAsCapability() ?
+                    Collections.singletonMap(CapabilityType.VERSION, "latest") : Collections.emptyMap();
+            seleniumRequest.setBody(DesiredCapabilitiesRewriter.inject(seleniumRequest.getBody(), credentials,
+                    defaults));
+            session.put(SESSION_START_NANOS, System.nanoTime());
         }
-        super.beforeCommand(session, request, response);
+        LastCommand.commandExecuting(session, request);
+        CommandMetrics.commandStarted(session);
     }
 
     @Override
     public void afterCommand(TestSession session, HttpServletRequest request, HttpServletResponse response) {
-        if (request instanceof WebDriverRequest && "DELETE".equalsIgnoreCase(request.getMethod())) {
-            WebDriverRequest seleniumRequest = (WebDriverRequest) request;
-            if (seleniumRequest.getRequestType().equals(RequestType.STOP_SESSION)) {
-                long executionTime = (System.currentTimeMillis() - session.getSlot().getLastSessionStart()) / 1000;
-                getGa().testEvent(getProxyClassName(), session.getRequestedCapabilities().toString(),
-                        executionTime);
-                addTestToDashboard(session.getExternalKey().getKey());
-            }
+        CommandMetrics.commandFinished(session, getProxyName() == null ? "Cloud" : getProxyName(), request, response);
+        if (isRequestOfType(request, RequestType.START_SESSION)) {
+            boolean started = session.getExternalKey() != null && (response == null || response.getStatus() < 400);
+            recordSessionStart(session, started);
+        }
+        if (isRequestOfType(request, RequestType.STOP_SESSION)) {
+            long executionTime = (System.currentTimeMillis() - session.getSlot().getLastSessionStart()) / 1000;
+            getGa().testEvent(getProxyClassName(),
+                    NormalizedCapabilities.of(session.getRequestedCapabilities()).toString(), executionTime);
+            addTestToDashboard(session.getExternalKey().getKey(), CommandMetrics.getSessionTimeline(session));
+        }
+        LastCommand.commandExecuted(session, request);
+    }
+
+    /*
+        Sessions whose start request did not get to afterCommand could not be started.
+     */
+    @Override
+    public void afterSession(TestSession session) {
+        recordSessionStart(session, false);
+        super.afterSession(session);
+    }
+
+    private void recordSessionStart(TestSession session, boolean started) {
+        Object startNanos = session.get(SESSION_START_NANOS);
+        if (!(startNanos instanceof Long)) {
+            return;
+        }
+        session.put(SESSION_START_NANOS, null);
+        CloudProviderRouting.ProviderStatistics statistics = CloudProviderRouting.getStatistics(getProxyName());
+        if (started) {
+            statistics.sessionStarted((Long) startNanos);
+        } else {
+            statistics.sessionFailed((Long) startNanos);
         }
-        super.afterCommand(session, request, response);
+        CloudProviderCircuitBreaker.forProvider(getProxyName()).sessionStartFinished(started,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - (Long) startNanos));
+    }
+
+    private static boolean isRequestOfType(HttpServletRequest request, RequestType requestType) {
+        return request instanceof WebDriverRequest && requestType == ((WebDriverRequest) request).getRequestType();
     }
 
     @Override
@@ -201,27 +290,146 @@ public class CloudTestingRemoteProxy extends DefaultRemoteProxy {
     }
 
     public void addTestToDashboard(String seleniumSessionId) {
-        new Thread(() -> {
-            try {
-                TestInformation testInformation = getTestInformation(seleniumSessionId);
-                String fileNameWithFullPath = testInformation.getVideoFolderPath() + "/" + testInformation.getFileName();
-                commonProxyUtilities.downloadFile(testInformation.getVideoUrl(), fileNameWithFullPath,
-                        getUserNameValue(), getAccessKeyValue(), useAuthenticationToDownloadFile());
-                if (convertVideoFileToMP4()) {
-                    commonProxyUtilities.convertFlvFileToMP4(testInformation);
-                }
-                for (String logUrl : testInformation.getLogUrls()) {
-                    String fileName = logUrl.substring(logUrl.lastIndexOf('/') + 1);
-                    fileNameWithFullPath = testInformation.getLogsFolderPath() + "/" + fileName;
-                    commonProxyUtilities.downloadFile(logUrl, fileNameWithFullPath,
-                            getUserNameValue(), getAccessKeyValue(), useAuthenticationToDownloadFile());
-                }
-                createFeatureNotImplementedFile(testInformation.getLogsFolderPath());
-                Dashboard.updateDashboard(testInformation);
-            } catch (Exception e) {
-                logger.log(Level.SEVERE, e.toString(), e);
-            }
-        }).start();
+        addTestToDashboard(seleniumSessionId, null);
+    }
+
+    /*
+        Amount of finished tests whose video and logs are still being downloaded.
+     */
+    public static int getPendingDashboardUpdates() {
+        return CloudTestProcessingQueue.getInstance().getPendingTests();
+    }
+
+    public void addTestToDashboard(String seleniumSessionId, CommandTimeline commandTimeline) {
+        CloudTestProcessingQueue.getInstance().add(this, seleniumSessionId, commandTimeline);
+    }
+
+    /*
+        Tests of this provider that were still being processed when the hub stopped are queued again. The account
+        concurrency is refreshed right away, other users of the account may be running sessions already.
+     */
+    @Override
+    public void beforeRegistration() {
+        CloudTestProcessingQueue.getInstance().resume(this);
+        if (CONCURRENCY_REFRESH_SECONDS > 0) {
+            concurrencyRefresh = concurrencyRefresher.scheduleWithFixedDelay(this::refreshAccountConcurrency, 0,
+                    CONCURRENCY_REFRESH_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void teardown() {
+        super.teardown();
+        if (concurrencyRefresh != null) {
+            concurrencyRefresh.cancel(false);
+        }
+    }
+
+    /*
+        Concurrency allowed by the account and sessions currently running in it, including the ones of other hubs
+        sharing the account. Null when the provider does not expose it.
+     */
+    AccountConcurrency fetchAccountConcurrency() {
+        return null;
+    }
+
+    /*
+        Adjusts the slots that can be used to what the account allows right now, leaving out the sessions that other
+        users of the account are running. The previous value is kept when the provider cannot be reached.
+     */
+    @VisibleForTesting
+    void refreshAccountConcurrency() {
+        AccountConcurrency accountConcurrency;
+        try {
+            accountConcurrency = fetchAccountConcurrency();
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Account concurrency of " + getProxyName() + " could not be refreshed", e);
+            CloudProviderCircuitBreaker.forProvider(getProxyName()).apiCallFinished(true);
+            return;
+        }
+        if (accountConcurrency == null) {
+            return;
+        }
+        CloudProviderCircuitBreaker.forProvider(getProxyName()).apiCallFinished(false);
+        int usedByOthers = 0;
+        if (accountConcurrency.running != AccountConcurrency.UNKNOWN) {
+            usedByOthers = Math.max(0, accountConcurrency.running - getTotalUsed());
+        }
+        int slots = Math.max(0, Math.min(getTestSlots().size(), accountConcurrency.limit - usedByOthers));
+        if (slots != availableSlots) {
+            logger.log(Level.INFO, String.format("[%s] Available slots changed to %s (account concurrency %s, " +
+                    "used by others %s)", getProxyName(), slots, accountConcurrency.limit, usedByOthers));
+            availableSlots = slots;
+        }
+    }
+
+    public int getAvailableSlots() {
+        return Math.min(getTestSlots().size(), availableSlots);
+    }
+
+    TestInformation fetchTestInformation(String seleniumSessionId) {
+        try {
+            TestInformation testInformation = getTestInformation(seleniumSessionId);
+            CloudProviderCircuitBreaker.forProvider(getProxyName()).apiCallFinished(false);
+            return testInformation;
+        } catch (RuntimeException e) {
+            CloudProviderCircuitBreaker.forProvider(getProxyName()).apiCallFinished(true);
+            throw e;
+        }
+    }
+
+    /*
+        Whether the test information has everything needed to download the artifacts, some providers publish the
+        video URL a while after the test finished.
+     */
+    boolean isTestInformationComplete(TestInformation testInformation) {
+        return true;
+    }
+
+    /*
+        Video and logs of the test, by URL, with the file each one is downloaded to.
+     */
+    Map<String, String> getTestArtifacts(TestInformation testInformation) {
+        Map<String, String> artifacts = new LinkedHashMap<>();
+        artifacts.put(testInformation.getVideoUrl(),
+                testInformation.getVideoFolderPath() + "/" + testInformation.getFileName());
+        for (String logUrl : testInformation.getLogUrls()) {
+            String fileName = logUrl.substring(logUrl.lastIndexOf('/') + 1);
+            artifacts.put(logUrl, testInformation.getLogsFolderPath() + "/" + fileName);
+        }
+        return artifacts;
+    }
+
+    boolean downloadTestArtifact(String url, String fileNameWithFullPath) throws IOException, InterruptedException {
+        return commonProxyUtilities.downloadFileIfReady(url, fileNameWithFullPath, getUserNameValue(),
+                getAccessKeyValue(), useAuthenticationToDownloadFile());
+    }
+
+    void discardTestArtifact(String fileNameWithFullPath) {
+        commonProxyUtilities.discardPartialDownload(fileNameWithFullPath);
+    }
+
+    void convertTestVideo(TestInformation testInformation) {
+        commonProxyUtilities.convertFlvFileToMP4(testInformation);
+    }
+
+    void completeDashboardUpdate(TestInformation testInformation, CommandTimeline commandTimeline)
+            throws IOException {
+        createFeatureNotImplementedFile(testInformation.getLogsFolderPath());
+        if (commandTimeline != null) {
+            testInformation.setCommandLatency(commandTimeline.getSummary());
+            commandTimeline.writeTo(new File(testInformation.getLogsFolderPath(), CommandTimeline.TIMELINE_FILE_NAME));
+            testInformation.setCommandTimelineRecorded(true);
+        }
+        try {
+            // The job leaves the journal when this returns, so the test has to be in the dashboard by then
+            DashboardPublisher.publish(testInformation).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while adding the test to the dashboard", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
     }
 
     @Override
@@ -234,11 +442,11 @@ public class CloudTestingRemoteProxy extends DefaultRemoteProxy {
 
     /*
         Making the node seem as heavily used, in order to get it listed after the 'docker-selenium' nodes.
-        99% used.
+        Between 99% and 100% used, ordering the cloud providers by the routing policy.
     */
     @Override
     public float getResourceUsageInPercent() {
-        return 99;
+        return CloudProviderRouting.getResourceUsageInPercent(getProxyName());
     }
 
     @Override
@@ -263,4 +471,15 @@ public class CloudTestingRemoteProxy extends DefaultRemoteProxy {
         }
 
     }
+
+    static final class AccountConcurrency {
+        static final int UNKNOWN = -1;
+        private final int limit;
+        private final int running;
+
+        AccountConcurrency(int limit, int running) {
+            this.limit = limit;
+            this.running = running;
+        }
+    }
 }
@@ -4,11 +4,14 @@ import com.google.common.annotations.VisibleForTesting;
 import de.zalando.ep.zalenium.container.ContainerClient;
 import de.zalando.ep.zalenium.container.ContainerClientRegistration;
 import de.zalando.ep.zalenium.container.ContainerFactory;
-import de.zalando.ep.zalenium.dashboard.Dashboard;
+import de.zalando.ep.zalenium.dashboard.DashboardPublisher;
 import de.zalando.ep.zalenium.dashboard.TestInformation;
 import de.zalando.ep.zalenium.matcher.DockerSeleniumCapabilityMatcher;
+import de.zalando.ep.zalenium.util.CommandMetrics;
+import de.zalando.ep.zalenium.util.CommandTimeline;
 import de.zalando.ep.zalenium.util.Environment;
 import de.zalando.ep.zalenium.util.GoogleAnalyticsApi;
+import de.zalando.ep.zalenium.util.NormalizedCapabilities;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.utils.IOUtils;
@@ -52,6 +55,7 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
     static final long DEFAULT_MAX_TEST_IDLE_TIME_SECS = 90L;
     private static final Logger LOGGER = Logger.getLogger(DockerSeleniumRemoteProxy.class.getName());
     private static final int MAX_UNIQUE_TEST_SESSIONS = 1;
+    private static final String PROXY_NAME = "Zalenium";
     private static final Environment defaultEnvironment = new Environment();
     private static boolean videoRecordingEnabled;
     private static Environment env = defaultEnvironment;
@@ -126,9 +130,14 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
         if (!hasCapability(requestedCapability)) {
             return null;
         }
+        if (DockerSeleniumStarterRemoteProxy.isDraining()) {
+            LOGGER.log(Level.FINE, "{0} Draining, no new sessions allowed", getId());
+            return null;
+        }
         if (increaseCounter()) {
             TestSession newSession = super.getNewSession(requestedCapability);
-            LOGGER.log(Level.FINE, getId() + " Creating session for: " + requestedCapability.toString());
+            LOGGER.log(Level.FINE, () -> getId() + " Creating session for: " +
+                    NormalizedCapabilities.of(requestedCapability));
             String browserName = requestedCapability.getOrDefault(CapabilityType.BROWSER_NAME, "").toString();
             testName = requestedCapability.getOrDefault("name", "").toString();
             if (testName.isEmpty()) {
@@ -142,9 +151,10 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
                 setVideoRecordingEnabled(videoRecording);
             }
             String browserVersion = newSession.getSlot().getCapabilities().getOrDefault("version", "").toString();
-            testInformation = new TestInformation(testName, testName, "Zalenium", browserName, browserVersion,
+            testInformation = new TestInformation(testName, testName, PROXY_NAME, browserName, browserVersion,
                     Platform.LINUX.name());
             testInformation.setVideoRecorded(isVideoRecordingEnabled());
+            testInformation.setTestGroup(testGroup);
             maxTestIdleTimeSecs = getConfiguredIdleTimeout(requestedCapability);
             return newSession;
         }
@@ -175,23 +185,31 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
         return configuredIdleTimeout;
     }
 
+    /*
+        Runs for every forwarded command, so nothing is allocated here in the common case: the last command is kept
+        in an object that is reused and the log messages are only built when FINE is enabled.
+     */
     @Override
     public void beforeCommand(TestSession session, HttpServletRequest request, HttpServletResponse response) {
-        super.beforeCommand(session, request, response);
-        LOGGER.log(Level.FINE,
-                getId() + " lastCommand: " +  request.getMethod() + " - " + request.getPathInfo() + " executing...");
+        LastCommand.commandExecuting(session, request);
+        CommandMetrics.commandStarted(session);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.log(Level.FINE,
+                    getId() + " lastCommand: " + request.getMethod() + " - " + request.getPathInfo() + " executing...");
+        }
     }
 
     @Override
     public void afterCommand(TestSession session, HttpServletRequest request, HttpServletResponse response) {
-        super.afterCommand(session, request, response);
-        LOGGER.log(Level.FINE,
-                getId() + " lastCommand: " +  request.getMethod() + " - " + request.getPathInfo() + " executed.");
-        if (request instanceof WebDriverRequest && "POST".equalsIgnoreCase(request.getMethod())) {
-            WebDriverRequest seleniumRequest = (WebDriverRequest) request;
-            if (RequestType.START_SESSION.equals(seleniumRequest.getRequestType())) {
-                videoRecording(DockerSeleniumContainerAction.START_RECORDING);
-            }
+        LastCommand.commandExecuted(session, request);
+        CommandMetrics.commandFinished(session, PROXY_NAME, request, response);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.log(Level.FINE,
+                    getId() + " lastCommand: " + request.getMethod() + " - " + request.getPathInfo() + " executed.");
+        }
+        if (request instanceof WebDriverRequest &&
+                RequestType.START_SESSION == ((WebDriverRequest) request).getRequestType()) {
+            videoRecording(DockerSeleniumContainerAction.START_RECORDING);
         }
     }
 
@@ -201,8 +219,8 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
         LOGGER.log(Level.INFO, message);
         shutdownNode(false);
         long executionTime = (System.currentTimeMillis() - session.getSlot().getLastSessionStart()) / 1000;
-        ga.testEvent(DockerSeleniumRemoteProxy.class.getName(), session.getRequestedCapabilities().toString(),
-                executionTime);
+        ga.testEvent(DockerSeleniumRemoteProxy.class.getName(),
+                NormalizedCapabilities.of(session.getRequestedCapabilities()).toString(), executionTime);
         super.afterSession(session);
     }
 
@@ -237,6 +255,19 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
         return true;
     }
 
+    /*
+        A node that has not executed any test is not needed anymore when the hub is draining. The counter is set to
+        the limit so no session can be created while the node shuts down.
+     */
+    @VisibleForTesting
+    protected synchronized boolean isUnusedWhileDraining() {
+        if (DockerSeleniumStarterRemoteProxy.isDraining() && getAmountOfExecutedTests() == 0) {
+            amountOfExecutedTests = MAX_UNIQUE_TEST_SESSIONS;
+            return true;
+        }
+        return false;
+    }
+
     /*
         Method to decide if the node can be removed based on the amount of executed tests.
      */
@@ -267,7 +298,8 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
         for (TestSlot testSlot : getTestSlots()) {
             if (testSlot.getSession() != null) {
                 long executionTime = (System.currentTimeMillis() - testSlot.getLastSessionStart()) / 1000;
-                ga.testEvent(DockerSeleniumRemoteProxy.class.getName(), testSlot.getSession().getRequestedCapabilities().toString(),
+                ga.testEvent(DockerSeleniumRemoteProxy.class.getName(),
+                        NormalizedCapabilities.of(testSlot.getSession().getRequestedCapabilities()).toString(),
                         executionTime);
                 getRegistry().forceRelease(testSlot, SessionTerminationReason.ORPHAN);
             }
@@ -395,10 +427,35 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
         }
     }
 
+    private void saveCommandTimeline(CommandTimeline commandTimeline) {
+        if (commandTimeline == null) {
+            return;
+        }
+        testInformation.setCommandLatency(commandTimeline.getSummary());
+        try {
+            commandTimeline.writeTo(new File(testInformation.getLogsFolderPath(), CommandTimeline.TIMELINE_FILE_NAME));
+            testInformation.setCommandTimelineRecorded(true);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, getId() + " Error while saving the command timeline", e);
+            ga.trackException(e);
+        }
+    }
+
     private void shutdownNode(boolean isTestIdle) {
         videoRecording(DockerSeleniumContainerAction.STOP_RECORDING);
         processContainerAction(DockerSeleniumContainerAction.TRANSFER_LOGS, getContainerId());
-        Dashboard.updateDashboard(testInformation);
+        for (TestSlot testSlot : getTestSlots()) {
+            if (testSlot.getSession() != null) {
+                saveCommandTimeline(CommandMetrics.getSessionTimeline(testSlot.getSession()));
+            }
+        }
+        TestInformation finishedTest = testInformation;
+        DashboardPublisher.publish(finishedTest).whenComplete((added, error) -> {
+            if (error != null) {
+                LOGGER.log(Level.WARNING, String.format("%s Test %s could not be added to the dashboard", getId(),
+                        finishedTest.getSeleniumSessionId()), error);
+            }
+        });
 
         String shutdownReason = String.format("%s Marking the node as down because it was stopped after %s tests.",
                 getId(), MAX_UNIQUE_TEST_SESSIONS);
@@ -416,6 +473,14 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
     }
 
 
+    private void shutdownUnusedNode() {
+        String shutdownReason = String.format("%s Marking the node as down because the hub is draining.", getId());
+        containerClient.stopContainer(getContainerId());
+        addNewEvent(new RemoteNotReachableException(shutdownReason));
+        addNewEvent(new RemoteUnregisterException(shutdownReason));
+        teardown();
+    }
+
     public enum DockerSeleniumContainerAction {
         START_RECORDING("start-video"), STOP_RECORDING("stop-video"), TRANSFER_LOGS("transfer-logs.sh");
 
@@ -459,6 +524,15 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
                     dockerSeleniumRemoteProxy.shutdownNode(true);
                     return;
                 }
+                /*
+                    Nodes without a test are stopped when the hub is draining, so no containers are left behind
+                */
+                if (dockerSeleniumRemoteProxy.isUnusedWhileDraining()) {
+                    LOGGER.log(Level.INFO, dockerSeleniumRemoteProxy.getId() +
+                            " Shutting down unused node because the hub is draining");
+                    dockerSeleniumRemoteProxy.shutdownUnusedNode();
+                    return;
+                }
                 try {
                     Thread.sleep(getSleepTimeBetweenChecks());
                 } catch (InterruptedException e) {
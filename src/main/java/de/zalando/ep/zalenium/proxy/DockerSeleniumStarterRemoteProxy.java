@@ -5,6 +5,7 @@ import de.zalando.ep.zalenium.container.ContainerClient;
 import de.zalando.ep.zalenium.container.ContainerFactory;
 import de.zalando.ep.zalenium.container.kubernetes.KubernetesContainerClient;
 import de.zalando.ep.zalenium.matcher.DockerSeleniumCapabilityMatcher;
+import de.zalando.ep.zalenium.matcher.DockerSeleniumStarterCapabilityIndex;
 import de.zalando.ep.zalenium.util.Environment;
 import de.zalando.ep.zalenium.util.GoogleAnalyticsApi;
 import org.apache.commons.io.IOUtils;
@@ -107,6 +108,7 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
     private static int screenHeight;
     private static String containerName;
     private static String dockerSeleniumImageName;
+    private static volatile boolean draining = false;
     private final HtmlRenderer renderer = new WebProxyHtmlRendererBeta(this);
     private CapabilityMatcher capabilityHelper;
 
@@ -239,6 +241,20 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
         DockerSeleniumStarterRemoteProxy.dockerSeleniumImageName = dockerSeleniumImageName;
     }
 
+    public static boolean isDraining() {
+        return draining;
+    }
+
+    /*
+        While draining, no new containers are started and the docker-selenium nodes do not accept new sessions, so
+        the hub can be restarted once the running tests are done.
+     */
+    public static void setDraining(boolean draining) {
+        DockerSeleniumStarterRemoteProxy.draining = draining;
+        LOGGER.log(Level.INFO, LOGGING_PREFIX + (draining ? "Draining, new sessions will not be accepted." :
+                "Drain mode stopped, accepting new sessions."));
+    }
+
     @VisibleForTesting
     public static void setSleepIntervalMultiplier(int sleepIntervalMultiplier) {
         DockerSeleniumStarterRemoteProxy.sleepIntervalMultiplier = sleepIntervalMultiplier;
@@ -358,6 +374,11 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
             return null;
         }
 
+        if (isDraining()) {
+            LOGGER.log(Level.FINE, LOGGING_PREFIX + "Draining, no node will be started for {0}", requestedCapability);
+            return null;
+        }
+
         if (!requestedCapability.containsKey(CapabilityType.BROWSER_NAME)) {
             LOGGER.log(Level.INFO, () -> String.format("%s Capability %s does no contain %s key.", LOGGING_PREFIX,
                     requestedCapability, CapabilityType.BROWSER_NAME));
@@ -404,6 +425,13 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
     public void beforeRegistration() {
         containerClient.initialiseContainerEnvironment();
         createContainersOnStartup();
+        DockerSeleniumStarterCapabilityIndex.forRegistry(getRegistry()).add(this);
+    }
+
+    @Override
+    public void teardown() {
+        super.teardown();
+        DockerSeleniumStarterCapabilityIndex.forRegistry(getRegistry()).remove(this);
     }
 
     @Override
@@ -431,6 +459,11 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
     @VisibleForTesting
     public boolean startDockerSeleniumContainer(String browser, boolean forceCreation) {
 
+        if (isDraining()) {
+            LOGGER.log(Level.INFO, String.format("%sDraining, no container was created...", LOGGING_PREFIX));
+            return false;
+        }
+
         if (forceCreation || validateAmountOfDockerSeleniumContainers()) {
 
             NetworkUtils networkUtils = new NetworkUtils();
@@ -0,0 +1,49 @@
+package de.zalando.ep.zalenium.proxy;
+
+import org.openqa.grid.internal.TestSession;
+
+import javax.servlet.http.HttpServletRequest;
+
+/*
+    Keeps the "lastCommand" of a session, which DefaultRemoteProxy stores as a new string on every command. Here the
+    same object is updated and the text is only built when it is rendered, e.g. in the grid console.
+ */
+final class LastCommand {
+
+    static final String LAST_COMMAND = "lastCommand";
+
+    private String method;
+    private String pathInfo;
+    private boolean executed;
+
+    private LastCommand() {
+    }
+
+    static void commandExecuting(TestSession session, HttpServletRequest request) {
+        update(session, request, false);
+    }
+
+    static void commandExecuted(TestSession session, HttpServletRequest request) {
+        update(session, request, true);
+    }
+
+    private static void update(TestSession session, HttpServletRequest request, boolean executed) {
+        Object lastCommand = session.get(LAST_COMMAND);
+        if (!(lastCommand instanceof LastCommand)) {
+            lastCommand = new LastCommand();
+            session.put(LAST_COMMAND, lastCommand);
+        }
+        ((LastCommand) lastCommand).set(request.getMethod(), request.getPathInfo(), executed);
+    }
+
+    private synchronized void set(String method, String pathInfo, boolean executed) {
+        this.method = method;
+        this.pathInfo = pathInfo;
+        this.executed = executed;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return method + " - " + pathInfo + (executed ? " executed." : " executing ...");
+    }
+}
@@ -20,6 +20,7 @@ import java.util.logging.Logger;
 public class SauceLabsRemoteProxy extends CloudTestingRemoteProxy {
 
     private static final String SAUCE_LABS_ACCOUNT_INFO = "https://saucelabs.com/rest/v1/users/%s";
+    private static final String SAUCE_LABS_ACCOUNT_CONCURRENCY = "https://saucelabs.com/rest/v1.1/users/%s/concurrency";
     private static final String SAUCE_LABS_USER_NAME = getEnv().getStringEnvVariable("SAUCE_USERNAME", "");
     private static final String SAUCE_LABS_ACCESS_KEY = getEnv().getStringEnvVariable("SAUCE_ACCESS_KEY", "");
     private static final String SAUCE_LABS_URL = "https://ondemand.saucelabs.com:443";
@@ -55,6 +56,30 @@ public class SauceLabsRemoteProxy extends CloudTestingRemoteProxy {
         return addCapabilitiesToRegistrationRequest(registrationRequest, 1, SAUCE_LABS_PROXY_NAME);
     }
 
+    @Override
+    AccountConcurrency fetchAccountConcurrency() {
+        JsonElement slAccountInfo = getCommonProxyUtilities().readJSONFromUrl(
+                String.format(SAUCE_LABS_ACCOUNT_INFO, SAUCE_LABS_USER_NAME), SAUCE_LABS_USER_NAME,
+                SAUCE_LABS_ACCESS_KEY);
+        if (slAccountInfo == null) {
+            return null;
+        }
+        int limit = slAccountInfo.getAsJsonObject().getAsJsonObject("concurrency_limit").get("overall").getAsInt();
+        int running = AccountConcurrency.UNKNOWN;
+        JsonElement slConcurrency = getCommonProxyUtilities().readJSONFromUrl(
+                String.format(SAUCE_LABS_ACCOUNT_CONCURRENCY, SAUCE_LABS_USER_NAME), SAUCE_LABS_USER_NAME,
+                SAUCE_LABS_ACCESS_KEY);
+        if (slConcurrency != null) {
+            // {"concurrency": {"<user>": {"current": {"overall": 2, ...}, "remaining": {...}}}}
+            JsonObject userConcurrency = slConcurrency.getAsJsonObject().getAsJsonObject("concurrency")
+                    .getAsJsonObject(SAUCE_LABS_USER_NAME);
+            if (userConcurrency != null && userConcurrency.has("current")) {
+                running = userConcurrency.getAsJsonObject("current").get("overall").getAsInt();
+            }
+        }
+        return new AccountConcurrency(limit, running);
+    }
+
     @Override
     public String getUserNameProperty() {
         return "username";
@@ -112,8 +137,13 @@ public class SauceLabsRemoteProxy extends CloudTestingRemoteProxy {
         List<String> logUrls = new ArrayList<>();
         logUrls.add(sauceLabsBrowserLogUrl);
         logUrls.add(sauceLabsSeleniumLogUrl);
-        return new TestInformation(seleniumSessionId, testName, getProxyName(), browser, browserVersion, platform, "",
-                getVideoFileExtension(), sauceLabsVideoUrl, logUrls);
+        TestInformation testInformation = new TestInformation(seleniumSessionId, testName, getProxyName(), browser,
+                browserVersion, platform, "", getVideoFileExtension(), sauceLabsVideoUrl, logUrls);
+        boolean passed = !testData.has("passed") || testData.get("passed").isJsonNull() ||
+                testData.get("passed").getAsBoolean();
+        boolean error = testData.has("error") && !testData.get("error").isJsonNull();
+        testInformation.setTestFailed(!passed || error);
+        return testInformation;
     }
 
     @Override
@@ -0,0 +1,77 @@
+package de.zalando.ep.zalenium.servlet;
+
+import com.google.common.io.ByteStreams;
+import com.google.gson.JsonObject;
+import de.zalando.ep.zalenium.util.CommandMetrics;
+import org.openqa.grid.internal.Registry;
+import org.openqa.grid.web.servlet.RegistryBasedServlet;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+    Exposes the latency percentiles (in milliseconds) of the forwarded WebDriver commands. By default they are grouped
+    by proxy, browser and command. Pass e.g. ?groupBy=command to merge the histograms of all proxies and browsers.
+    The metrics of the rest of the hub are exposed by ZaleniumMetricsServlet.
+ */
+public class CommandMetricsServlet extends RegistryBasedServlet {
+
+    private static final Logger LOGGER = Logger.getLogger(CommandMetricsServlet.class.getName());
+
+    @SuppressWarnings("unused")
+    public CommandMetricsServlet() {
+        this(null);
+    }
+
+    public CommandMetricsServlet(Registry registry) {
+        super(registry);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        process(request, response);
+    }
+
+    @SuppressWarnings("WeakerAccess")
+    protected void process(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Set<CommandMetrics.Dimension> groupBy = EnumSet.allOf(CommandMetrics.Dimension.class);
+        String groupByParameter = request.getParameter("groupBy");
+        if (groupByParameter != null && !groupByParameter.isEmpty()) {
+            groupBy = EnumSet.noneOf(CommandMetrics.Dimension.class);
+            for (String dimension : groupByParameter.split(",")) {
+                try {
+                    groupBy.add(CommandMetrics.Dimension.valueOf(dimension.trim().toUpperCase(Locale.ENGLISH)));
+                } catch (IllegalArgumentException e) {
+                    LOGGER.log(Level.FINE, e.toString(), e);
+                    sendMessage(response, "ERROR unknown groupBy dimension " + dimension, "text/plain", 400);
+                    return;
+                }
+            }
+        }
+
+        JsonObject metrics = new JsonObject();
+        metrics.add("commands", CommandMetrics.getPercentiles(groupBy));
+        sendMessage(response, metrics.toString(), "application/json", 200);
+    }
+
+    private void sendMessage(HttpServletResponse response, String message, String contentType, int statusCode)
+            throws IOException {
+        response.setContentType(contentType);
+        response.setCharacterEncoding("UTF-8");
+        response.setStatus(statusCode);
+
+        try (InputStream in = new ByteArrayInputStream(message.getBytes("UTF-8"))) {
+            ByteStreams.copy(in, response.getOutputStream());
+        } finally {
+            response.getOutputStream().close();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package de.zalando.ep.zalenium.servlet;
+
+import com.google.common.io.ByteStreams;
+import com.google.gson.JsonObject;
+import de.zalando.ep.zalenium.dashboard.DashboardPublisher;
+import de.zalando.ep.zalenium.proxy.CloudTestProcessingQueue;
+import de.zalando.ep.zalenium.proxy.CloudTestingRemoteProxy;
+import de.zalando.ep.zalenium.proxy.DockerSeleniumRemoteProxy;
+import de.zalando.ep.zalenium.proxy.DockerSeleniumStarterRemoteProxy;
+import org.openqa.grid.internal.Registry;
+import org.openqa.grid.internal.RemoteProxy;
+import org.openqa.grid.web.servlet.RegistryBasedServlet;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+    Puts the hub in drain mode before a restart: ?action=drain stops accepting new sessions and starting new
+    containers, ?action=resume goes back to normal. Without an action, the status is returned with a 200 when the hub
+    is empty (no running tests, no docker-selenium nodes and no pending dashboard updates) and a 503 otherwise, so it
+    can be used as a readiness check.
+ */
+public class DrainServlet extends RegistryBasedServlet {
+
+    private static final String DRAIN = "drain";
+    private static final String RESUME = "resume";
+    private static final String STATUS = "status";
+    private static final Logger LOGGER = Logger.getLogger(DrainServlet.class.getName());
+
+    @SuppressWarnings("unused")
+    public DrainServlet() {
+        this(null);
+    }
+
+    public DrainServlet(Registry registry) {
+        super(registry);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        process(request, response);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        process(request, response);
+    }
+
+    @SuppressWarnings("WeakerAccess")
+    protected void process(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String action = request.getParameter("action");
+        if (DRAIN.equals(action)) {
+            DockerSeleniumStarterRemoteProxy.setDraining(true);
+        } else if (RESUME.equals(action)) {
+            DockerSeleniumStarterRemoteProxy.setDraining(false);
+        } else if (action != null && !action.isEmpty() && !STATUS.equals(action)) {
+            LOGGER.log(Level.FINE, "Unknown drain action {0}", action);
+            sendMessage(response, "ERROR action not implemented. Given action=" + action, "text/plain", 400);
+            return;
+        }
+
+        JsonObject status = getStatus();
+        boolean isStatusRequest = action == null || action.isEmpty() || STATUS.equals(action);
+        int statusCode = isStatusRequest && !status.get("empty").getAsBoolean() ? 503 : 200;
+        sendMessage(response, status.toString(), "application/json", statusCode);
+    }
+
+    private JsonObject getStatus() {
+        int activeSessions = getRegistry().getActiveSessions().size();
+        int dockerSeleniumNodes = 0;
+        for (RemoteProxy proxy : getRegistry().getAllProxies()) {
+            if (proxy instanceof DockerSeleniumRemoteProxy) {
+                dockerSeleniumNodes++;
+            }
+        }
+        // Cloud tests are counted until they are in the dashboard, docker-selenium tests while they are published
+        int pendingDashboardUpdates = CloudTestingRemoteProxy.getPendingDashboardUpdates() +
+                DashboardPublisher.getPendingTests();
+
+        JsonObject status = new JsonObject();
+        status.addProperty("draining", DockerSeleniumStarterRemoteProxy.isDraining());
+        status.addProperty("activeSessions", activeSessions);
+        status.addProperty("dockerSeleniumNodes", dockerSeleniumNodes);
+        status.addProperty("pendingDashboardUpdates", pendingDashboardUpdates);
+        status.addProperty("empty", activeSessions == 0 && dockerSeleniumNodes == 0 && pendingDashboardUpdates == 0);
+        status.add("cloudTestQueue", CloudTestProcessingQueue.getInstance().getStatus());
+        return status;
+    }
+
+    private void sendMessage(HttpServletResponse response, String message, String contentType, int statusCode)
+            throws IOException {
+        response.setContentType(contentType);
+        response.setCharacterEncoding("UTF-8");
+        response.setStatus(statusCode);
+
+        try (InputStream in = new ByteArrayInputStream(message.getBytes("UTF-8"))) {
+            ByteStreams.copy(in, response.getOutputStream());
+        } finally {
+            response.getOutputStream().close();
+        }
+    }
+}
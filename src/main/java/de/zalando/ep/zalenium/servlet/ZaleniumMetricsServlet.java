@@ -0,0 +1,60 @@
+package de.zalando.ep.zalenium.servlet;
+
+import com.google.common.io.ByteStreams;
+import com.google.gson.JsonObject;
+import de.zalando.ep.zalenium.dashboard.Dashboard;
+import de.zalando.ep.zalenium.dashboard.DashboardPublisher;
+import de.zalando.ep.zalenium.dashboard.DashboardRetention;
+import de.zalando.ep.zalenium.util.CloudProviderHttpClient;
+import de.zalando.ep.zalenium.util.VideoConverter;
+import org.openqa.grid.internal.Registry;
+import org.openqa.grid.web.servlet.RegistryBasedServlet;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/*
+    Exposes the metrics of the hub apart from the command latencies (see CommandMetricsServlet). The requests done to
+    the REST APIs of the Cloud Testing Providers per provider and endpoint, the video conversions, the tests removed
+    from the dashboard by its retention with the bytes reclaimed, the tests added to the dashboard (in total, per
+    browser and proxy, failed, and with the bytes of their videos) and the tests published to the dashboard with the
+    batches they were written in.
+ */
+public class ZaleniumMetricsServlet extends RegistryBasedServlet {
+
+    @SuppressWarnings("unused")
+    public ZaleniumMetricsServlet() {
+        this(null);
+    }
+
+    public ZaleniumMetricsServlet(Registry registry) {
+        super(registry);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        process(response);
+    }
+
+    @SuppressWarnings("WeakerAccess")
+    protected void process(HttpServletResponse response) throws IOException {
+        JsonObject metrics = new JsonObject();
+        metrics.add("cloudProviderRequests", CloudProviderHttpClient.getMetrics());
+        metrics.add("videoConversions", VideoConverter.getMetrics());
+        metrics.add("dashboardRetention", DashboardRetention.getMetrics());
+        metrics.add("dashboardTests", Dashboard.getCounters().toJson());
+        metrics.add("dashboardPublisher", DashboardPublisher.getMetrics());
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setStatus(200);
+        try (InputStream in = new ByteArrayInputStream(metrics.toString().getBytes("UTF-8"))) {
+            ByteStreams.copy(in, response.getOutputStream());
+        } finally {
+            response.getOutputStream().close();
+        }
+    }
+}
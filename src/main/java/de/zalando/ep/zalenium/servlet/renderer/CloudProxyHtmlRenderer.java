@@ -2,6 +2,9 @@ package de.zalando.ep.zalenium.servlet.renderer;
 
 import com.google.gson.JsonObject;
 import de.zalando.ep.zalenium.proxy.BrowserStackRemoteProxy;
+import de.zalando.ep.zalenium.proxy.CloudProviderCircuitBreaker;
+import de.zalando.ep.zalenium.proxy.CloudProviderRouting;
+import de.zalando.ep.zalenium.proxy.CloudTestingRemoteProxy;
 import de.zalando.ep.zalenium.proxy.SauceLabsRemoteProxy;
 import de.zalando.ep.zalenium.proxy.TestingBotRemoteProxy;
 import org.openqa.grid.common.exception.GridException;
@@ -15,6 +18,7 @@ import org.openqa.selenium.Platform;
 import org.openqa.selenium.remote.CapabilityType;
 
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
 public class CloudProxyHtmlRenderer implements HtmlRenderer {
@@ -40,6 +44,7 @@ public class CloudProxyHtmlRenderer implements HtmlRenderer {
         renderSummaryValues.put("{{proxyVersion}}", getHtmlNodeVersion());
         renderSummaryValues.put("{{proxyId}}", proxy.getId());
         renderSummaryValues.put("{{proxyPlatform}}", getPlatform(proxy));
+        renderSummaryValues.put("{{proxyStatistics}}", getProxyStatistics());
         renderSummaryValues.put("{{tabBrowsers}}", tabBrowsers());
         renderSummaryValues.put("{{tabConfig}}", tabConfig());
         return templateRenderer.renderTemplate(renderSummaryValues);
@@ -57,6 +62,25 @@ public class CloudProxyHtmlRenderer implements HtmlRenderer {
         }
     }
 
+    // session starts, failures and cost used to choose among the cloud providers
+    private String getProxyStatistics() {
+        if (!(proxy instanceof CloudTestingRemoteProxy)) {
+            return "";
+        }
+        CloudTestingRemoteProxy cloudProxy = (CloudTestingRemoteProxy) proxy;
+        CloudProviderRouting.ProviderStatistics statistics = CloudProviderRouting.getStatistics(
+                cloudProxy.getProxyName());
+        double averageStartMillis = statistics.getAverageStartMillis();
+        return String.format(Locale.ENGLISH, "Sessions started : %s, failed : %s, average start : %s, " +
+                        "recent failures : %.0f%%, cost per minute : %.2f, available slots : %s of %s, usage : %.2f%%, " +
+                        "circuit breaker : %s",
+                statistics.getStartedSessions(), statistics.getFailedSessions(),
+                averageStartMillis < 0 ? "-" : String.format(Locale.ENGLISH, "%.1fs", averageStartMillis / 1000),
+                statistics.getFailureRate() * 100, statistics.getCostPerMinute(), cloudProxy.getAvailableSlots(),
+                proxy.getTestSlots().size(), proxy.getResourceUsageInPercent(),
+                CloudProviderCircuitBreaker.forProvider(cloudProxy.getProxyName()).getState());
+    }
+
     // content of the config tab.
     private String tabConfig() {
         return proxy.getConfig().toString("<p>%1$s: %2$s</p>");
@@ -0,0 +1,239 @@
+package de.zalando.ep.zalenium.util;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.HdrHistogram.AbstractHistogram;
+import org.HdrHistogram.PackedConcurrentHistogram;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Shared HTTP client for the REST APIs of the Cloud Testing Providers. Connections are pooled and kept alive, and the
+ * number of concurrent connections per provider (host) is bounded, so a burst of finished tests does not open a new
+ * connection per request. Responses are parsed while they are read.
+ *
+ * Videos and logs are downloaded through a second pool with one connection per concurrent download
+ * (ZALENIUM_CLOUD_MAX_CONCURRENT_DOWNLOADS), so long downloads never hold the connections the REST calls need.
+ *
+ * The latency and the errors of the requests are recorded per provider and endpoint, the ids in the path are replaced
+ * by a placeholder to keep the number of endpoints bounded.
+ */
+@SuppressWarnings("WeakerAccess")
+public class CloudProviderHttpClient {
+
+    private static final Environment env = new Environment();
+    private static final int MAX_CONNECTIONS_PER_PROVIDER =
+            env.getIntEnvVariable("ZALENIUM_CLOUD_MAX_CONNECTIONS_PER_PROVIDER", 4);
+    public static final int MAX_CONCURRENT_DOWNLOADS =
+            Math.max(1, env.getIntEnvVariable("ZALENIUM_CLOUD_MAX_CONCURRENT_DOWNLOADS", 4));
+    private static final int CONNECT_TIMEOUT_MS = (int) TimeUnit.SECONDS.toMillis(10);
+    private static final int SOCKET_TIMEOUT_MS = (int) TimeUnit.SECONDS.toMillis(60);
+    private static final int CONNECTION_REQUEST_TIMEOUT_MS = (int) TimeUnit.MINUTES.toMillis(2);
+    private static final long IDLE_CONNECTION_TIMEOUT_SECONDS = 30;
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+    private static final int SIGNIFICANT_DIGITS = 2;
+    private static final double[] PERCENTILES = {50, 90, 99};
+    private static final String ID_PLACEHOLDER = ":id";
+    private static final int MAX_SEGMENT_LENGTH = 20;
+    private static final Pattern API_VERSION = Pattern.compile("v\\d+(\\.\\d+)?");
+
+    private static final CloudProviderHttpClient instance = new CloudProviderHttpClient();
+    private static final ConcurrentMap<String, EndpointMetrics> endpointMetrics = new ConcurrentHashMap<>();
+
+    private final CloseableHttpClient httpClient;
+    private final CloseableHttpClient downloadHttpClient;
+
+    private CloudProviderHttpClient() {
+        httpClient = createHttpClient(MAX_CONNECTIONS_PER_PROVIDER, MAX_CONNECTIONS_PER_PROVIDER * 4);
+        // Downloads are bounded across all providers, so one provider may use all of them
+        downloadHttpClient = createHttpClient(MAX_CONCURRENT_DOWNLOADS, MAX_CONCURRENT_DOWNLOADS);
+    }
+
+    private static CloseableHttpClient createHttpClient(int maxPerRoute, int maxTotal) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        connectionManager.setMaxTotal(maxTotal);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(CONNECT_TIMEOUT_MS)
+                .setSocketTimeout(SOCKET_TIMEOUT_MS)
+                .setConnectionRequestTimeout(CONNECTION_REQUEST_TIMEOUT_MS)
+                .build();
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(IDLE_CONNECTION_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .build();
+    }
+
+    public static CloudProviderHttpClient getInstance() {
+        return instance;
+    }
+
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /*
+        Client for downloading videos and logs, separate from the one for the REST APIs.
+     */
+    public CloseableHttpClient getDownloadHttpClient() {
+        return downloadHttpClient;
+    }
+
+    /*
+        GET with basic authentication, the body is parsed as JSON while it is read. Responses other than 2xx are
+        thrown as an IOException.
+     */
+    public JsonElement getJson(String url, String user, String password) throws IOException {
+        HttpGet request = new HttpGet(url);
+        request.setHeader(HttpHeaders.AUTHORIZATION, basicAuthentication(user, password));
+        request.setHeader(HttpHeaders.ACCEPT, "application/json");
+        long start = System.nanoTime();
+        boolean failed = true;
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            HttpEntity entity = response.getEntity();
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode < 200 || statusCode >= 300) {
+                // Consuming the body allows the connection to be reused
+                EntityUtils.consumeQuietly(entity);
+                throw new IOException(String.format("Server returned HTTP response code: %s for URL: %s",
+                        statusCode, url));
+            }
+            if (entity == null) {
+                throw new IOException("Empty response for URL: " + url);
+            }
+            try (Reader reader = new InputStreamReader(entity.getContent(), StandardCharsets.UTF_8)) {
+                JsonElement json = new JsonParser().parse(reader);
+                failed = false;
+                return json;
+            }
+        } finally {
+            recordRequest(url, System.nanoTime() - start, failed);
+        }
+    }
+
+    public static String basicAuthentication(String user, String password) {
+        String userPass = user + ":" + password;
+        return "Basic " + new String(new Base64().encode(userPass.getBytes(StandardCharsets.UTF_8)),
+                StandardCharsets.UTF_8);
+    }
+
+    public static void recordRequest(String url, long durationNanos, boolean failed) {
+        String provider;
+        String endpoint;
+        try {
+            URI uri = URI.create(url);
+            provider = String.valueOf(uri.getHost());
+            endpoint = getEndpoint(uri.getPath());
+        } catch (IllegalArgumentException e) {
+            provider = "";
+            endpoint = "";
+        }
+        String key = provider + " " + endpoint;
+        EndpointMetrics metrics = endpointMetrics.get(key);
+        if (metrics == null) {
+            String metricsProvider = provider;
+            String metricsEndpoint = endpoint;
+            metrics = endpointMetrics.computeIfAbsent(key, k -> new EndpointMetrics(metricsProvider, metricsEndpoint));
+        }
+        metrics.requests.increment();
+        if (failed) {
+            metrics.errors.increment();
+        }
+        metrics.latency.recordValue(Math.max(0, Math.min(TimeUnit.NANOSECONDS.toMicros(durationNanos),
+                HIGHEST_TRACKABLE_MICROS)));
+    }
+
+    /*
+        Requests, errors and latency (in milliseconds) per provider and endpoint.
+     */
+    public static JsonArray getMetrics() {
+        JsonArray metrics = new JsonArray();
+        Map<String, EndpointMetrics> sorted = new TreeMap<>(endpointMetrics);
+        for (EndpointMetrics endpoint : sorted.values()) {
+            JsonObject endpointJson = new JsonObject();
+            endpointJson.addProperty("provider", endpoint.provider);
+            endpointJson.addProperty("endpoint", endpoint.endpoint);
+            endpointJson.addProperty("requests", endpoint.requests.sum());
+            endpointJson.addProperty("errors", endpoint.errors.sum());
+            AbstractHistogram latency = endpoint.latency.copy();
+            endpointJson.addProperty("mean", toMillis((long) latency.getMean()));
+            for (double percentile : PERCENTILES) {
+                endpointJson.addProperty("p" + (int) percentile, toMillis(latency.getValueAtPercentile(percentile)));
+            }
+            endpointJson.addProperty("max", toMillis(latency.getMaxValue()));
+            metrics.add(endpointJson);
+        }
+        return metrics;
+    }
+
+    /*
+        Replaces the path segments that look like ids (containing digits, API versions like "v1" aside, or too long
+        to be a name) with a placeholder, e.g. "/automate/sessions/4f2a91.json" becomes "/automate/sessions/:id".
+     */
+    @VisibleForTesting
+    static String getEndpoint(String path) {
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+        StringBuilder endpoint = new StringBuilder(path.length());
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            endpoint.append('/');
+            boolean isId = segment.length() > MAX_SEGMENT_LENGTH ||
+                    (segment.chars().anyMatch(Character::isDigit) && !API_VERSION.matcher(segment).matches());
+            endpoint.append(isId ? ID_PLACEHOLDER : segment);
+        }
+        return endpoint.length() == 0 ? "/" : endpoint.toString();
+    }
+
+    @VisibleForTesting
+    static void resetMetrics() {
+        endpointMetrics.clear();
+    }
+
+    private static double toMillis(long micros) {
+        return Math.round(micros / 100.0) / 10.0;
+    }
+
+    private static final class EndpointMetrics {
+        private final String provider;
+        private final String endpoint;
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final AbstractHistogram latency = new PackedConcurrentHistogram(HIGHEST_TRACKABLE_MICROS,
+                SIGNIFICANT_DIGITS);
+
+        private EndpointMetrics(String provider, String endpoint) {
+            this.provider = provider;
+            this.endpoint = endpoint;
+        }
+    }
+}
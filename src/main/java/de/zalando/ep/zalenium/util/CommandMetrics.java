@@ -0,0 +1,444 @@
+package de.zalando.ep.zalenium.util;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.HdrHistogram.AbstractHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.PackedConcurrentHistogram;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.selenium.remote.CapabilityType;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency histograms of the WebDriver commands forwarded by the Zalenium proxies, grouped by proxy type, browser and
+ * command. Histograms are mergeable, so percentiles can be computed for any combination of those dimensions.
+ * Each test session also keeps a {@link CommandTimeline} with its own commands.
+ */
+@SuppressWarnings("WeakerAccess")
+public class CommandMetrics {
+
+    @VisibleForTesting
+    static final String SESSION_TIMELINE = "zaleniumCommandTimeline";
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+    private static final int SIGNIFICANT_DIGITS = 2;
+    private static final double[] PERCENTILES = {50, 90, 95, 99};
+    private static final String SESSION = "session";
+    private static final String[] NAMED_SEGMENTS = {"attribute", "css", "property", "cookie", "equals"};
+    private static final String[] WINDOW_COMMANDS = {"current", "rect", "maximize", "minimize", "fullscreen",
+            "handles", "size", "position"};
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    // Commands seen after this many distinct ones are recorded as OTHER_COMMAND, so the histograms stay bounded
+    private static final int MAX_COMMAND_NAMES = 512;
+    @VisibleForTesting
+    static final String OTHER_COMMAND = "other";
+    // Histograms by proxy type, browser and command, nested so a command can be recorded without creating a key
+    private static final ConcurrentMap<String, ConcurrentMap<String, ConcurrentMap<String, AbstractHistogram>>>
+            histograms = new ConcurrentHashMap<>();
+    private static volatile CommandNames commandNames = new CommandNames(64);
+    // Reused, so looking up the name of a command does not allocate
+    private static final ThreadLocal<NameMatcher> nameMatchers = ThreadLocal.withInitial(NameMatcher::new);
+
+    public enum Dimension {
+        PROXY, BROWSER, COMMAND
+    }
+
+    public static void commandStarted(TestSession session) {
+        if (session != null) {
+            getTimeline(session).commandStarted();
+        }
+    }
+
+    public static void commandFinished(TestSession session, String proxyType, HttpServletRequest request,
+                                       HttpServletResponse response) {
+        if (session == null || !(session.get(SESSION_TIMELINE) instanceof CommandTimeline)) {
+            return;
+        }
+        String command = getCommandName(request.getMethod(), request.getPathInfo());
+        int status = response == null ? 0 : response.getStatus();
+        long durationMicros = getTimeline(session).commandFinished(command, status);
+        if (durationMicros < 0) {
+            return;
+        }
+        getHistogram(proxyType == null ? "" : proxyType, getBrowser(session), command).recordValue(durationMicros);
+    }
+
+    private static AbstractHistogram getHistogram(String proxyType, String browser, String command) {
+        ConcurrentMap<String, ConcurrentMap<String, AbstractHistogram>> browsers = histograms.get(proxyType);
+        if (browsers == null) {
+            browsers = histograms.computeIfAbsent(proxyType, k -> new ConcurrentHashMap<>());
+        }
+        ConcurrentMap<String, AbstractHistogram> commands = browsers.get(browser);
+        if (commands == null) {
+            commands = browsers.computeIfAbsent(browser, k -> new ConcurrentHashMap<>());
+        }
+        AbstractHistogram histogram = commands.get(command);
+        if (histogram == null) {
+            histogram = commands.computeIfAbsent(command,
+                    k -> new PackedConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS));
+        }
+        return histogram;
+    }
+
+    /*
+        The commands executed so far in the given session, null if none was recorded.
+     */
+    public static CommandTimeline getSessionTimeline(TestSession session) {
+        if (session == null || !(session.get(SESSION_TIMELINE) instanceof CommandTimeline)) {
+            return null;
+        }
+        return (CommandTimeline) session.get(SESSION_TIMELINE);
+    }
+
+    /*
+        Short text describing the command latency of a single test, to be shown in the dashboard.
+     */
+    public static String getSessionSummary(TestSession session) {
+        CommandTimeline timeline = getSessionTimeline(session);
+        return timeline == null ? "" : timeline.getSummary();
+    }
+
+    /*
+        Merges the recorded histograms by the given dimensions, the ones not given are aggregated.
+     */
+    public static JsonArray getPercentiles(Set<Dimension> groupBy) {
+        Map<CommandKey, Histogram> merged = new TreeMap<>();
+        histograms.forEach((proxyType, browsers) -> browsers.forEach((browser, commands) ->
+                commands.forEach((command, commandHistogram) -> {
+                    CommandKey key = new CommandKey(proxyType, browser, command).project(groupBy);
+                    Histogram histogram = merged.computeIfAbsent(key,
+                            k -> new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS));
+                    histogram.add(commandHistogram);
+                })));
+        JsonArray percentiles = new JsonArray();
+        for (Map.Entry<CommandKey, Histogram> entry : merged.entrySet()) {
+            Histogram histogram = entry.getValue();
+            JsonObject commandPercentiles = new JsonObject();
+            if (groupBy.contains(Dimension.PROXY)) {
+                commandPercentiles.addProperty("proxy", entry.getKey().proxyType);
+            }
+            if (groupBy.contains(Dimension.BROWSER)) {
+                commandPercentiles.addProperty("browser", entry.getKey().browser);
+            }
+            if (groupBy.contains(Dimension.COMMAND)) {
+                commandPercentiles.addProperty("command", entry.getKey().command);
+            }
+            commandPercentiles.addProperty("count", histogram.getTotalCount());
+            commandPercentiles.addProperty("mean", toMillis((long) histogram.getMean()));
+            for (double percentile : PERCENTILES) {
+                commandPercentiles.addProperty("p" + (int) percentile,
+                        toMillis(histogram.getValueAtPercentile(percentile)));
+            }
+            commandPercentiles.addProperty("max", toMillis(histogram.getMaxValue()));
+            percentiles.add(commandPercentiles);
+        }
+        return percentiles;
+    }
+
+    public static JsonArray getPercentiles() {
+        return getPercentiles(EnumSet.allOf(Dimension.class));
+    }
+
+    /*
+        Turns a WebDriver path into a command name by replacing the session, element and other ids with placeholders,
+        e.g. "/session/4f2a/element/0.1-2/click" becomes "POST /session/:sessionId/element/:id/click".
+        This runs for every forwarded command, so the path is only hashed and the name is taken from a table of the
+        already seen command names, compared char by char with the path; it is built only the first time a command is
+        seen. Once MAX_COMMAND_NAMES were seen, new commands are named OTHER_COMMAND.
+     */
+    @VisibleForTesting
+    static String getCommandName(String method, String pathInfo) {
+        return getCommandName(scanCommandName(method, pathInfo, (CommandChars) null), method, pathInfo);
+    }
+
+    @VisibleForTesting
+    static String getCommandName(long hash, String method, String pathInfo) {
+        String commandName = commandNames.get(hash, method, pathInfo);
+        if (commandName == null) {
+            commandName = commandNames.size() < MAX_COMMAND_NAMES ? addCommandName(hash, method, pathInfo) :
+                    OTHER_COMMAND;
+        }
+        return commandName;
+    }
+
+    /*
+        Hashes (FNV-1a) the chars of the command name without building it, they are also appended to the given
+        builder when it is not null.
+     */
+    @VisibleForTesting
+    static long scanCommandName(String method, String pathInfo, StringBuilder command) {
+        return scanCommandName(method, pathInfo, command == null ? null : command::append);
+    }
+
+    private static long scanCommandName(String method, String pathInfo, CommandChars command) {
+        String methodName = String.valueOf(method);
+        long hash = hash(FNV_OFFSET_BASIS, methodName, 0, methodName.length(), command);
+        if (pathInfo == null || pathInfo.isEmpty()) {
+            return hash;
+        }
+        hash = hash(hash, " ", 0, 1, command);
+        int previousStart = 0;
+        int previousEnd = 0;
+        int start = 0;
+        while (start < pathInfo.length()) {
+            int end = pathInfo.indexOf('/', start);
+            if (end < 0) {
+                end = pathInfo.length();
+            }
+            if (end > start) {
+                hash = hash(hash, "/", 0, 1, command);
+                String placeholder = placeholderFor(pathInfo, previousStart, previousEnd, start, end);
+                hash = placeholder == null ? hash(hash, pathInfo, start, end, command) :
+                        hash(hash, placeholder, 0, placeholder.length(), command);
+                previousStart = start;
+                previousEnd = end;
+            }
+            start = end + 1;
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, String chars, int start, int end, CommandChars command) {
+        if (command != null) {
+            command.append(chars, start, end);
+        }
+        for (int i = start; i < end; i++) {
+            hash ^= chars.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /*
+        Placeholder for the segment [start, end) of the path given the previous segment, null to keep the segment.
+     */
+    private static String placeholderFor(String path, int previousStart, int previousEnd, int start, int end) {
+        if (segmentEquals(path, previousStart, previousEnd, SESSION)) {
+            return ":sessionId";
+        }
+        if (segmentEquals(path, previousStart, previousEnd, "element") ||
+                segmentEquals(path, previousStart, previousEnd, "elements")) {
+            return segmentEquals(path, start, end, "active") ? null : ":id";
+        }
+        for (String namedSegment : NAMED_SEGMENTS) {
+            if (segmentEquals(path, previousStart, previousEnd, namedSegment)) {
+                return ":name";
+            }
+        }
+        if (segmentEquals(path, previousStart, previousEnd, "window")) {
+            for (String windowCommand : WINDOW_COMMANDS) {
+                if (segmentEquals(path, start, end, windowCommand)) {
+                    return null;
+                }
+            }
+            return ":windowHandle";
+        }
+        return null;
+    }
+
+    private static boolean segmentEquals(String path, int start, int end, String segment) {
+        return end - start == segment.length() && path.regionMatches(start, segment, 0, segment.length());
+    }
+
+    /*
+        True when the path of the command gives the given name.
+     */
+    private static boolean isCommandName(String commandName, String method, String pathInfo) {
+        NameMatcher matcher = nameMatchers.get();
+        matcher.reset(commandName);
+        scanCommandName(method, pathInfo, matcher);
+        return matcher.matches();
+    }
+
+    private static synchronized String addCommandName(long hash, String method, String pathInfo) {
+        String existing = commandNames.get(hash, method, pathInfo);
+        if (existing != null) {
+            return existing;
+        }
+        if (commandNames.size() >= MAX_COMMAND_NAMES) {
+            return OTHER_COMMAND;
+        }
+        StringBuilder command = new StringBuilder();
+        scanCommandName(method, pathInfo, command);
+        String commandName = command.toString();
+        commandNames = commandNames.with(hash, commandName);
+        return commandName;
+    }
+
+    private static String getBrowser(TestSession session) {
+        Object browser = session.getRequestedCapabilities().get(CapabilityType.BROWSER_NAME);
+        if (browser == null && session.getSlot() != null) {
+            browser = session.getSlot().getCapabilities().get(CapabilityType.BROWSER_NAME);
+        }
+        return browser == null ? "" : browser.toString();
+    }
+
+    private static CommandTimeline getTimeline(TestSession session) {
+        Object timeline = session.get(SESSION_TIMELINE);
+        if (!(timeline instanceof CommandTimeline)) {
+            timeline = new CommandTimeline();
+            session.put(SESSION_TIMELINE, timeline);
+        }
+        return (CommandTimeline) timeline;
+    }
+
+    private static double toMillis(long micros) {
+        return Math.round(micros / 100.0) / 10.0;
+    }
+
+    @VisibleForTesting
+    static synchronized void reset() {
+        histograms.clear();
+        commandNames = new CommandNames(64);
+    }
+
+    /*
+        Receives the chars of a command name while its path is scanned.
+     */
+    private interface CommandChars {
+        void append(String chars, int start, int end);
+    }
+
+    /*
+        Compares the scanned chars with a command name without building the name of the path.
+     */
+    private static final class NameMatcher implements CommandChars {
+        private String commandName;
+        private int position;
+        private boolean matches;
+
+        void reset(String commandName) {
+            this.commandName = commandName;
+            position = 0;
+            matches = true;
+        }
+
+        @Override
+        public void append(String chars, int start, int end) {
+            int length = end - start;
+            matches = matches && commandName.regionMatches(position, chars, start, length);
+            position += length;
+        }
+
+        boolean matches() {
+            return matches && position == commandName.length();
+        }
+    }
+
+    /*
+        Open addressing table from the hash of a command name to the name. It is replaced by a new copy when a
+        command is seen for the first time, which only happens a few times, so lookups do not need a lock. Names with
+        the same hash are all kept, the path tells which one it is.
+     */
+    private static final class CommandNames {
+        private final long[] hashes;
+        private final String[] names;
+        private final int size;
+
+        CommandNames(int capacity) {
+            this(new long[capacity], new String[capacity], 0);
+        }
+
+        private CommandNames(long[] hashes, String[] names, int size) {
+            this.hashes = hashes;
+            this.names = names;
+            this.size = size;
+        }
+
+        String get(long hash, String method, String pathInfo) {
+            int mask = hashes.length - 1;
+            for (int i = index(hash, mask); names[i] != null; i = (i + 1) & mask) {
+                if (hashes[i] == hash && isCommandName(names[i], method, pathInfo)) {
+                    return names[i];
+                }
+            }
+            return null;
+        }
+
+        int size() {
+            return size;
+        }
+
+        CommandNames with(long hash, String name) {
+            int capacity = (size + 1) * 2 > hashes.length ? hashes.length * 2 : hashes.length;
+            CommandNames copy = new CommandNames(new long[capacity], new String[capacity], size + 1);
+            for (int i = 0; i < names.length; i++) {
+                if (names[i] != null) {
+                    copy.put(hashes[i], names[i]);
+                }
+            }
+            copy.put(hash, name);
+            return copy;
+        }
+
+        private void put(long hash, String name) {
+            int mask = hashes.length - 1;
+            int i = index(hash, mask);
+            while (names[i] != null) {
+                i = (i + 1) & mask;
+            }
+            hashes[i] = hash;
+            names[i] = name;
+        }
+
+        private static int index(long hash, int mask) {
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+
+    private static final class CommandKey implements Comparable<CommandKey> {
+        private final String proxyType;
+        private final String browser;
+        private final String command;
+
+        CommandKey(String proxyType, String browser, String command) {
+            this.proxyType = proxyType == null ? "" : proxyType;
+            this.browser = browser;
+            this.command = command;
+        }
+
+        CommandKey project(Set<Dimension> groupBy) {
+            return new CommandKey(groupBy.contains(Dimension.PROXY) ? proxyType : "",
+                    groupBy.contains(Dimension.BROWSER) ? browser : "",
+                    groupBy.contains(Dimension.COMMAND) ? command : "");
+        }
+
+        @Override
+        public int compareTo(CommandKey other) {
+            int result = proxyType.compareTo(other.proxyType);
+            if (result == 0) {
+                result = browser.compareTo(other.browser);
+            }
+            return result == 0 ? command.compareTo(other.command) : result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CommandKey)) {
+                return false;
+            }
+            CommandKey other = (CommandKey) o;
+            return proxyType.equals(other.proxyType) && browser.equals(other.browser) &&
+                    command.equals(other.command);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(proxyType, browser, command);
+        }
+    }
+}
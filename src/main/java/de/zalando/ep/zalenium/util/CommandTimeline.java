@@ -0,0 +1,159 @@
+package de.zalando.ep.zalenium.util;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.HdrHistogram.PackedHistogram;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only record of the commands executed in a test session: start, command, response status and duration.
+ * Entries are kept in fixed size primitive arrays used as a ring buffer, so the memory used per session is bounded
+ * (the oldest entries are overwritten once the buffer is full). The latency of all commands is also kept in a
+ * histogram, which is used to summarize the session in the dashboard.
+ *
+ * The timeline is written in a compact binary format (big endian), read by the dashboard to render a waterfall:
+ * magic "ZTL1", session start (epoch millis, long), dropped entries (int), number of command names (short), the
+ * command names (UTF), number of entries (int), and per entry: start offset in millis (int), duration in micros (int),
+ * command name index (short) and response status (short). Once MAX_COMMAND_NAMES are used, the commands seen
+ * after are written as "other".
+ */
+@SuppressWarnings("WeakerAccess")
+public class CommandTimeline {
+
+    public static final String TIMELINE_FILE_NAME = "commands.timeline";
+    @VisibleForTesting
+    static final int DEFAULT_CAPACITY = 2048;
+    @VisibleForTesting
+    static final int MAX_COMMAND_NAMES = Short.MAX_VALUE;
+    private static final byte[] MAGIC = {'Z', 'T', 'L', '1'};
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final long sessionStartMillis;
+    private final long sessionStartNanos;
+    private final int[] startOffsetsMillis;
+    private final int[] durationsMicros;
+    private final short[] commandIndexes;
+    private final short[] statuses;
+    private final List<String> commandNames = new ArrayList<>();
+    private final Map<String, Short> commandNameIndexes = new HashMap<>();
+    private final PackedHistogram histogram = new PackedHistogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    private long recordedEntries;
+    private long pendingCommandStart = -1;
+
+    public CommandTimeline() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    @VisibleForTesting
+    CommandTimeline(int capacity) {
+        sessionStartMillis = System.currentTimeMillis();
+        sessionStartNanos = System.nanoTime();
+        startOffsetsMillis = new int[capacity];
+        durationsMicros = new int[capacity];
+        commandIndexes = new short[capacity];
+        statuses = new short[capacity];
+    }
+
+    public synchronized void commandStarted() {
+        pendingCommandStart = System.nanoTime();
+    }
+
+    /*
+        Appends the command that was started last, returns its duration in microseconds or -1 when no command was
+        started.
+     */
+    public synchronized long commandFinished(String command, int status) {
+        if (pendingCommandStart < 0) {
+            return -1;
+        }
+        long now = System.nanoTime();
+        long durationMicros = Math.max(0, Math.min(TimeUnit.NANOSECONDS.toMicros(now - pendingCommandStart),
+                HIGHEST_TRACKABLE_MICROS));
+        int position = (int) (recordedEntries % startOffsetsMillis.length);
+        startOffsetsMillis[position] = (int) TimeUnit.NANOSECONDS.toMillis(pendingCommandStart - sessionStartNanos);
+        durationsMicros[position] = (int) durationMicros;
+        commandIndexes[position] = getCommandIndex(command);
+        statuses[position] = (short) status;
+        recordedEntries++;
+        histogram.recordValue(durationMicros);
+        pendingCommandStart = -1;
+        return durationMicros;
+    }
+
+    public synchronized int size() {
+        return (int) Math.min(recordedEntries, startOffsetsMillis.length);
+    }
+
+    public synchronized long getDroppedEntries() {
+        return Math.max(0, recordedEntries - startOffsetsMillis.length);
+    }
+
+    /*
+        Short text describing the command latency of the session, e.g. to be shown in the dashboard.
+     */
+    public synchronized String getSummary() {
+        if (histogram.getTotalCount() == 0) {
+            return "";
+        }
+        return String.format("%s commands, p50 %sms, p95 %sms, p99 %sms, max %sms", histogram.getTotalCount(),
+                toMillis(histogram.getValueAtPercentile(50)), toMillis(histogram.getValueAtPercentile(95)),
+                toMillis(histogram.getValueAtPercentile(99)), toMillis(histogram.getMaxValue()));
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    public synchronized void writeTo(File timelineFile) throws IOException {
+        File parent = timelineFile.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(timelineFile)))) {
+            out.write(MAGIC);
+            out.writeLong(sessionStartMillis);
+            out.writeInt((int) Math.min(getDroppedEntries(), Integer.MAX_VALUE));
+            out.writeShort(commandNames.size());
+            for (String commandName : commandNames) {
+                out.writeUTF(commandName);
+            }
+            int size = size();
+            out.writeInt(size);
+            // Oldest entry first
+            long first = recordedEntries - size;
+            for (long entry = first; entry < recordedEntries; entry++) {
+                int position = (int) (entry % startOffsetsMillis.length);
+                out.writeInt(startOffsetsMillis[position]);
+                out.writeInt(durationsMicros[position]);
+                out.writeShort(commandIndexes[position]);
+                out.writeShort(statuses[position]);
+            }
+        }
+    }
+
+    private short getCommandIndex(String command) {
+        Short index = commandNameIndexes.get(command);
+        if (index == null) {
+            // The last name is kept for the "other" commands
+            String commandName = commandNames.size() < MAX_COMMAND_NAMES - 1 ? command : CommandMetrics.OTHER_COMMAND;
+            index = commandNameIndexes.get(commandName);
+            if (index == null) {
+                index = (short) commandNames.size();
+                commandNames.add(commandName);
+                commandNameIndexes.put(commandName, index);
+            }
+        }
+        return index;
+    }
+
+    private static double toMillis(long micros) {
+        return Math.round(micros / 100.0) / 10.0;
+    }
+}
@@ -1,66 +1,48 @@
 package de.zalando.ep.zalenium.util;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
 import de.zalando.ep.zalenium.dashboard.TestInformation;
-import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.exec.CommandLine;
-import org.apache.commons.exec.DefaultExecutor;
-import org.apache.commons.exec.ExecuteWatchdog;
 import org.apache.commons.io.FileUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.util.EntityUtils;
 
 import java.io.*;
 import java.net.URISyntaxException;
-import java.net.URL;
-import java.net.URLConnection;
-import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class CommonProxyUtilities {
 
     private static final Logger LOG = Logger.getLogger(CommonProxyUtilities.class.getName());
+    private static final String PARTIAL_FILE_EXTENSION = ".part";
+    private static final int DOWNLOAD_BUFFER_SIZE = 64 * 1024;
+    private static final Semaphore DOWNLOADS = new Semaphore(CloudProviderHttpClient.MAX_CONCURRENT_DOWNLOADS, true);
 
     /*
-        Reading a JSON with DockerSelenium capabilities from a given URL
-        http://stackoverflow.com/questions/4308554/simplest-way-to-read-json-from-a-url-in-java
-        http://stackoverflow.com/questions/496651/connecting-to-remote-url-which-requires-authentication-using-java
+        Reading a JSON from a given URL of a Cloud Testing Provider, through the shared pooled client. A single
+        attempt, null when it failed. The callers try again later without holding a thread (the processing queue with
+        its backoff, the periodic account refresh), and responses like 401 or 404 would not change by retrying here.
      */
     public JsonElement readJSONFromUrl(String jsonUrl, String user, String password) {
-        int maxAttempts = 10;
-        int currentAttempts = 0;
-        while (currentAttempts < maxAttempts) {
-            try {
-                URL url = new URL(jsonUrl);
-                URLConnection urlConnection = url.openConnection();
-                String userPass = user + ":" + password;
-                String basicAuth = "Basic " + new String(new Base64().encode(userPass.getBytes()));
-                urlConnection.setRequestProperty("Authorization", basicAuth);
-
-                InputStream is = urlConnection.getInputStream();
-                BufferedReader rd = new BufferedReader(new InputStreamReader(is, Charset.forName("UTF-8")));
-                String jsonText = readAll(rd);
-                is.close();
-                return new JsonParser().parse(jsonText);
-            } catch (Exception e) {
-                currentAttempts++;
-                LOG.log(Level.SEVERE, e.toString(), e);
-                if (currentAttempts >= maxAttempts) {
-                    LOG.log(Level.SEVERE, e.toString(), e);
-                } else {
-                    LOG.log(Level.INFO, "Trying download once again from " + jsonUrl);
-                    try {
-                        Thread.sleep(1000 * 5);
-                    } catch (InterruptedException iE) {
-                        LOG.log(Level.FINE, iE.toString(), iE);
-                    }
-                }
-            }
+        try {
+            return CloudProviderHttpClient.getInstance().getJson(jsonUrl, user, password);
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "JSON could not be read from " + jsonUrl + ", " + e.toString());
+            return null;
         }
-        return null;
     }
 
     public String currentLocalPath() {
@@ -75,93 +57,150 @@ public class CommonProxyUtilities {
     }
 
     /*
-        Downloading a file, method adapted from:
-        http://code.runnable.com/Uu83dm5vSScIAACw/download-a-file-from-the-web-for-java-files-and-save
+        Checks with a HEAD request if a file of a Cloud Testing Provider can be downloaded already. Videos and logs
+        are usually not ready right after the test finished. Servers that do not support HEAD requests are asked
+        for the file directly.
+     */
+    public boolean isFileReady(String fileUrl, String user, String password, boolean authenticate) {
+        HttpHead request = new HttpHead(fileUrl);
+        if (authenticate) {
+            request.setHeader(HttpHeaders.AUTHORIZATION, CloudProviderHttpClient.basicAuthentication(user, password));
+        }
+        long start = System.nanoTime();
+        boolean ready = false;
+        try (CloseableHttpResponse response = CloudProviderHttpClient.getInstance().getHttpClient().execute(request)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            ready = statusCode != HttpStatus.SC_NOT_FOUND && statusCode != HttpStatus.SC_ACCEPTED
+                    && statusCode < HttpStatus.SC_INTERNAL_SERVER_ERROR;
+        } catch (IOException e) {
+            LOG.log(Level.FINE, e.toString(), e);
+        } finally {
+            CloudProviderHttpClient.recordRequest(fileUrl, System.nanoTime() - start, !ready);
+        }
+        return ready;
+    }
+
+    /*
+        Downloading a file, without waiting for it. Returns false when the file is not ready yet, the caller is
+        expected to try again later. The body is streamed to a ".part" file next to the destination, which is moved in
+        place once it is complete, so a failed download is resumed from the bytes already written with an HTTP Range
+        request. The number of concurrent downloads is bounded, memory use does not depend on the file size.
+     */
+    public boolean downloadFileIfReady(String fileUrl, String fileNameWithFullPath, String user, String password,
+                                       boolean authenticate) throws IOException, InterruptedException {
+        File fileToDownload = new File(fileNameWithFullPath);
+        if (!getPartialFile(fileToDownload).exists() && !isFileReady(fileUrl, user, password, authenticate)) {
+            return false;
+        }
+        DOWNLOADS.acquire();
+        try {
+            downloadAttempt(fileUrl, fileToDownload, user, password, authenticate);
+        } finally {
+            DOWNLOADS.release();
+        }
+        LOG.log(Level.INFO, "File downloaded to " + fileNameWithFullPath);
+        return true;
+    }
+
+    /*
+        Removes what was downloaded of a file that will not be downloaded anymore.
+     */
+    public void discardPartialDownload(String fileNameWithFullPath) {
+        FileUtils.deleteQuietly(getPartialFile(new File(fileNameWithFullPath)));
+    }
+
+    /*
+        Downloads the file, resuming from the partial file of a previous attempt when the server supports ranges.
      */
+    @VisibleForTesting
     @SuppressWarnings("ResultOfMethodCallIgnored")
-    public void downloadFile(String fileUrl, String fileNameWithFullPath, String user, String password,
-                             boolean authenticate)
-            throws InterruptedException {
-        int maxAttempts = 10;
-        int currentAttempts = 0;
-        // Videos are usually not ready right away, we put a little sleep to avoid falling into the catch/retry.
-        Thread.sleep(1000 * 5);
-        while (currentAttempts < maxAttempts) {
-            try {
-                URL link = new URL(fileUrl);
-                String userPass = user + ":" + password;
-                URLConnection urlConnection = link.openConnection();
-                if (authenticate) {
-                    String basicAuth = "Basic " + new String(new Base64().encode(userPass.getBytes()));
-                    urlConnection.setRequestProperty("Authorization", basicAuth);
-                }
+    void downloadAttempt(String fileUrl, File fileToDownload, String user, String password, boolean authenticate)
+            throws IOException {
+        File fileToDownloadFolder = fileToDownload.getParentFile();
+        if (fileToDownloadFolder != null && !fileToDownloadFolder.exists()) {
+            fileToDownloadFolder.mkdirs();
+        }
+        File partialFile = getPartialFile(fileToDownload);
+        long downloadedBytes = partialFile.exists() ? partialFile.length() : 0;
 
-                //Code to download
-                InputStream in = new BufferedInputStream(urlConnection.getInputStream());
-                ByteArrayOutputStream out = new ByteArrayOutputStream();
-                byte[] buf = new byte[1024];
-                int n;
-                while (-1!=(n=in.read(buf)))
-                {
-                    out.write(buf, 0, n);
-                }
-                out.close();
-                in.close();
-                byte[] response = out.toByteArray();
-                File fileToDownload = new File(fileNameWithFullPath);
-                File fileToDownloadFolder = fileToDownload.getParentFile();
-                if (!fileToDownloadFolder.exists()) {
-                    fileToDownloadFolder.mkdirs();
-                }
-                FileOutputStream fos = new FileOutputStream(fileNameWithFullPath);
-                fos.write(response);
-                fos.close();
-                //End download code
-                currentAttempts = maxAttempts + 1;
-                LOG.log(Level.INFO, "File downloaded to " + fileNameWithFullPath);
-            } catch (IOException e) {
-                // Catching this exception generally means that the file was not ready, so we try again.
-                currentAttempts++;
-                if (currentAttempts >= maxAttempts) {
-                    LOG.log(Level.SEVERE, e.toString(), e);
-                } else {
-                    LOG.log(Level.INFO, "Trying download once again from " + fileUrl);
-                    Thread.sleep(currentAttempts * 5 * 1000);
+        HttpGet request = new HttpGet(fileUrl);
+        if (authenticate) {
+            request.setHeader(HttpHeaders.AUTHORIZATION, CloudProviderHttpClient.basicAuthentication(user, password));
+        }
+        if (downloadedBytes > 0) {
+            request.setHeader(HttpHeaders.RANGE, "bytes=" + downloadedBytes + "-");
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try (CloseableHttpResponse response =
+                     CloudProviderHttpClient.getInstance().getDownloadHttpClient().execute(request)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            boolean append;
+            if (statusCode == HttpStatus.SC_PARTIAL_CONTENT && downloadedBytes > 0) {
+                append = true;
+            } else if (statusCode == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE && downloadedBytes > 0) {
+                // The partial file already has the whole content
+                EntityUtils.consumeQuietly(entity);
+                append = true;
+                entity = null;
+            } else if (statusCode == HttpStatus.SC_OK) {
+                append = false;
+            } else {
+                EntityUtils.consumeQuietly(entity);
+                throw new IOException(String.format("Server returned HTTP response code: %s for URL: %s",
+                        statusCode, fileUrl));
+            }
+            try (OutputStream out = new FileOutputStream(partialFile, append)) {
+                if (entity != null) {
+                    try (InputStream in = entity.getContent()) {
+                        byte[] buffer = new byte[DOWNLOAD_BUFFER_SIZE];
+                        int n;
+                        while ((n = in.read(buffer)) != -1) {
+                            out.write(buffer, 0, n);
+                        }
+                    }
                 }
-            } catch (Exception e) {
-                currentAttempts = maxAttempts + 1;
-                LOG.log(Level.SEVERE, e.toString(), e);
             }
+            moveIntoPlace(partialFile, fileToDownload);
+            failed = false;
+        } finally {
+            CloudProviderHttpClient.recordRequest(fileUrl, System.nanoTime() - start, failed);
         }
     }
 
+    private static File getPartialFile(File fileToDownload) {
+        return new File(fileToDownload.getPath() + PARTIAL_FILE_EXTENSION);
+    }
+
+    private static void moveIntoPlace(File partialFile, File fileToDownload) throws IOException {
+        try {
+            Files.move(partialFile.toPath(), fileToDownload.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(partialFile.toPath(), fileToDownload.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /*
+        The FLV file is replaced by the MP4 one when the conversion works, otherwise it is kept under the new name.
+     */
     public void convertFlvFileToMP4(TestInformation testInformation) {
-        // Names of the old and the new file
-        String flvVideoFile = testInformation.getVideoFolderPath() + "/" + testInformation.getFileName();
+        File flvVideoFile = new File(testInformation.getVideoFolderPath(), testInformation.getFileName());
+        String flvFileExtension = testInformation.getFileExtension();
         testInformation.setFileExtension(".mp4");
-        testInformation.buildVideoFileName();
-        String mp4VideoFile = testInformation.getVideoFolderPath() + "/" + testInformation.getFileName();
-
-        // Command to convert the file to MP4
-        CommandLine commandLine = new CommandLine("ffmpeg");
-        commandLine.addArgument("-i");
-        commandLine.addArgument(flvVideoFile);
-        commandLine.addArgument(mp4VideoFile);
-        DefaultExecutor defaultExecutor = new DefaultExecutor();
-        ExecuteWatchdog executeWatchdog = new ExecuteWatchdog(10 * 1000);
-        defaultExecutor.setWatchdog(executeWatchdog);
-        try {
-            int exitValue = defaultExecutor.execute(commandLine);
-            if (exitValue != 0) {
-                LOG.log(Level.WARNING, () -> "File " + flvVideoFile + " could not be converted to MP4. Exit value: " +
-                exitValue);
+        File mp4VideoFile = new File(testInformation.getVideoFolderPath(), testInformation.getFileName());
+
+        if (VideoConverter.convertToMp4(flvVideoFile, mp4VideoFile)) {
+            FileUtils.deleteQuietly(flvVideoFile);
+        } else {
+            // The file name has a timestamp, so it can be different when it is built again
+            testInformation.setFileExtension(flvFileExtension);
+            File renamedFlvVideoFile = new File(testInformation.getVideoFolderPath(), testInformation.getFileName());
+            if (!renamedFlvVideoFile.equals(flvVideoFile) && !flvVideoFile.renameTo(renamedFlvVideoFile)) {
+                LOG.log(Level.WARNING, () -> flvVideoFile + " could not be renamed to " + renamedFlvVideoFile);
             }
-        } catch (IOException e) {
-            LOG.log(Level.SEVERE, e.toString(), e);
         }
-
-        // Deleting the FLV file
-        FileUtils.deleteQuietly(new File(flvVideoFile));
     }
 
     @SuppressWarnings("WeakerAccess")
@@ -176,13 +215,4 @@ public class CommonProxyUtilities {
         return dateFormat.format(new Date());
     }
 
-    private static String readAll(Reader reader) throws IOException {
-        StringBuilder sb = new StringBuilder();
-        int cp;
-        while ((cp = reader.read()) != -1) {
-            sb.append((char) cp);
-        }
-        return sb.toString();
-    }
-
 }
@@ -0,0 +1,286 @@
+package de.zalando.ep.zalenium.util;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Adds properties to the "desiredCapabilities" of a new session request without parsing the whole body. The body is
+ * scanned once to find where the values of the properties are and where the capabilities end, and copied with the
+ * new values spliced in. The rest of the body, e.g. the base64 encoded extensions in "chromeOptions", is copied as it
+ * is instead of being turned into a JSON tree and serialized again.
+ *
+ * Bodies the scanner does not handle (no "desiredCapabilities" object, escaped capability names or invalid JSON) are
+ * rewritten with a JSON tree as before.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class DesiredCapabilitiesRewriter {
+
+    private static final String DESIRED_CAPABILITIES = "desiredCapabilities";
+
+    private DesiredCapabilitiesRewriter() {
+    }
+
+    /*
+        Sets the given properties in the desired capabilities, and adds the defaults that are not there yet. Existing
+        properties keep their position, new ones are added at the end in the order of the maps.
+     */
+    public static String inject(String body, Map<String, String> properties, Map<String, String> defaults) {
+        String rewritten = injectWithScanner(body, properties, defaults);
+        return rewritten != null ? rewritten : injectWithTree(body, properties, defaults);
+    }
+
+    @VisibleForTesting
+    static String injectWithTree(String body, Map<String, String> properties, Map<String, String> defaults) {
+        JsonObject jsonObject = new JsonParser().parse(body).getAsJsonObject();
+        JsonObject desiredCapabilities = jsonObject.getAsJsonObject(DESIRED_CAPABILITIES);
+        properties.forEach(desiredCapabilities::addProperty);
+        defaults.forEach((name, value) -> {
+            if (!desiredCapabilities.has(name)) {
+                desiredCapabilities.addProperty(name, value);
+            }
+        });
+        return jsonObject.toString();
+    }
+
+    /*
+        Null when the body cannot be handled by the scanner.
+     */
+    @VisibleForTesting
+    static String injectWithScanner(String body, Map<String, String> properties, Map<String, String> defaults) {
+        Map<String, int[]> valuePositions = new HashMap<>();
+        Scanner scanner = new Scanner(body, properties, defaults, valuePositions);
+        int closingBrace;
+        try {
+            closingBrace = scanner.findDesiredCapabilities();
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return null;
+        }
+        if (closingBrace < 0) {
+            return null;
+        }
+
+        // Values to replace, in the order they appear in the body
+        List<int[]> replacements = new ArrayList<>();
+        List<String> replacementValues = new ArrayList<>();
+        StringBuilder additions = new StringBuilder();
+        boolean hasMembers = scanner.hasMembers;
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            int[] position = valuePositions.get(property.getKey());
+            if (position != null) {
+                replacements.add(position);
+                replacementValues.add(toJson(property.getValue()));
+            } else {
+                hasMembers = appendProperty(additions, hasMembers, property.getKey(), property.getValue());
+            }
+        }
+        for (Map.Entry<String, String> property : defaults.entrySet()) {
+            if (!valuePositions.containsKey(property.getKey()) && !properties.containsKey(property.getKey())) {
+                hasMembers = appendProperty(additions, hasMembers, property.getKey(), property.getValue());
+            }
+        }
+
+        StringBuilder rewritten = new StringBuilder(body.length() + additions.length() + 64);
+        int copied = 0;
+        while (!replacements.isEmpty()) {
+            int next = 0;
+            for (int i = 1; i < replacements.size(); i++) {
+                if (replacements.get(i)[0] < replacements.get(next)[0]) {
+                    next = i;
+                }
+            }
+            int[] position = replacements.remove(next);
+            rewritten.append(body, copied, position[0]).append(replacementValues.remove(next));
+            copied = position[1];
+        }
+        rewritten.append(body, copied, closingBrace).append(additions).append(body, closingBrace, body.length());
+        return rewritten.toString();
+    }
+
+    private static boolean appendProperty(StringBuilder additions, boolean hasMembers, String name, String value) {
+        if (hasMembers) {
+            additions.append(',');
+        }
+        additions.append(toJson(name)).append(':').append(toJson(value));
+        return true;
+    }
+
+    private static String toJson(String value) {
+        return value == null ? "null" : new JsonPrimitive(value).toString();
+    }
+
+    /*
+        Finds the members of the top level "desiredCapabilities" object, keeping the value positions of the ones that
+        are going to be changed.
+     */
+    private static final class Scanner {
+        private final String body;
+        private final Map<String, String> properties;
+        private final Map<String, String> defaults;
+        private final Map<String, int[]> valuePositions;
+        private int position;
+        private boolean hasMembers;
+
+        private Scanner(String body, Map<String, String> properties, Map<String, String> defaults,
+                        Map<String, int[]> valuePositions) {
+            this.body = body;
+            this.properties = properties;
+            this.defaults = defaults;
+            this.valuePositions = valuePositions;
+        }
+
+        /*
+            Position of the closing brace of the desired capabilities, -1 when they are not in the body.
+         */
+        private int findDesiredCapabilities() {
+            int closingBrace = -1;
+            skipWhitespace();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                return -1;
+            }
+            while (true) {
+                skipWhitespace();
+                int nameStart = position;
+                int nameEnd = skipString();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                if (closingBrace < 0 && peek() == '{' && isName(nameStart, nameEnd, DESIRED_CAPABILITIES)) {
+                    closingBrace = scanCapabilities();
+                } else {
+                    skipValue();
+                }
+                skipWhitespace();
+                char next = body.charAt(position++);
+                if (next == '}') {
+                    return closingBrace;
+                }
+                if (next != ',') {
+                    throw new IllegalArgumentException("Unexpected character at " + (position - 1));
+                }
+            }
+        }
+
+        private int scanCapabilities() {
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                return position++;
+            }
+            hasMembers = true;
+            while (true) {
+                skipWhitespace();
+                int nameStart = position;
+                int nameEnd = skipString();
+                for (int i = nameStart; i < nameEnd; i++) {
+                    if (body.charAt(i) == '\\') {
+                        // Escaped names need to be decoded before comparing them, which the tree does
+                        throw new IllegalArgumentException("Escaped capability name at " + nameStart);
+                    }
+                }
+                String name = findPropertyName(nameStart, nameEnd);
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                int valueStart = position;
+                skipValue();
+                if (name != null) {
+                    valuePositions.put(name, new int[]{valueStart, position});
+                }
+                skipWhitespace();
+                char next = body.charAt(position);
+                if (next == '}') {
+                    return position++;
+                }
+                expect(',');
+            }
+        }
+
+        private String findPropertyName(int nameStart, int nameEnd) {
+            for (String name : properties.keySet()) {
+                if (isName(nameStart, nameEnd, name)) {
+                    return name;
+                }
+            }
+            for (String name : defaults.keySet()) {
+                if (isName(nameStart, nameEnd, name)) {
+                    return name;
+                }
+            }
+            return null;
+        }
+
+        // The name includes the quotes
+        private boolean isName(int nameStart, int nameEnd, String name) {
+            return nameEnd - nameStart == name.length() + 2 && body.regionMatches(nameStart + 1, name, 0, name.length());
+        }
+
+        private void skipValue() {
+            char first = peek();
+            if (first == '"') {
+                skipString();
+            } else if (first == '{' || first == '[') {
+                int depth = 0;
+                do {
+                    char c = peek();
+                    if (c == '"') {
+                        skipString();
+                        continue;
+                    }
+                    if (c == '{' || c == '[') {
+                        depth++;
+                    } else if (c == '}' || c == ']') {
+                        depth--;
+                    }
+                    position++;
+                } while (depth > 0);
+            } else {
+                int start = position;
+                while (position < body.length() && ",}] \t\r\n".indexOf(body.charAt(position)) < 0) {
+                    position++;
+                }
+                if (position == start) {
+                    throw new IllegalArgumentException("Missing value at " + start);
+                }
+            }
+        }
+
+        // Returns the position after the closing quote
+        private int skipString() {
+            expect('"');
+            while (true) {
+                char c = body.charAt(position++);
+                if (c == '\\') {
+                    position++;
+                } else if (c == '"') {
+                    return position;
+                }
+            }
+        }
+
+        private void skipWhitespace() {
+            while (position < body.length() && Character.isWhitespace(body.charAt(position))) {
+                position++;
+            }
+        }
+
+        private char peek() {
+            return body.charAt(position);
+        }
+
+        private void expect(char expected) {
+            if (body.charAt(position) != expected) {
+                throw new IllegalArgumentException("Expected '" + expected + "' at " + position);
+            }
+            position++;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package de.zalando.ep.zalenium.util;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * Delays between the attempts of an operation that is retried until a deadline. The delay doubles after each attempt
+ * up to a maximum, and a random half of it is jittered so retries of many operations started at the same time (e.g.
+ * the videos of a whole test run) are spread instead of hitting the provider together.
+ *
+ * Not thread safe, one instance is meant to be used by one operation at a time.
+ */
+@SuppressWarnings("WeakerAccess")
+public class ExponentialBackoff {
+
+    public static final long DEADLINE_REACHED = -1;
+
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final long deadlineMillis;
+    private final LongSupplier clock;
+    private int attempts;
+
+    public ExponentialBackoff(long initialDelayMillis, long maxDelayMillis, long timeoutMillis) {
+        this(initialDelayMillis, maxDelayMillis, timeoutMillis, System::currentTimeMillis);
+    }
+
+    @VisibleForTesting
+    ExponentialBackoff(long initialDelayMillis, long maxDelayMillis, long timeoutMillis, LongSupplier clock) {
+        this.initialDelayMillis = Math.max(1, initialDelayMillis);
+        this.maxDelayMillis = Math.max(this.initialDelayMillis, maxDelayMillis);
+        this.clock = clock;
+        this.deadlineMillis = clock.getAsLong() + timeoutMillis;
+    }
+
+    /*
+        Delay before the next attempt, or DEADLINE_REACHED when there is no time left for another one. The delay never
+        goes past the deadline.
+     */
+    public long nextDelayMillis() {
+        long remainingMillis = deadlineMillis - clock.getAsLong();
+        if (remainingMillis <= 0) {
+            return DEADLINE_REACHED;
+        }
+        long delay = initialDelayMillis << Math.min(attempts, 30);
+        delay = Math.min(delay, maxDelayMillis);
+        attempts++;
+        long half = delay / 2;
+        delay = half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+        return Math.min(delay, remainingMillis);
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+}
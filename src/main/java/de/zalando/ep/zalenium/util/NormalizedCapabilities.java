@@ -0,0 +1,109 @@
+package de.zalando.ep.zalenium.util;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.MapMaker;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable, interned form of a requested capability. Equal capabilities share one instance, so it can be compared by
+ * identity and used as a cache key; the hash is computed once and the string form is built once and reused by the
+ * logs and the usage statistics.
+ *
+ * The hub passes the same capability map to every proxy while a request is queued, so the normalized form is also
+ * remembered per map instance. It is reused as long as the map still has the same entries, so changes made to the
+ * map by a proxy are picked up.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class NormalizedCapabilities {
+
+    private static final Interner<NormalizedCapabilities> INTERNER = Interners.newWeakInterner();
+    // Weak keys are compared by identity
+    private static final ConcurrentMap<Map<String, ?>, NormalizedCapabilities> BY_SOURCE = new MapMaker()
+            .weakKeys().makeMap();
+
+    private final Map<String, Object> capabilities;
+    private final int hashCode;
+    private volatile String stringForm;
+
+    private NormalizedCapabilities(Map<String, Object> capabilities) {
+        this.capabilities = Collections.unmodifiableMap(capabilities);
+        this.hashCode = capabilities.hashCode();
+    }
+
+    public static NormalizedCapabilities of(Map<String, ?> requestedCapability) {
+        if (requestedCapability == null) {
+            requestedCapability = Collections.emptyMap();
+        }
+        NormalizedCapabilities normalized = BY_SOURCE.get(requestedCapability);
+        if (normalized != null && normalized.hasSameEntries(requestedCapability)) {
+            return normalized;
+        }
+        // Sorted and without null values, so the same capabilities always have the same form
+        Map<String, Object> capabilities = new TreeMap<>();
+        for (Map.Entry<String, ?> capability : requestedCapability.entrySet()) {
+            if (capability.getKey() != null && capability.getValue() != null) {
+                capabilities.put(capability.getKey(), capability.getValue());
+            }
+        }
+        normalized = INTERNER.intern(new NormalizedCapabilities(capabilities));
+        BY_SOURCE.put(requestedCapability, normalized);
+        return normalized;
+    }
+
+    public Object get(String capability) {
+        return capabilities.get(capability);
+    }
+
+    public Map<String, Object> asMap() {
+        return capabilities;
+    }
+
+    /*
+        Compares without allocating, null values are ignored as they are not part of the normalized form.
+     */
+    private boolean hasSameEntries(Map<String, ?> requestedCapability) {
+        int entries = 0;
+        for (Map.Entry<String, ?> capability : requestedCapability.entrySet()) {
+            if (capability.getKey() == null || capability.getValue() == null) {
+                continue;
+            }
+            if (!capability.getValue().equals(capabilities.get(capability.getKey()))) {
+                return false;
+            }
+            entries++;
+        }
+        return entries == capabilities.size();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof NormalizedCapabilities)) {
+            return false;
+        }
+        NormalizedCapabilities that = (NormalizedCapabilities) o;
+        return hashCode == that.hashCode && capabilities.equals(that.capabilities);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        String result = stringForm;
+        if (result == null) {
+            result = capabilities.toString();
+            stringForm = result;
+        }
+        return result;
+    }
+}
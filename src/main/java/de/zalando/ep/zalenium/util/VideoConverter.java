@@ -0,0 +1,229 @@
+package de.zalando.ep.zalenium.util;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.JsonObject;
+import org.HdrHistogram.AbstractHistogram;
+import org.HdrHistogram.PackedConcurrentHistogram;
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.DefaultExecutor;
+import org.apache.commons.exec.ExecuteWatchdog;
+import org.apache.commons.exec.PumpStreamHandler;
+import org.apache.commons.io.FileUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Converts the videos of the Cloud Testing Providers to MP4 with ffmpeg. The streams are copied into the new container
+ * first (remux), which takes a fraction of a second and keeps the quality; the video is only encoded again when the
+ * codecs cannot be stored in MP4. Encoding runs on a single thread, the number of parallel conversions is bounded by
+ * the caller.
+ *
+ * The watchdog of each conversion scales with the video duration, read with ffprobe or estimated from the file size.
+ *
+ * It also takes the posters shown by the dashboard before a video is played: one small JPEG frame per video.
+ */
+@SuppressWarnings("WeakerAccess")
+public class VideoConverter {
+
+    private static final Logger LOGGER = Logger.getLogger(VideoConverter.class.getName());
+    private static final long PROBE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
+    private static final long POSTER_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
+    private static final int POSTER_WIDTH = 320;
+    private static final long MIN_CONVERSION_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+    // Remuxing only reads and writes the file, encoding on one thread can be slower than real time
+    private static final double REMUX_TIMEOUT_PER_VIDEO_SECOND_MS = 250;
+    private static final double ENCODE_TIMEOUT_PER_VIDEO_SECOND_MS = 2000;
+    // Screen recordings are rarely above this bitrate, so the estimated duration is on the long side
+    private static final long ESTIMATED_BITS_PER_SECOND = 250_000;
+    private static final long HIGHEST_TRACKABLE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final LongAdder remuxed = new LongAdder();
+    private static final LongAdder encoded = new LongAdder();
+    private static final LongAdder failed = new LongAdder();
+    private static final AbstractHistogram conversionMillis = new PackedConcurrentHistogram(HIGHEST_TRACKABLE_MILLIS, 2);
+
+    private VideoConverter() {
+    }
+
+    /*
+        Converts the video, returns true when the MP4 file was created. The source file is left untouched.
+     */
+    public static boolean convertToMp4(File source, File target) {
+        long start = System.currentTimeMillis();
+        double durationSeconds = getDurationSeconds(source);
+        boolean converted = false;
+        String method = "remuxing";
+        if (runFfmpeg(remuxCommand(source, target), getTimeoutMillis(durationSeconds, false))) {
+            converted = true;
+            remuxed.increment();
+        } else {
+            method = "encoding";
+            FileUtils.deleteQuietly(target);
+            if (runFfmpeg(encodeCommand(source, target), getTimeoutMillis(durationSeconds, true))) {
+                converted = true;
+                encoded.increment();
+            } else {
+                FileUtils.deleteQuietly(target);
+                failed.increment();
+            }
+        }
+        long elapsedMillis = System.currentTimeMillis() - start;
+        conversionMillis.recordValue(Math.min(elapsedMillis, HIGHEST_TRACKABLE_MILLIS));
+        if (converted) {
+            String conversionMethod = method;
+            LOGGER.log(Level.INFO, () -> String.format("%s converted to MP4 by %s in %sms, %s seconds of video, " +
+                            "size ratio %.2f", source.getName(), conversionMethod, elapsedMillis,
+                    Math.round(durationSeconds), source.length() == 0 ? 0 : (double) target.length() / source.length()));
+        } else {
+            LOGGER.log(Level.WARNING, () -> source + " could not be converted to MP4");
+        }
+        return converted;
+    }
+
+    /*
+        Conversions by method and how long they took, in milliseconds.
+     */
+    public static JsonObject getMetrics() {
+        JsonObject metrics = new JsonObject();
+        metrics.addProperty("remuxed", remuxed.sum());
+        metrics.addProperty("encoded", encoded.sum());
+        metrics.addProperty("failed", failed.sum());
+        AbstractHistogram histogram = conversionMillis.copy();
+        metrics.addProperty("p50", histogram.getValueAtPercentile(50));
+        metrics.addProperty("p99", histogram.getValueAtPercentile(99));
+        metrics.addProperty("max", histogram.getMaxValue());
+        return metrics;
+    }
+
+    @VisibleForTesting
+    static long getTimeoutMillis(double durationSeconds, boolean encoding) {
+        double perSecond = encoding ? ENCODE_TIMEOUT_PER_VIDEO_SECOND_MS : REMUX_TIMEOUT_PER_VIDEO_SECOND_MS;
+        return MIN_CONVERSION_TIMEOUT_MS + (long) (Math.max(0, durationSeconds) * perSecond);
+    }
+
+    /*
+        Writes the frame at the given second of the video, scaled down, to the poster. Returns true when it was
+        created.
+     */
+    public static boolean createPoster(File video, File poster, double atSeconds) {
+        if (runFfmpeg(posterCommand(video, poster, atSeconds), POSTER_TIMEOUT_MS) && poster.length() > 0) {
+            return true;
+        }
+        FileUtils.deleteQuietly(poster);
+        return false;
+    }
+
+    /*
+        Duration of the video read with ffprobe, -1 when it cannot be read.
+     */
+    public static double probeDurationSeconds(File video) {
+        CommandLine commandLine = new CommandLine("ffprobe");
+        commandLine.addArgument("-v");
+        commandLine.addArgument("error");
+        commandLine.addArgument("-show_entries");
+        commandLine.addArgument("format=duration");
+        commandLine.addArgument("-of");
+        commandLine.addArgument("default=noprint_wrappers=1:nokey=1");
+        commandLine.addArgument(video.getAbsolutePath(), false);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        DefaultExecutor executor = new DefaultExecutor();
+        executor.setWatchdog(new ExecuteWatchdog(PROBE_TIMEOUT_MS));
+        executor.setStreamHandler(new PumpStreamHandler(output, null));
+        try {
+            executor.execute(commandLine);
+            return Double.parseDouble(new String(output.toByteArray(), StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.log(Level.FINE, e.toString(), e);
+            return -1;
+        }
+    }
+
+    @VisibleForTesting
+    static double getDurationSeconds(File video) {
+        double durationSeconds = probeDurationSeconds(video);
+        return durationSeconds >= 0 ? durationSeconds : (double) video.length() * 8 / ESTIMATED_BITS_PER_SECOND;
+    }
+
+    @VisibleForTesting
+    static CommandLine posterCommand(File video, File poster, double atSeconds) {
+        CommandLine commandLine = new CommandLine("ffmpeg");
+        commandLine.addArgument("-y");
+        commandLine.addArgument("-v");
+        commandLine.addArgument("error");
+        // Seeking before the input only decodes from the closest key frame
+        commandLine.addArgument("-ss");
+        commandLine.addArgument(String.format(Locale.ROOT, "%.2f", Math.max(0, atSeconds)));
+        commandLine.addArgument("-i");
+        commandLine.addArgument(video.getAbsolutePath(), false);
+        commandLine.addArgument("-frames:v");
+        commandLine.addArgument("1");
+        commandLine.addArgument("-vf");
+        commandLine.addArgument("scale=" + POSTER_WIDTH + ":-2");
+        commandLine.addArgument("-q:v");
+        commandLine.addArgument("5");
+        commandLine.addArgument(poster.getAbsolutePath(), false);
+        return commandLine;
+    }
+
+    @VisibleForTesting
+    static CommandLine remuxCommand(File source, File target) {
+        CommandLine commandLine = ffmpegCommand(source);
+        commandLine.addArgument("-c");
+        commandLine.addArgument("copy");
+        return addTarget(commandLine, target);
+    }
+
+    @VisibleForTesting
+    static CommandLine encodeCommand(File source, File target) {
+        CommandLine commandLine = ffmpegCommand(source);
+        commandLine.addArgument("-threads");
+        commandLine.addArgument("1");
+        commandLine.addArgument("-pix_fmt");
+        commandLine.addArgument("yuv420p");
+        return addTarget(commandLine, target);
+    }
+
+    private static CommandLine ffmpegCommand(File source) {
+        CommandLine commandLine = new CommandLine("ffmpeg");
+        commandLine.addArgument("-y");
+        commandLine.addArgument("-v");
+        commandLine.addArgument("error");
+        commandLine.addArgument("-i");
+        commandLine.addArgument(source.getAbsolutePath(), false);
+        return commandLine;
+    }
+
+    private static CommandLine addTarget(CommandLine commandLine, File target) {
+        // The index goes to the beginning of the file, so the video can be played while it is loaded
+        commandLine.addArgument("-movflags");
+        commandLine.addArgument("+faststart");
+        commandLine.addArgument(target.getAbsolutePath(), false);
+        return commandLine;
+    }
+
+    private static boolean runFfmpeg(CommandLine commandLine, long timeoutMillis) {
+        DefaultExecutor executor = new DefaultExecutor();
+        ExecuteWatchdog watchdog = new ExecuteWatchdog(timeoutMillis);
+        executor.setWatchdog(watchdog);
+        executor.setExitValues(null);
+        try {
+            int exitValue = executor.execute(commandLine);
+            if (watchdog.killedProcess()) {
+                LOGGER.log(Level.WARNING, () -> "ffmpeg was stopped after " + timeoutMillis + "ms: " + commandLine);
+                return false;
+            }
+            return exitValue == 0;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, e.toString(), e);
+            return false;
+        }
+    }
+}
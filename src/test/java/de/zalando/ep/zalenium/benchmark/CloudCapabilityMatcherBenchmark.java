@@ -0,0 +1,118 @@
+package de.zalando.ep.zalenium.benchmark;
+
+import de.zalando.ep.zalenium.container.ContainerClient;
+import de.zalando.ep.zalenium.container.ContainerFactory;
+import de.zalando.ep.zalenium.matcher.DockerSeleniumStarterCapabilityIndex;
+import de.zalando.ep.zalenium.matcher.ZaleniumCapabilityMatcher;
+import de.zalando.ep.zalenium.proxy.DockerSeleniumStarterRemoteProxy;
+import de.zalando.ep.zalenium.util.TestUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.grid.common.RegistrationRequest;
+import org.openqa.grid.internal.Registry;
+import org.openqa.grid.internal.RemoteProxy;
+import org.openqa.grid.selenium.proxy.DefaultRemoteProxy;
+import org.openqa.selenium.Platform;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.CapabilityType;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/*
+    Cost of checking if a request should go to a Cloud Testing Provider, with the given amount of nodes registered. scanAllProxies is the check done by going through all the proxies of the registry, as it was
+    done before the capability index was added.
+    Run with "mvn test -Pbenchmarks -DskipTests -Djmh.benchmarks=CloudCapabilityMatcherBenchmark".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class CloudCapabilityMatcherBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int proxies;
+
+    private Supplier<ContainerClient> originalContainerClient;
+    private Registry registry;
+    private ZaleniumCapabilityMatcher matcher;
+    private Map<String, Object> nodeCapability;
+    private Map<String, Object> dockerSeleniumCapability;
+    private Map<String, Object> cloudCapability;
+
+    @Setup
+    public void setUp() {
+        originalContainerClient = ContainerFactory.getDockerContainerClientGenerator();
+        ContainerFactory.setDockerContainerClientGenerator(TestUtils::getMockedDockerContainerClient);
+        registry = Registry.newInstance();
+
+        // Proxies are added directly to the proxy set, so no polling threads are started. The nodes have the
+        // docker-selenium capabilities, but are plain proxies since the mocked container client knows only two nodes.
+        for (int i = 0; i < proxies; i++) {
+            RegistrationRequest request = TestUtils.getRegistrationRequestForTesting(40000 + i,
+                    DefaultRemoteProxy.class.getCanonicalName());
+            request.getConfiguration().capabilities.clear();
+            request.getConfiguration().capabilities.addAll(TestUtils.getDockerSeleniumCapabilitiesForTesting());
+            registry.getAllProxies().add(new DefaultRemoteProxy(request, registry));
+        }
+        RegistrationRequest starterRequest = TestUtils.getRegistrationRequestForTesting(30000,
+                DockerSeleniumStarterRemoteProxy.class.getCanonicalName());
+        DockerSeleniumStarterRemoteProxy starterProxy = DockerSeleniumStarterRemoteProxy.getNewInstance(starterRequest,
+                registry);
+        registry.getAllProxies().add(starterProxy);
+        DockerSeleniumStarterCapabilityIndex.forRegistry(registry).add(starterProxy);
+
+        RegistrationRequest cloudRequest = TestUtils.getRegistrationRequestForTesting(30001,
+                DefaultRemoteProxy.class.getCanonicalName());
+        matcher = new ZaleniumCapabilityMatcher(new DefaultRemoteProxy(cloudRequest, registry));
+        nodeCapability = new HashMap<>();
+        nodeCapability.put(CapabilityType.BROWSER_NAME, "any");
+
+        dockerSeleniumCapability = new HashMap<>();
+        dockerSeleniumCapability.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+        dockerSeleniumCapability.put(CapabilityType.PLATFORM, Platform.LINUX);
+        cloudCapability = new HashMap<>();
+        cloudCapability.put(CapabilityType.BROWSER_NAME, BrowserType.SAFARI);
+        cloudCapability.put(CapabilityType.PLATFORM, Platform.MAC);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ContainerFactory.setDockerContainerClientGenerator(originalContainerClient);
+    }
+
+    @Benchmark
+    public boolean matchDockerSeleniumRequest() {
+        return matcher.matches(nodeCapability, dockerSeleniumCapability);
+    }
+
+    @Benchmark
+    public boolean matchCloudRequest() {
+        return matcher.matches(nodeCapability, cloudCapability);
+    }
+
+    @Benchmark
+    public boolean scanAllProxies() {
+        for (RemoteProxy remoteProxy : registry.getAllProxies()) {
+            if ((remoteProxy instanceof DockerSeleniumStarterRemoteProxy) &&
+                    remoteProxy.hasCapability(cloudCapability)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,116 @@
+package de.zalando.ep.zalenium.benchmark;
+
+import de.zalando.ep.zalenium.dashboard.Dashboard;
+import de.zalando.ep.zalenium.proxy.BrowserStackRemoteProxy;
+import de.zalando.ep.zalenium.proxy.CloudTestingRemoteProxy;
+import de.zalando.ep.zalenium.proxy.TestingBotRemoteProxy;
+import de.zalando.ep.zalenium.util.CommonProxyUtilities;
+import de.zalando.ep.zalenium.util.FakeCloudProvider;
+import de.zalando.ep.zalenium.util.TestUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.rules.TemporaryFolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.grid.internal.utils.configuration.GridHubConfiguration;
+import org.openqa.grid.web.Hub;
+import org.openqa.selenium.net.PortProber;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Time for a hub to run a burst of concurrent sessions on two cloud providers (a fake one, see FakeCloudProvider),
+    from the new session request until the videos are in the dashboard. Run with
+    "mvn test -Pbenchmarks -DskipTests -Djmh.benchmarks=CloudSessionThroughputBenchmark", the gc profiler reports
+    the memory allocated per burst (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CloudSessionThroughputBenchmark {
+
+    @Param({"100", "400"})
+    private int sessions;
+
+    @Param({"0", "200"})
+    private long sessionStartMillis;
+
+    private TemporaryFolder temporaryFolder;
+    private FakeCloudProvider provider;
+    private Hub hub;
+    private String hubUrl;
+    private ExecutorService clients;
+    private CloseableHttpClient client;
+
+    @Setup
+    public void setUp() throws Exception {
+        temporaryFolder = new TemporaryFolder();
+        temporaryFolder.create();
+        TestUtils.ensureRequiredInputFilesExist(temporaryFolder);
+        // Each provider can run half of the sessions at the same time
+        provider = new FakeCloudProvider().withAccountConcurrency(sessions / 2)
+                .withSessionStartMillis(sessionStartMillis).withVideoSizeBytes(512 * 1024);
+        provider.start();
+        CommonProxyUtilities commonProxyUtilities =
+                provider.getCommonProxyUtilities(temporaryFolder.getRoot().getAbsolutePath());
+        CloudTestingRemoteProxy.setCommonProxyUtilities(commonProxyUtilities);
+        Dashboard.setCommonProxyUtilities(commonProxyUtilities);
+
+        GridHubConfiguration hubConfiguration = new GridHubConfiguration();
+        hubConfiguration.host = "localhost";
+        hubConfiguration.port = PortProber.findFreePort();
+        hub = new Hub(hubConfiguration);
+        hub.start();
+        hubUrl = "http://localhost:" + hubConfiguration.port;
+        hub.getRegistry().add(provider.newProxy(BrowserStackRemoteProxy.class, hub.getRegistry()));
+        hub.getRegistry().add(provider.newProxy(TestingBotRemoteProxy.class, hub.getRegistry()));
+
+        clients = Executors.newFixedThreadPool(sessions);
+        client = HttpClients.custom().setMaxConnTotal(sessions).setMaxConnPerRoute(sessions).build();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        client.close();
+        clients.shutdownNow();
+        hub.stop();
+        provider.shutdown();
+        temporaryFolder.delete();
+    }
+
+    @Benchmark
+    public int runSessions() throws Exception {
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < sessions; i++) {
+            results.add(clients.submit(() -> FakeCloudProvider.runSession(client, hubUrl, 5)));
+        }
+        int created = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get()) {
+                created++;
+            }
+        }
+        while (CloudTestingRemoteProxy.getPendingDashboardUpdates() > 0) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        return created;
+    }
+}
@@ -0,0 +1,102 @@
+package de.zalando.ep.zalenium.benchmark;
+
+import de.zalando.ep.zalenium.container.ContainerClient;
+import de.zalando.ep.zalenium.container.ContainerFactory;
+import de.zalando.ep.zalenium.proxy.DockerSeleniumRemoteProxy;
+import de.zalando.ep.zalenium.util.TestUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.grid.common.RegistrationRequest;
+import org.openqa.grid.internal.Registry;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.selenium.Platform;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.CapabilityType;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.mockito.Mockito.mock;
+
+/*
+    Cost of the work done by the Zalenium proxies for each forwarded command (beforeCommand and afterCommand).
+    Run with "mvn test -Pbenchmarks -DskipTests -Djmh.benchmarks=CommandForwardingBenchmark", the gc profiler reports
+    the allocated bytes per operation (gc.alloc.rate.norm).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandForwardingBenchmark {
+
+    private Supplier<ContainerClient> originalContainerClient;
+    private DockerSeleniumRemoteProxy proxy;
+    private TestSession session;
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+
+    @Setup
+    public void setUp() {
+        originalContainerClient = ContainerFactory.getDockerContainerClientGenerator();
+        ContainerFactory.setDockerContainerClientGenerator(TestUtils::getMockedDockerContainerClient);
+
+        RegistrationRequest registrationRequest = TestUtils.getRegistrationRequestForTesting(40000,
+                DockerSeleniumRemoteProxy.class.getCanonicalName());
+        registrationRequest.getConfiguration().capabilities.clear();
+        registrationRequest.getConfiguration().capabilities.addAll(TestUtils.getDockerSeleniumCapabilitiesForTesting());
+        proxy = DockerSeleniumRemoteProxy.getNewInstance(registrationRequest, Registry.newInstance());
+
+        Map<String, Object> requestedCapability = new HashMap<>();
+        requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+        requestedCapability.put(CapabilityType.PLATFORM, Platform.LINUX);
+        session = proxy.getNewSession(requestedCapability);
+
+        // Wrappers instead of mocks, so the mocking framework does not allocate on each call
+        request = new HttpServletRequestWrapper(mock(HttpServletRequest.class)) {
+            @Override
+            public String getMethod() {
+                return "POST";
+            }
+
+            @Override
+            public String getPathInfo() {
+                return "/session/4f2a9c6e-03d1-4b4e-9a8f-2f0f5c1d7e21/element/0.5193-3/click";
+            }
+        };
+        response = new HttpServletResponseWrapper(mock(HttpServletResponse.class)) {
+            @Override
+            public int getStatus() {
+                return 200;
+            }
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        ContainerFactory.setDockerContainerClientGenerator(originalContainerClient);
+    }
+
+    @Benchmark
+    public TestSession forwardCommand() {
+        proxy.beforeCommand(session, request, response);
+        proxy.afterCommand(session, request, response);
+        return session;
+    }
+}
@@ -0,0 +1,91 @@
+package de.zalando.ep.zalenium.benchmark;
+
+import com.google.gson.JsonObject;
+import de.zalando.ep.zalenium.dashboard.DashboardTemplate;
+import de.zalando.ep.zalenium.dashboard.TestInformation;
+import de.zalando.ep.zalenium.dashboard.TestResultStore;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/*
+    Time to render the given amount of dashboard entries with dashboard/list_template.html. compiledTemplate is how the
+    entries are rendered now, chainedReplace is how they were rendered before, reading the template for each test and
+    calling String.replace once per placeholder.
+    Run with "mvn test -Pbenchmarks -DskipTests -Djmh.benchmarks=DashboardTemplateBenchmark".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class DashboardTemplateBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int entries;
+
+    private File templateFile;
+    private JsonObject[] tests;
+    private final Writer writer = new NullWriter();
+
+    @Setup
+    public void setUp() {
+        templateFile = new File("dashboard/list_template.html");
+        tests = new JsonObject[entries];
+        for (int i = 0; i < entries; i++) {
+            TestInformation testInformation = new TestInformation("session" + i, "test" + i, "Zalenium", "chrome",
+                    "1", "LINUX");
+            tests[i] = TestResultStore.newTest(testInformation, "12:00:00", 1, 0, 0);
+        }
+    }
+
+    @Benchmark
+    public Writer compiledTemplate() throws IOException {
+        DashboardTemplate template = DashboardTemplate.load(templateFile);
+        for (JsonObject test : tests) {
+            template.render(placeholder -> {
+                String field = "proxyName".equals(placeholder) ? "proxy" : placeholder;
+                return test.has(field) ? test.get(field).getAsString() : null;
+            }, writer);
+            writer.write('\n');
+        }
+        return writer;
+    }
+
+    @Benchmark
+    public Writer chainedReplace() throws IOException {
+        for (JsonObject test : tests) {
+            String entry = FileUtils.readFileToString(templateFile, UTF_8);
+            entry = entry.replace("{fileName}", test.get("fileName").getAsString()).
+                    replace("{testName}", test.get("testName").getAsString()).
+                    replace("{dateAndTime}", test.get("dateAndTime").getAsString()).
+                    replace("{browserAndPlatform}", test.get("browserAndPlatform").getAsString()).
+                    replace("{proxyName}", test.get("proxy").getAsString()).
+                    replace("{seleniumLogFileName}", test.get("seleniumLogFileName").getAsString()).
+                    replace("{browserDriverLogFileName}", test.get("browserDriverLogFileName").getAsString()).
+                    replace("{commandLatency}", test.get("commandLatency").getAsString()).
+                    replace("{commandTimelineFileName}", test.get("commandTimelineFileName").getAsString());
+            writer.write(entry);
+            writer.write('\n');
+        }
+        return writer;
+    }
+}
@@ -0,0 +1,98 @@
+package de.zalando.ep.zalenium.benchmark;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.zalando.ep.zalenium.util.DesiredCapabilitiesRewriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.CapabilityType;
+
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Cost of adding the credentials of a Cloud Testing Provider to a new session request, with Chrome extensions of
+    the given size (in KB, before base64). parseAndSerialize is the JSON tree rewrite done before the scanner was added.
+    Run with "mvn test -Pbenchmarks -DskipTests -Djmh.benchmarks=DesiredCapabilitiesRewriterBenchmark", the
+    allocation per request is in gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class DesiredCapabilitiesRewriterBenchmark {
+
+    @Param({"0", "512", "4096"})
+    public int extensionKb;
+
+    private String body;
+    private Map<String, String> credentials;
+    private Map<String, String> defaults;
+
+    @Setup
+    public void setUp() {
+        JsonObject chromeOptions = new JsonObject();
+        JsonArray args = new JsonArray();
+        args.add("--start-maximized");
+        args.add("--disable-infobars");
+        chromeOptions.add("args", args);
+        JsonArray extensions = new JsonArray();
+        if (extensionKb > 0) {
+            byte[] extension = new byte[extensionKb * 1024];
+            new Random(42).nextBytes(extension);
+            extensions.add(Base64.getEncoder().encodeToString(extension));
+        }
+        chromeOptions.add("extensions", extensions);
+        JsonObject prefs = new JsonObject();
+        prefs.addProperty("download.default_directory", "/home/seluser/Downloads");
+        chromeOptions.add("prefs", prefs);
+
+        JsonObject desiredCapabilities = new JsonObject();
+        desiredCapabilities.addProperty(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+        desiredCapabilities.addProperty(CapabilityType.PLATFORM, "WIN10");
+        desiredCapabilities.addProperty("name", "checkoutWithSavedCreditCard");
+        desiredCapabilities.add("chromeOptions", chromeOptions);
+        JsonObject request = new JsonObject();
+        request.add("desiredCapabilities", desiredCapabilities);
+        request.add("requiredCapabilities", new JsonObject());
+        body = request.toString();
+
+        credentials = new LinkedHashMap<>();
+        credentials.put("username", "zalenium");
+        credentials.put("accessKey", "0a1b2c3d-4e5f-6a7b-8c9d-0e1f2a3b4c5d");
+        defaults = Collections.singletonMap(CapabilityType.VERSION, "latest");
+    }
+
+    @Benchmark
+    public String scanAndSplice() {
+        return DesiredCapabilitiesRewriter.inject(body, credentials, defaults);
+    }
+
+    @Benchmark
+    public String parseAndSerialize() {
+        JsonObject jsonObject = new JsonParser().parse(body).getAsJsonObject();
+        JsonObject desiredCapabilities = jsonObject.getAsJsonObject("desiredCapabilities");
+        credentials.forEach(desiredCapabilities::addProperty);
+        if (!desiredCapabilities.has(CapabilityType.VERSION)) {
+            desiredCapabilities.addProperty(CapabilityType.VERSION, "latest");
+        }
+        return jsonObject.toString();
+    }
+}
@@ -0,0 +1,98 @@
+package de.zalando.ep.zalenium.benchmark;
+
+import com.google.gson.JsonObject;
+import de.zalando.ep.zalenium.dashboard.TestInformation;
+import de.zalando.ep.zalenium.dashboard.TestResultStore;
+import de.zalando.ep.zalenium.dashboard.TestResultStore.Field;
+import de.zalando.ep.zalenium.dashboard.TestResultStore.Query;
+import org.junit.rules.TemporaryFolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Latency of the dashboard queries on a store with the given amount of tests: 10000 test names, 20 groups, 4
+    browsers, 3 proxies and one failed test out of ten. Filling the store with a million tests takes a while.
+    Run with "mvn test -Pbenchmarks -DskipTests -Djmh.benchmarks=TestResultStoreBenchmark".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class TestResultStoreBenchmark {
+
+    private static final String[] BROWSERS = {"chrome", "firefox", "safari", "MicrosoftEdge"};
+    private static final String[] PROXIES = {"Zalenium", "SauceLabs", "BrowserStack"};
+
+    @Param({"100000", "1000000"})
+    public int tests;
+
+    private TemporaryFolder temporaryFolder;
+    private TestResultStore store;
+    private int middleId;
+
+    @Setup
+    public void setUp() throws IOException {
+        temporaryFolder = new TemporaryFolder();
+        temporaryFolder.create();
+        store = TestResultStore.open(temporaryFolder.newFolder("tests"));
+        TestInformation[] testInformation = new TestInformation[10000];
+        for (int i = 0; i < testInformation.length; i++) {
+            testInformation[i] = new TestInformation("session" + i, "test" + i, PROXIES[i % PROXIES.length],
+                    BROWSERS[i % BROWSERS.length], "1", "LINUX");
+            testInformation[i].setTestGroup("group" + (i % 20));
+            testInformation[i].setTestFailed(i % 10 == 0);
+        }
+        for (int i = 0; i < tests; i++) {
+            store.add(testInformation[(int) ((i * 7919L) % testInformation.length)], "12:00", 1, 0);
+        }
+        middleId = tests / 2;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        temporaryFolder.delete();
+    }
+
+    @Benchmark
+    public List<JsonObject> newestPage() throws IOException {
+        return store.query(new Query().limit(50));
+    }
+
+    @Benchmark
+    public List<JsonObject> pageInTheMiddle() throws IOException {
+        return store.query(new Query().before(middleId).limit(50));
+    }
+
+    @Benchmark
+    public List<JsonObject> testName() throws IOException {
+        return store.query(new Query().where(Field.TEST_NAME, "test1234").limit(50));
+    }
+
+    @Benchmark
+    public List<JsonObject> failedInGroupAndBrowser() throws IOException {
+        return store.query(new Query().where(Field.RESULT, "failed").where(Field.GROUP, "group10")
+                .where(Field.BROWSER, "safari").limit(50));
+    }
+
+    @Benchmark
+    public int countFailed() throws IOException {
+        return store.count(new Query().where(Field.RESULT, "failed"));
+    }
+}
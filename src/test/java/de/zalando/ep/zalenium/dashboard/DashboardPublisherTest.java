@@ -0,0 +1,101 @@
+package de.zalando.ep.zalenium.dashboard;
+
+import com.google.gson.JsonObject;
+import de.zalando.ep.zalenium.util.CommonProxyUtilities;
+import de.zalando.ep.zalenium.util.TestUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class DashboardPublisherTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws IOException {
+        TestUtils.ensureRequiredInputFilesExist(temporaryFolder);
+        FileUtils.writeStringToFile(new File(temporaryFolder.getRoot(), "list_template.html"),
+                "<li data-video=\"{fileName}\">{testName}</li>", UTF_8);
+        CommonProxyUtilities proxyUtilities = TestUtils.mockCommonProxyUtilitiesForDashboardTesting(temporaryFolder);
+        Dashboard.setCommonProxyUtilities(proxyUtilities);
+    }
+
+    @After
+    public void restoreCommonProxyUtilities() {
+        Dashboard.restoreCommonProxyUtilities();
+    }
+
+    @Test
+    public void testsPublishedTogetherAreWrittenInOneBatch() throws Exception {
+        long batches = DashboardPublisher.getMetrics().get("batches").getAsLong();
+        List<CompletableFuture<Void>> published = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            published.add(DashboardPublisher.publish(new TestInformation("session" + i, "test" + i, "Zalenium",
+                    "chrome", "1", "LINUX")));
+        }
+        CompletableFuture.allOf(published.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+        Assert.assertEquals(batches + 1, DashboardPublisher.getMetrics().get("batches").getAsLong());
+        Assert.assertEquals(0, DashboardPublisher.getPendingTests());
+        Assert.assertEquals(10, Dashboard.getExecutedTests());
+        List<String> entries = FileUtils.readLines(Dashboard.getIndexPage(1), UTF_8);
+        Assert.assertEquals(10, entries.size());
+        Assert.assertTrue(entries.get(0).endsWith(">test0</li>"));
+        Assert.assertTrue(entries.get(9).endsWith(">test9</li>"));
+        Assert.assertEquals(10, Dashboard.getTestResultStore().size());
+    }
+
+    @Test
+    public void testsAreAddedWithoutAPosterWhenItCannotBeTaken() throws Exception {
+        TestInformation testInformation = new TestInformation("session", "test", "Zalenium", "chrome", "1", "LINUX");
+        testInformation.setFileExtension(".mp4");
+        FileUtils.writeStringToFile(new File(Dashboard.getLocalVideosPath(), testInformation.getFileName()),
+                "not a video", UTF_8);
+
+        DashboardPublisher.publish(testInformation).get(30, TimeUnit.SECONDS);
+
+        JsonObject test = Dashboard.getTestResultStore().get(0);
+        Assert.assertEquals("", test.get("posterFileName").getAsString());
+        Assert.assertEquals(0, test.get("videoDuration").getAsLong());
+        Assert.assertFalse(new File(Dashboard.getLocalVideosPath(), testInformation.getLogsFolderName() + "/" +
+                TestInformation.POSTER_FILE_NAME).exists());
+    }
+
+    @Test
+    public void testsThatCannotBeAddedCompleteExceptionally() throws Exception {
+        long publishedTests = DashboardPublisher.getMetrics().get("publishedTests").getAsLong();
+        long failedTests = DashboardPublisher.getMetrics().get("failedTests").getAsLong();
+        long failedBatches = DashboardPublisher.getMetrics().get("failedBatches").getAsLong();
+        // The entries of the index cannot be rendered
+        FileUtils.forceDelete(new File(temporaryFolder.getRoot(), "list_template.html"));
+
+        CompletableFuture<Void> added = DashboardPublisher.publish(new TestInformation("session", "test", "Zalenium",
+                "chrome", "1", "LINUX"));
+
+        try {
+            added.get(10, TimeUnit.SECONDS);
+            Assert.fail("The test was not added to the dashboard");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+        Assert.assertEquals(0, Dashboard.getExecutedTests());
+        Assert.assertEquals(publishedTests, DashboardPublisher.getMetrics().get("publishedTests").getAsLong());
+        Assert.assertEquals(failedTests + 1, DashboardPublisher.getMetrics().get("failedTests").getAsLong());
+        Assert.assertEquals(failedBatches + 1, DashboardPublisher.getMetrics().get("failedBatches").getAsLong());
+    }
+}
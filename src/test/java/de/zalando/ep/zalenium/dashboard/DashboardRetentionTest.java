@@ -0,0 +1,119 @@
+package de.zalando.ep.zalenium.dashboard;
+
+import de.zalando.ep.zalenium.util.CommonProxyUtilities;
+import de.zalando.ep.zalenium.util.TestUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class DashboardRetentionTest {
+
+    private static final int VIDEO_BYTES = 1000;
+    private static final int LOG_BYTES = 10;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final TestInformation[] tests = new TestInformation[5];
+
+    @Before
+    public void setUp() throws IOException {
+        TestUtils.ensureRequiredInputFilesExist(temporaryFolder);
+        FileUtils.writeStringToFile(new File(temporaryFolder.getRoot(), "list_template.html"),
+                "<li data-video=\"{fileName}\">{testName}</li>", UTF_8);
+        CommonProxyUtilities proxyUtilities = TestUtils.mockCommonProxyUtilitiesForDashboardTesting(temporaryFolder);
+        Dashboard.setCommonProxyUtilities(proxyUtilities);
+        for (int i = 0; i < tests.length; i++) {
+            tests[i] = new TestInformation("session" + i, "test" + i, "Zalenium", "chrome", "1", "LINUX");
+            tests[i].setFileExtension(".mp4");
+            // The second test failed
+            tests[i].setTestFailed(i == 1);
+            FileUtils.writeByteArrayToFile(getVideo(tests[i]), new byte[VIDEO_BYTES]);
+            FileUtils.writeByteArrayToFile(new File(getLogsFolder(tests[i]), "selenium.log"), new byte[LOG_BYTES]);
+            Dashboard.updateDashboard(tests[i]);
+        }
+    }
+
+    @After
+    public void restoreCommonProxyUtilities() {
+        Dashboard.restoreCommonProxyUtilities();
+    }
+
+    @Test
+    public void oldTestsAreRemovedAndFailedTestsAreKeptLonger() throws IOException {
+        AtomicLong now = new AtomicLong(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(2));
+        DashboardRetention retention = new DashboardRetention(0, TimeUnit.HOURS.toMillis(1),
+                TimeUnit.HOURS.toMillis(3), now::get);
+
+        Assert.assertEquals(4 * (VIDEO_BYTES + LOG_BYTES), retention.run());
+
+        Assert.assertTrue(getVideo(tests[1]).exists());
+        Assert.assertTrue(getLogsFolder(tests[1]).exists());
+        for (int i : new int[]{0, 2, 3, 4}) {
+            Assert.assertFalse(getVideo(tests[i]).exists());
+            Assert.assertFalse(getLogsFolder(tests[i]).exists());
+        }
+        Assert.assertEquals(1, Dashboard.getTestResultStore().query(new TestResultStore.Query()).size());
+        // The counters only include the test left
+        Assert.assertEquals(1, Dashboard.getExecutedTests());
+        Assert.assertEquals(1, Dashboard.getCounters().getFailedTests());
+        Assert.assertEquals(VIDEO_BYTES, Dashboard.getCounters().getVideoBytes());
+        String indexPage = FileUtils.readFileToString(Dashboard.getIndexPage(1), UTF_8);
+        Assert.assertEquals("<li data-video=\"" + tests[1].getFileName() + "\">test1</li>", indexPage.trim());
+
+        // The next run starts from the failed test that was kept
+        now.addAndGet(TimeUnit.HOURS.toMillis(2));
+        Assert.assertEquals(VIDEO_BYTES + LOG_BYTES, retention.run());
+        Assert.assertFalse(getVideo(tests[1]).exists());
+        Assert.assertEquals(0, Dashboard.getTestResultStore().getStoredBytes());
+    }
+
+    @Test
+    public void oldestTestsAreRemovedWhenTheDashboardIsTooBig() throws IOException {
+        DashboardRetention retention = new DashboardRetention(3 * (VIDEO_BYTES + LOG_BYTES), 0, 0,
+                System::currentTimeMillis);
+
+        // The failed test is skipped, the two oldest tests that did not fail are removed instead
+        Assert.assertEquals(2 * (VIDEO_BYTES + LOG_BYTES), retention.run());
+        Assert.assertFalse(getVideo(tests[0]).exists());
+        Assert.assertTrue(getVideo(tests[1]).exists());
+        Assert.assertFalse(getVideo(tests[2]).exists());
+        Assert.assertTrue(getVideo(tests[3]).exists());
+        Assert.assertEquals(3 * (VIDEO_BYTES + LOG_BYTES), Dashboard.getTestResultStore().getStoredBytes());
+
+        // Removing the tests that did not fail is not enough, the failed test goes too
+        retention = new DashboardRetention(VIDEO_BYTES / 2, 0, 0, System::currentTimeMillis);
+        Assert.assertEquals(3 * (VIDEO_BYTES + LOG_BYTES), retention.run());
+        Assert.assertFalse(getVideo(tests[1]).exists());
+        Assert.assertEquals(0, Dashboard.getTestResultStore().getStoredBytes());
+        Assert.assertTrue(FileUtils.readFileToString(Dashboard.getIndexPage(1), UTF_8).trim().isEmpty());
+    }
+
+    @Test
+    public void nothingIsRemovedWithinTheLimits() throws IOException {
+        DashboardRetention retention = new DashboardRetention(10 * VIDEO_BYTES, TimeUnit.HOURS.toMillis(1), 0,
+                System::currentTimeMillis);
+
+        Assert.assertEquals(0, retention.run());
+        Assert.assertEquals(5, Dashboard.getTestResultStore().query(new TestResultStore.Query()).size());
+    }
+
+    private static File getVideo(TestInformation testInformation) {
+        return new File(Dashboard.getLocalVideosPath(), testInformation.getFileName());
+    }
+
+    private static File getLogsFolder(TestInformation testInformation) {
+        return new File(Dashboard.getLocalVideosPath(), testInformation.getLogsFolderName());
+    }
+}
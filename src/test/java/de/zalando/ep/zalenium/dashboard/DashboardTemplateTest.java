@@ -0,0 +1,43 @@
+package de.zalando.ep.zalenium.dashboard;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class DashboardTemplateTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void placeholdersAreReplaced() {
+        DashboardTemplate template = DashboardTemplate.compile("<li data-video=\"{fileName}\">{testName} " +
+                "({testName}) {unknown} function() { return {}; }</li>");
+        Map<String, String> values = ImmutableMap.of("fileName", "test.mp4", "testName", "login");
+
+        Assert.assertEquals("<li data-video=\"test.mp4\">login (login) {unknown} function() { return {}; }</li>",
+                template.render(values::get));
+        Assert.assertEquals("plain text", DashboardTemplate.compile("plain text").render(values::get));
+    }
+
+    @Test
+    public void changedTemplatesAreParsedAgain() throws IOException {
+        File file = temporaryFolder.newFile("list_template.html");
+        FileUtils.writeStringToFile(file, "<li>{testName}</li>", UTF_8);
+        DashboardTemplate template = DashboardTemplate.load(file);
+        Assert.assertSame(template, DashboardTemplate.load(file));
+
+        FileUtils.writeStringToFile(file, "<li class=\"nav-item\">{testName}</li>", UTF_8);
+        Assert.assertEquals("<li class=\"nav-item\">login</li>",
+                DashboardTemplate.load(file).render(placeholder -> "login"));
+    }
+}
@@ -4,8 +4,11 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import de.zalando.ep.zalenium.util.CommonProxyUtilities;
 import de.zalando.ep.zalenium.util.TestUtils;
 import org.apache.commons.io.FileUtils;
@@ -78,6 +81,112 @@ public class DashboardTest {
         Assert.assertEquals(1, Dashboard.getExecutedTestsWithVideo());
     }
 
+    @Test
+    public void testsAreAppendedToTheIndexPages() throws IOException {
+        writeListTemplate();
+        for (int i = 0; i < 101; i++) {
+            Dashboard.updateDashboard(ti);
+        }
+
+        Assert.assertEquals(2, Dashboard.getLastIndexPage());
+        Assert.assertEquals(100, FileUtils.readLines(Dashboard.getIndexPage(1), UTF_8).size());
+        Assert.assertEquals(1, FileUtils.readLines(Dashboard.getIndexPage(2), UTF_8).size());
+        Dashboard.checkpoint();
+        JsonObject summary = new JsonParser().parse(FileUtils.readFileToString(getTestCountFile(), UTF_8))
+                .getAsJsonObject();
+        Assert.assertEquals(101, summary.get("executedTests").getAsInt());
+        Assert.assertEquals(2, summary.get("indexPages").getAsInt());
+        Assert.assertEquals(1, summary.get("testsInLastIndexPage").getAsInt());
+        Assert.assertFalse(new File(getTestCountFile().getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void testListIsMovedToTheIndex() throws IOException {
+        writeListTemplate();
+        File testList = new File(temporaryFolder.getRoot(), Dashboard.VIDEOS_FOLDER_NAME + "/list.html");
+        FileUtils.writeStringToFile(testList, "<li class=\"nav-item\">second</li>\n" +
+                "<li class=\"nav-item\">first</li>\n", UTF_8);
+
+        Dashboard.updateDashboard(ti);
+
+        Assert.assertFalse(testList.exists());
+        Assert.assertEquals(Arrays.asList("<li class=\"nav-item\">first</li>", "<li class=\"nav-item\">second</li>",
+                "<li class=\"nav-item\">testName</li>"), FileUtils.readLines(Dashboard.getIndexPage(1), UTF_8));
+        Assert.assertEquals(1, Dashboard.getExecutedTests());
+    }
+
+    @Test
+    public void countersAreWrittenByTheCheckpoints() throws IOException {
+        TestInformation failedTest = new TestInformation("seleniumSessionId", "failedTest", "SauceLabs", "firefox",
+                "browserVersion", "platform");
+        failedTest.setTestFailed(true);
+        FileUtils.writeByteArrayToFile(new File(Dashboard.getLocalVideosPath(), failedTest.getFileName()),
+                new byte[100]);
+        Dashboard.updateDashboard(ti);
+        String firstSummary = FileUtils.readFileToString(getTestCountFile(), UTF_8);
+        Dashboard.updateDashboard(failedTest);
+        Dashboard.updateDashboard(ti);
+
+        // The summary is written when the dashboard is created, and then only by the checkpoints
+        Assert.assertEquals(firstSummary, FileUtils.readFileToString(getTestCountFile(), UTF_8));
+        Assert.assertEquals(3, Dashboard.getExecutedTests());
+        Dashboard.checkpoint();
+        JsonObject summary = new JsonParser().parse(FileUtils.readFileToString(getTestCountFile(), UTF_8))
+                .getAsJsonObject();
+        Assert.assertEquals(3, summary.get("executedTests").getAsInt());
+        Assert.assertEquals(1, summary.get("failedTests").getAsInt());
+        Assert.assertEquals(100, summary.get("videoBytes").getAsLong());
+        Assert.assertEquals(2, summary.getAsJsonObject("testsByBrowser").get("browser").getAsInt());
+        Assert.assertEquals(1, summary.getAsJsonObject("testsByBrowser").get("firefox").getAsInt());
+        Assert.assertEquals(1, summary.getAsJsonObject("testsByProxy").get("SauceLabs").getAsInt());
+
+        // Loaded again from the summary
+        Dashboard.setExecutedTests(0, 0);
+        Dashboard.synchronizeExecutedTestsValues(getTestCountFile());
+        Assert.assertEquals(3, Dashboard.getExecutedTests());
+        Assert.assertEquals(1, Dashboard.getCounters().getFailedTests());
+    }
+
+    @Test
+    public void storedTestsAreReplayedAfterACrash() throws IOException {
+        writeListTemplate();
+        Dashboard.updateDashboard(ti);
+        Dashboard.updateDashboard(ti);
+        Dashboard.checkpoint();
+        // Added to the store and the index, but not to the summary
+        Dashboard.updateDashboard(new TestInformation("seleniumSessionId", "third", "proxyName", "browser",
+                "browserVersion", "platform"));
+        // Only added to the store
+        TestInformation fourth = new TestInformation("seleniumSessionId", "fourth", "proxyName", "browser",
+                "browserVersion", "platform");
+        Dashboard.getTestResultStore().addAll(Collections.singletonList(TestResultStore.newTest(fourth, "12:00", 1,
+                0, 0)));
+
+        Dashboard.reload();
+        Dashboard.setExecutedTests(0, 0);
+        Dashboard.updateDashboard(ti);
+
+        Assert.assertEquals(5, Dashboard.getExecutedTests());
+        Assert.assertEquals(Arrays.asList("<li class=\"nav-item\">testName</li>", "<li class=\"nav-item\">testName</li>",
+                "<li class=\"nav-item\">third</li>", "<li class=\"nav-item\">fourth</li>",
+                "<li class=\"nav-item\">testName</li>"), FileUtils.readLines(Dashboard.getIndexPage(1), UTF_8));
+        Dashboard.checkpoint();
+        JsonObject summary = new JsonParser().parse(FileUtils.readFileToString(getTestCountFile(), UTF_8))
+                .getAsJsonObject();
+        Assert.assertEquals(5, summary.get("executedTests").getAsInt());
+        Assert.assertEquals(5, summary.get("storedTests").getAsInt());
+        Assert.assertEquals(5, summary.get("testsInLastIndexPage").getAsInt());
+    }
+
+    private void writeListTemplate() throws IOException {
+        FileUtils.writeStringToFile(new File(temporaryFolder.getRoot(), "list_template.html"),
+                "<li class=\"nav-item\">{testName}</li>", UTF_8);
+    }
+
+    private File getTestCountFile() {
+        return new File(temporaryFolder.getRoot(), Dashboard.VIDEOS_FOLDER_NAME + "/" + TEST_COUNT_FILE_NAME);
+    }
+
     private void cleanTempVideosFolder() throws IOException {
         FileUtils.cleanDirectory(new File(temporaryFolder.getRoot().getAbsolutePath()));
     }
@@ -0,0 +1,158 @@
+package de.zalando.ep.zalenium.dashboard;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.zalando.ep.zalenium.util.CommonProxyUtilities;
+import de.zalando.ep.zalenium.util.TestUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class DashboardTestsServletTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private DashboardTestsServlet dashboardTestsServlet;
+
+    @Before
+    public void initMocksAndService() throws IOException {
+        TestUtils.ensureRequiredInputFilesExist(temporaryFolder);
+        CommonProxyUtilities proxyUtilities = TestUtils.mockCommonProxyUtilitiesForDashboardTesting(temporaryFolder);
+        Dashboard.setCommonProxyUtilities(proxyUtilities);
+        for (int i = 0; i < 5; i++) {
+            TestInformation testInformation = new TestInformation("session" + i, "test" + i, "Zalenium",
+                    i % 2 == 0 ? "chrome" : "firefox", "1", "LINUX");
+            Dashboard.updateDashboard(testInformation);
+        }
+        request = mock(HttpServletRequest.class);
+        newResponse();
+        dashboardTestsServlet = new DashboardTestsServlet();
+    }
+
+    @After
+    public void restoreCommonProxyUtilities() {
+        Dashboard.restoreCommonProxyUtilities();
+    }
+
+    @Test
+    public void testsArePagedNewestFirst() throws IOException {
+        when(request.getParameter("limit")).thenReturn("2");
+        dashboardTestsServlet.doGet(request, response);
+        JsonObject page = getResponseJson();
+        JsonArray tests = page.getAsJsonArray("tests");
+        Assert.assertEquals(2, tests.size());
+        Assert.assertEquals("test4", tests.get(0).getAsJsonObject().get("testName").getAsString());
+        Assert.assertEquals(3, page.get("next").getAsInt());
+
+        newResponse();
+        when(request.getParameter("before")).thenReturn("1");
+        dashboardTestsServlet.doGet(request, response);
+        page = getResponseJson();
+        Assert.assertEquals(1, page.getAsJsonArray("tests").size());
+        Assert.assertEquals("test0", page.getAsJsonArray("tests").get(0).getAsJsonObject().get("testName")
+                .getAsString());
+        Assert.assertFalse(page.has("next"));
+    }
+
+    @Test
+    public void testsAreFiltered() throws IOException {
+        when(request.getParameter("browser")).thenReturn("firefox");
+        dashboardTestsServlet.doGet(request, response);
+        JsonArray tests = getResponseJson().getAsJsonArray("tests");
+        Assert.assertEquals(2, tests.size());
+        Assert.assertEquals("test3", tests.get(0).getAsJsonObject().get("testName").getAsString());
+        Assert.assertEquals("test1", tests.get(1).getAsJsonObject().get("testName").getAsString());
+    }
+
+    @Test
+    public void unchangedPagesAreNotSentAgain() throws IOException {
+        dashboardTestsServlet.doGet(request, response);
+        ArgumentCaptor<String> eTag = ArgumentCaptor.forClass(String.class);
+        verify(response).setHeader(Mockito.eq("ETag"), eTag.capture());
+
+        newResponse();
+        when(request.getHeader("If-None-Match")).thenReturn(eTag.getValue());
+        dashboardTestsServlet.doGet(request, response);
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(response, never()).getOutputStream();
+
+        // A new test changes the newest page
+        Dashboard.updateDashboard(new TestInformation("session5", "test5", "Zalenium", "chrome", "1", "LINUX"));
+        newResponse();
+        dashboardTestsServlet.doGet(request, response);
+        verify(response).setStatus(200);
+        Assert.assertEquals(6, getResponseJson().getAsJsonArray("tests").size());
+    }
+
+    @Test
+    public void pagesAreSentAgainWhenTestsAreRemoved() throws IOException {
+        dashboardTestsServlet.doGet(request, response);
+        ArgumentCaptor<String> eTag = ArgumentCaptor.forClass(String.class);
+        verify(response).setHeader(Mockito.eq("ETag"), eTag.capture());
+
+        // E.g. by the retention
+        Assert.assertTrue(Dashboard.getTestResultStore().remove(2));
+        newResponse();
+        when(request.getHeader("If-None-Match")).thenReturn(eTag.getValue());
+        dashboardTestsServlet.doGet(request, response);
+        verify(response).setStatus(200);
+        Assert.assertEquals(4, getResponseJson().getAsJsonArray("tests").size());
+    }
+
+    @Test
+    public void invalidParametersAreRejected() throws IOException {
+        when(request.getParameter("before")).thenReturn("newest");
+        dashboardTestsServlet.doGet(request, response);
+        verify(response).setStatus(400);
+    }
+
+    private JsonObject getResponseJson() throws IOException {
+        return new JsonParser().parse(response.getOutputStream().toString()).getAsJsonObject();
+    }
+
+    private void newResponse() throws IOException {
+        response = mock(HttpServletResponse.class);
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            private StringBuilder stringBuilder = new StringBuilder();
+
+            @Override
+            public boolean isReady() {
+                return false;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                this.stringBuilder.append((char) b);
+            }
+
+            public String toString() {
+                return stringBuilder.toString();
+            }
+        });
+    }
+}
@@ -0,0 +1,201 @@
+package de.zalando.ep.zalenium.dashboard;
+
+import com.google.gson.JsonObject;
+import de.zalando.ep.zalenium.dashboard.TestResultStore.Field;
+import de.zalando.ep.zalenium.dashboard.TestResultStore.Query;
+import de.zalando.ep.zalenium.util.CommonProxyUtilities;
+import de.zalando.ep.zalenium.util.TestUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class TestResultStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File storeFolder;
+    private TestResultStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        storeFolder = temporaryFolder.newFolder("tests");
+        store = TestResultStore.open(storeFolder);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    public void testsAreQueriedByFieldNewestFirst() throws IOException {
+        for (int i = 0; i < 30; i++) {
+            TestInformation testInformation = new TestInformation("session" + i, "test" + (i % 3),
+                    i % 2 == 0 ? "SauceLabs" : "TestingBot", i % 5 == 0 ? "firefox" : "chrome", "1", "LINUX");
+            testInformation.setTestGroup(i < 10 ? "smoke" : "regression");
+            testInformation.setTestFailed(i % 4 == 0);
+            Assert.assertEquals(i, store.add(testInformation, "12:00", 1, 0));
+        }
+
+        List<JsonObject> tests = store.query(new Query().where(Field.BROWSER, "firefox"));
+        Assert.assertEquals(6, tests.size());
+        Assert.assertEquals(25, tests.get(0).get("id").getAsInt());
+        Assert.assertEquals("session25", tests.get(0).get("sessionId").getAsString());
+        Assert.assertEquals(0, tests.get(5).get("id").getAsInt());
+
+        Query failedSmokeTests = new Query().where(Field.GROUP, "smoke").where(Field.RESULT, "failed");
+        tests = store.query(failedSmokeTests);
+        Assert.assertEquals(3, tests.size());
+        Assert.assertEquals(8, tests.get(0).get("id").getAsInt());
+        Assert.assertEquals(3, store.count(failedSmokeTests));
+
+        Assert.assertEquals(10, store.count(new Query().where(Field.TEST_NAME, "test1")));
+        Assert.assertEquals(15, store.count(new Query().where(Field.PROXY, "SauceLabs")));
+        Assert.assertEquals(0, store.count(new Query().where(Field.PROXY, "BrowserStack")));
+        Assert.assertTrue(store.query(new Query().where(Field.GROUP, "none")).isEmpty());
+    }
+
+    @Test
+    public void pagesFollowTheLastId() throws IOException {
+        for (int i = 0; i < 25; i++) {
+            store.add(new TestInformation("session" + i, "test", "Zalenium", "chrome", "1", "LINUX"), "12:00", 1,
+                    0);
+        }
+
+        List<JsonObject> page = store.query(new Query().where(Field.PROXY, "Zalenium").limit(10));
+        Assert.assertEquals(24, page.get(0).get("id").getAsInt());
+        int lastId = page.get(9).get("id").getAsInt();
+        page = store.query(new Query().where(Field.PROXY, "Zalenium").before(lastId).limit(10));
+        Assert.assertEquals(14, page.get(0).get("id").getAsInt());
+        page = store.query(new Query().before(5).limit(10));
+        Assert.assertEquals(5, page.size());
+        Assert.assertEquals(4, page.get(0).get("id").getAsInt());
+    }
+
+    @Test
+    public void testsAreQueriedByTime() throws Exception {
+        TestInformation testInformation = new TestInformation("session", "test", "Zalenium", "chrome", "1", "LINUX");
+        store.add(testInformation, "12:00", 1, 0);
+        TimeUnit.MILLISECONDS.sleep(20);
+        long from = System.currentTimeMillis();
+        store.add(testInformation, "12:01", 1, 0);
+        store.add(testInformation, "12:01", 1, 0);
+        TimeUnit.MILLISECONDS.sleep(20);
+        long to = System.currentTimeMillis();
+        store.add(testInformation, "12:02", 1, 0);
+
+        List<JsonObject> tests = store.query(new Query().from(from).to(to));
+        Assert.assertEquals(2, tests.size());
+        Assert.assertEquals(2, tests.get(0).get("id").getAsInt());
+        Assert.assertEquals(1, tests.get(1).get("id").getAsInt());
+        Assert.assertEquals(1, store.count(new Query().from(to)));
+    }
+
+    @Test
+    public void storeIsRecoveredAfterACrash() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            store.add(new TestInformation("session" + i, "test", "Zalenium", "chrome", "1", "LINUX"), "12:00", 1,
+                    0);
+        }
+        store.close();
+        // The last test did not make it to the index, and a test was being written when the process stopped
+        try (RandomAccessFile index = new RandomAccessFile(new File(storeFolder, TestResultStore.INDEX_FILE_NAME),
+                "rw")) {
+            index.setLength(TestResultStore.INDEX_HEADER_SIZE + 2L * TestResultStore.ENTRY_SIZE + 7);
+        }
+        try (RandomAccessFile data = new RandomAccessFile(new File(storeFolder, TestResultStore.DATA_FILE_NAME),
+                "rw")) {
+            data.seek(data.length());
+            data.write("{\"testName\":\"unfini".getBytes(UTF_8));
+        }
+
+        store = TestResultStore.open(storeFolder);
+        Assert.assertEquals(3, store.size());
+        Assert.assertEquals("session2", store.get(2).get("sessionId").getAsString());
+        Assert.assertEquals(3, store.count(new Query().where(Field.TEST_NAME, "test")));
+        Assert.assertEquals(3, store.add(new TestInformation("session3", "test", "Zalenium", "chrome", "1", "LINUX"),
+                "12:00", 1, 0));
+        Assert.assertEquals("session3", store.query(new Query().where(Field.TEST_NAME, "test")).get(0)
+                .get("sessionId").getAsString());
+    }
+
+    @Test
+    public void indexWithAnOlderLayoutIsRebuilt() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            store.add(new TestInformation("session" + i, "test", "Zalenium", "chrome", "1", "LINUX"), "12:00", 1,
+                    100);
+        }
+        store.close();
+        // Entries of 60 bytes without a header, as the index was written before
+        try (RandomAccessFile index = new RandomAccessFile(new File(storeFolder, TestResultStore.INDEX_FILE_NAME),
+                "rw")) {
+            index.setLength(0);
+            index.write(new byte[3 * 60]);
+        }
+
+        store = TestResultStore.open(storeFolder);
+        Assert.assertEquals(3, store.size());
+        Assert.assertEquals(300, store.getStoredBytes());
+        Assert.assertEquals("session2", store.get(2).get("sessionId").getAsString());
+        Assert.assertEquals(3, store.count(new Query().where(Field.TEST_NAME, "test")));
+    }
+
+    @Test
+    public void removedTestsAreNotReturned() throws IOException {
+        for (int i = 0; i < 4; i++) {
+            store.add(new TestInformation("session" + i, "test", "Zalenium", "chrome", "1", "LINUX"), "12:00", 1,
+                    100);
+        }
+        Assert.assertEquals(400, store.getStoredBytes());
+
+        Assert.assertTrue(store.remove(0));
+        Assert.assertTrue(store.remove(2));
+        Assert.assertFalse(store.remove(2));
+        Assert.assertEquals(200, store.getStoredBytes());
+        Assert.assertEquals(2, store.count(new Query().where(Field.TEST_NAME, "test")));
+        Assert.assertEquals(2, store.count(new Query()));
+        Assert.assertEquals(1, store.count(new Query().before(3)));
+        Assert.assertEquals(2, store.query(new Query().where(Field.BROWSER, "chrome")).size());
+        Assert.assertEquals(1, store.oldest(-1, 10).get(0).get("id").getAsInt());
+        Assert.assertNull(store.get(2));
+
+        store.close();
+        store = TestResultStore.open(storeFolder);
+        Assert.assertEquals(200, store.getStoredBytes());
+        Assert.assertEquals(2, store.count(new Query()));
+        Assert.assertEquals(2, store.query(new Query()).size());
+        Assert.assertEquals(3, store.oldest(1, 10).get(0).get("id").getAsInt());
+    }
+
+    @Test
+    public void dashboardAddsTestsToTheStore() throws IOException {
+        TestUtils.ensureRequiredInputFilesExist(temporaryFolder);
+        CommonProxyUtilities proxyUtilities = TestUtils.mockCommonProxyUtilitiesForDashboardTesting(temporaryFolder);
+        Dashboard.setCommonProxyUtilities(proxyUtilities);
+        try {
+            TestInformation testInformation = new TestInformation("session", "test", "Zalenium", "chrome", "1",
+                    "LINUX");
+            testInformation.setTestGroup("smoke");
+            Dashboard.updateDashboard(testInformation);
+
+            List<JsonObject> tests = Dashboard.getTestResultStore().query(new Query().where(Field.GROUP, "smoke"));
+            Assert.assertEquals(1, tests.size());
+            Assert.assertEquals("unknown", tests.get(0).get("result").getAsString());
+            Assert.assertEquals(testInformation.getFileName(), tests.get(0).get("fileName").getAsString());
+        } finally {
+            Dashboard.restoreCommonProxyUtilities();
+        }
+    }
+}
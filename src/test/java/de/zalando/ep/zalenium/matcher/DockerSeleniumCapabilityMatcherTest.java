@@ -0,0 +1,36 @@
+package de.zalando.ep.zalenium.matcher;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openqa.grid.selenium.proxy.DefaultRemoteProxy;
+import org.openqa.selenium.Platform;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.CapabilityType;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+
+public class DockerSeleniumCapabilityMatcherTest {
+
+    @Test
+    public void requestsThatOnlyDifferInTheTestNameShareOneCacheEntry() {
+        DockerSeleniumCapabilityMatcher matcher = new DockerSeleniumCapabilityMatcher(mock(DefaultRemoteProxy.class));
+        Map<String, Object> nodeCapability = new HashMap<>();
+        nodeCapability.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+        nodeCapability.put(CapabilityType.PLATFORM, Platform.LINUX);
+
+        for (int i = 0; i < 10; i++) {
+            Map<String, Object> requestedCapability = new HashMap<>();
+            requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+            requestedCapability.put("name", "test" + i);
+            Assert.assertTrue(matcher.matches(nodeCapability, requestedCapability));
+        }
+        Map<String, Object> firefox = new HashMap<>();
+        firefox.put(CapabilityType.BROWSER_NAME, BrowserType.FIREFOX);
+        Assert.assertFalse(matcher.matches(nodeCapability, firefox));
+
+        Assert.assertEquals(2, matcher.getCachedRequests());
+    }
+}
@@ -38,6 +38,8 @@ public class BrowserStackRemoteProxyTest {
     @SuppressWarnings("ConstantConditions")
     @Before
     public void setUp() {
+        // Failures of the sessions of other tests should not open the circuit breaker
+        CloudProviderCircuitBreaker.reset();
         registry = Registry.newInstance();
         // Creating the configuration and the registration request of the proxy (node)
         RegistrationRequest request = TestUtils.getRegistrationRequestForTesting(30002,
@@ -51,6 +53,9 @@ public class BrowserStackRemoteProxyTest {
         request = TestUtils.getRegistrationRequestForTesting(30000,
                 DockerSeleniumStarterRemoteProxy.class.getCanonicalName());
         DockerSeleniumStarterRemoteProxy dsStarterProxy = DockerSeleniumStarterRemoteProxy.getNewInstance(request, registry);
+        // No docker-selenium containers are needed, starting them would keep threads running after the test
+        DockerSeleniumStarterRemoteProxy.setChromeContainersOnStartup(0);
+        DockerSeleniumStarterRemoteProxy.setFirefoxContainersOnStartup(0);
 
         // We add both nodes to the registry
         registry.add(browserStackProxy);
@@ -58,7 +63,10 @@ public class BrowserStackRemoteProxyTest {
     }
 
     @After
-    public void tearDown() {
+    public void tearDown() throws InterruptedException {
+        // Stops the concurrency refresh of the proxies and the processing of the tests they finished
+        registry.stop();
+        CloudTestProcessingQueue.getInstance().stopProcessing(browserStackProxy.getProxyClassName());
         BrowserStackRemoteProxy.restoreCommonProxyUtilities();
         BrowserStackRemoteProxy.restoreGa();
         BrowserStackRemoteProxy.restoreEnvironment();
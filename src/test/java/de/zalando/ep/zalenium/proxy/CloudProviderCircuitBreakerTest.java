@@ -0,0 +1,76 @@
+package de.zalando.ep.zalenium.proxy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CloudProviderCircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final CloudProviderCircuitBreaker breaker = new CloudProviderCircuitBreaker("Provider", now::get);
+
+    @Test
+    public void breakerOpensWhenHalfOfTheRecentOutcomesFailed() {
+        breaker.sessionStartFinished(true, 1000);
+        breaker.apiCallFinished(false);
+        breaker.sessionStartFinished(false, 1000);
+        breaker.apiCallFinished(true);
+        Assert.assertTrue(breaker.allowSession());
+
+        // Too slow to count as a started session
+        breaker.sessionStartFinished(true, TimeUnit.MINUTES.toMillis(5));
+
+        Assert.assertEquals(CloudProviderCircuitBreaker.State.OPEN, breaker.getState());
+        Assert.assertFalse(breaker.allowSession());
+    }
+
+    @Test
+    public void singleProbeClosesTheBreakerWhenItStarts() {
+        openBreaker();
+
+        now.addAndGet(TimeUnit.MINUTES.toMillis(1));
+        Assert.assertTrue(breaker.allowSession());
+        Assert.assertEquals(CloudProviderCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        Assert.assertFalse(breaker.allowSession());
+
+        breaker.sessionStartFinished(true, 1000);
+        Assert.assertEquals(CloudProviderCircuitBreaker.State.CLOSED, breaker.getState());
+        Assert.assertTrue(breaker.allowSession());
+    }
+
+    @Test
+    public void failedOrLostProbeOpensTheBreakerAgain() {
+        openBreaker();
+        now.addAndGet(TimeUnit.MINUTES.toMillis(1));
+        Assert.assertTrue(breaker.allowSession());
+        breaker.sessionStartFinished(false, 1000);
+        Assert.assertEquals(CloudProviderCircuitBreaker.State.OPEN, breaker.getState());
+
+        now.addAndGet(TimeUnit.MINUTES.toMillis(1));
+        Assert.assertTrue(breaker.allowSession());
+        // The probe never reports back
+        now.addAndGet(TimeUnit.MINUTES.toMillis(3));
+        Assert.assertFalse(breaker.allowSession());
+        Assert.assertEquals(CloudProviderCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void cancelledProbeLetsTheNextSessionProbe() {
+        openBreaker();
+        now.addAndGet(TimeUnit.MINUTES.toMillis(1));
+        Assert.assertTrue(breaker.allowSession());
+
+        breaker.cancelProbe();
+
+        Assert.assertTrue(breaker.allowSession());
+    }
+
+    private void openBreaker() {
+        for (int i = 0; i < 5; i++) {
+            breaker.apiCallFinished(true);
+        }
+        Assert.assertEquals(CloudProviderCircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
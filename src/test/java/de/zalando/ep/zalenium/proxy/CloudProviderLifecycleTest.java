@@ -0,0 +1,136 @@
+package de.zalando.ep.zalenium.proxy;
+
+import de.zalando.ep.zalenium.dashboard.Dashboard;
+import de.zalando.ep.zalenium.util.CommonProxyUtilities;
+import de.zalando.ep.zalenium.util.FakeCloudProvider;
+import de.zalando.ep.zalenium.util.TestUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openqa.grid.internal.utils.configuration.GridHubConfiguration;
+import org.openqa.grid.web.Hub;
+import org.openqa.selenium.net.PortProber;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+
+/*
+    Sessions sent through a hub to the cloud proxies, which talk to a fake provider, until their video and logs are
+    in the dashboard.
+ */
+public class CloudProviderLifecycleTest {
+
+    private static final int CONCURRENCY = 10;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private FakeCloudProvider provider;
+    private Hub hub;
+    private String hubUrl;
+
+    @Before
+    public void setUp() throws Exception {
+        CloudProviderCircuitBreaker.reset();
+        CloudProviderRouting.reset();
+        TestUtils.ensureRequiredInputFilesExist(temporaryFolder);
+        CloudTestProcessingQueue.getInstance().setJournalFile(new File(temporaryFolder.getRoot(),
+                "videos/pendingCloudTests.journal"));
+        provider = new FakeCloudProvider().withAccountConcurrency(CONCURRENCY).withVideoSizeBytes(128 * 1024);
+        provider.start();
+        CommonProxyUtilities commonProxyUtilities =
+                provider.getCommonProxyUtilities(temporaryFolder.getRoot().getAbsolutePath());
+        CloudTestingRemoteProxy.setCommonProxyUtilities(commonProxyUtilities);
+        Dashboard.setCommonProxyUtilities(commonProxyUtilities);
+
+        GridHubConfiguration hubConfiguration = new GridHubConfiguration();
+        hubConfiguration.host = "localhost";
+        hubConfiguration.port = PortProber.findFreePort();
+        hub = new Hub(hubConfiguration);
+        hub.start();
+        hubUrl = "http://localhost:" + hubConfiguration.port;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        hub.stop();
+        provider.shutdown();
+        // Tests left in the queue would keep calling the stopped provider while the next tests run
+        CloudTestProcessingQueue.getInstance().stopProcessing(BrowserStackRemoteProxy.class.getName());
+        CloudTestProcessingQueue.getInstance().stopProcessing(TestingBotRemoteProxy.class.getName());
+        CloudTestProcessingQueue.getInstance().setJournalFile(null);
+        CloudTestingRemoteProxy.restoreCommonProxyUtilities();
+        Dashboard.restoreCommonProxyUtilities();
+    }
+
+    @Test
+    public void sessionsGoFromTheHubToTheDashboard() throws Exception {
+        hub.getRegistry().add(provider.newProxy(BrowserStackRemoteProxy.class, hub.getRegistry()));
+        hub.getRegistry().add(provider.newProxy(TestingBotRemoteProxy.class, hub.getRegistry()));
+        int sessions = 3 * CONCURRENCY;
+
+        Assert.assertEquals(sessions, runSessions(sessions, 2 * CONCURRENCY));
+
+        Assert.assertEquals(sessions, provider.getCreatedSessions());
+        Assert.assertEquals(sessions, provider.getDeletedSessions());
+        Assert.assertEquals(0, provider.getRunningSessions());
+        // Queued requests waited for a free slot, each provider takes as many sessions as the account allows
+        Assert.assertTrue(provider.getMaxRunningSessions() <= 2 * CONCURRENCY);
+        // Tests of other classes can still be in the queue, so the videos are counted instead of the pending tests
+        File videosFolder = new File(temporaryFolder.getRoot(), Dashboard.VIDEOS_FOLDER_NAME);
+        await().atMost(30, TimeUnit.SECONDS)
+                .until(() -> countVideos(videosFolder) == sessions);
+        Assert.assertTrue(provider.getServedAssetBytes() >= sessions * 128L * 1024);
+        Assert.assertTrue(new File(videosFolder, "tests/page-1.html").exists());
+    }
+
+    @Test
+    public void failedSessionStartsReachTheClientAndTheRouting() throws Exception {
+        provider.withSessionFailureRate(1);
+        hub.getRegistry().add(provider.newProxy(TestingBotRemoteProxy.class, hub.getRegistry()));
+
+        // Fewer failures than the circuit breaker needs to open, so the requests do not wait for it
+        Assert.assertEquals(0, runSessions(3, 3));
+
+        Assert.assertEquals(3, provider.getFailedSessions());
+        Assert.assertEquals(3, CloudProviderRouting.getStatistics("TestingBot").getFailedSessions());
+        Assert.assertEquals(0, hub.getRegistry().getActiveSessions().size());
+    }
+
+    private static int countVideos(File videosFolder) {
+        File[] videos = videosFolder.listFiles((dir, name) -> name.endsWith(".mp4"));
+        return videos == null ? 0 : videos.length;
+    }
+
+    private int runSessions(int sessions, int clients) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        try (CloseableHttpClient client = HttpClients.custom().setMaxConnTotal(clients)
+                .setMaxConnPerRoute(clients).build()) {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < sessions; i++) {
+                results.add(executor.submit(() -> FakeCloudProvider.runSession(client, hubUrl, 2)));
+            }
+            int created = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get(60, TimeUnit.SECONDS)) {
+                    created++;
+                }
+            }
+            return created;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
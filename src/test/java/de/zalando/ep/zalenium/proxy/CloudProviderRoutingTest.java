@@ -0,0 +1,57 @@
+package de.zalando.ep.zalenium.proxy;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class CloudProviderRoutingTest {
+
+    @After
+    public void tearDown() {
+        CloudProviderRouting.reset();
+    }
+
+    @Test
+    public void fasterProviderIsTriedFirstAndAfterDockerSelenium() {
+        long now = System.nanoTime();
+        CloudProviderRouting.getStatistics("Fast").sessionStarted(now - TimeUnit.SECONDS.toNanos(2));
+        CloudProviderRouting.getStatistics("Slow").sessionStarted(now - TimeUnit.SECONDS.toNanos(20));
+
+        float fast = CloudProviderRouting.getResourceUsageInPercent("Fast");
+        float slow = CloudProviderRouting.getResourceUsageInPercent("Slow");
+
+        Assert.assertTrue(fast < slow);
+        Assert.assertTrue(fast > 98 && slow < 100);
+        // Providers without sessions are tried first
+        Assert.assertEquals(99, CloudProviderRouting.getResourceUsageInPercent("New"), 0);
+    }
+
+    @Test
+    public void failuresMakeAProviderLessPreferred() {
+        long now = System.nanoTime();
+        CloudProviderRouting.ProviderStatistics failing = CloudProviderRouting.getStatistics("Failing");
+        CloudProviderRouting.ProviderStatistics reliable = CloudProviderRouting.getStatistics("Reliable");
+        for (int i = 0; i < 5; i++) {
+            failing.sessionFailed(now - TimeUnit.SECONDS.toNanos(3));
+            reliable.sessionStarted(now - TimeUnit.SECONDS.toNanos(5));
+        }
+
+        Assert.assertEquals(5, failing.getFailedSessions());
+        Assert.assertTrue(failing.getFailureRate() > 0.5);
+        Assert.assertTrue(CloudProviderRouting.getResourceUsageInPercent("Reliable") <
+                CloudProviderRouting.getResourceUsageInPercent("Failing"));
+    }
+
+    @Test
+    public void latencyBreaksTiesWhenRoutingByCost() {
+        CloudProviderRouting.setPolicy(CloudProviderRouting.Policy.COST);
+        long now = System.nanoTime();
+        CloudProviderRouting.getStatistics("Fast").sessionStarted(now - TimeUnit.SECONDS.toNanos(2));
+        CloudProviderRouting.getStatistics("Slow").sessionStarted(now - TimeUnit.SECONDS.toNanos(20));
+
+        Assert.assertTrue(CloudProviderRouting.getResourceUsageInPercent("Fast") <
+                CloudProviderRouting.getResourceUsageInPercent("Slow"));
+    }
+}
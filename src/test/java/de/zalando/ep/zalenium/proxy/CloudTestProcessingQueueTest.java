@@ -0,0 +1,175 @@
+package de.zalando.ep.zalenium.proxy;
+
+import de.zalando.ep.zalenium.dashboard.TestInformation;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CloudTestProcessingQueueTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private CloudTestProcessingQueue queue = CloudTestProcessingQueue.getInstance();
+    private File journal;
+
+    @Before
+    public void setUp() {
+        journal = new File(temporaryFolder.getRoot(), "videos/pendingCloudTests.journal");
+        queue.setJournalFile(journal);
+    }
+
+    @After
+    public void tearDown() {
+        queue.setJournalFile(null);
+        queue.resetArtifactTimeout();
+    }
+
+    @Test
+    public void finishedTestGoesThroughAllStages() throws Exception {
+        CloudTestingRemoteProxy proxy = mockProxy("QueueTestProxy");
+        TestInformation testInformation = new TestInformation("sessionOne", "loginTest", "saucelabs", "chrome",
+                "58", "Windows 10", "", ".flv", "http://localhost/video.flv", new ArrayList<>());
+        when(proxy.fetchTestInformation("sessionOne")).thenReturn(testInformation);
+        when(proxy.isTestInformationComplete(testInformation)).thenReturn(true);
+        when(proxy.getTestArtifacts(testInformation))
+                .thenReturn(Collections.singletonMap("http://localhost/video.flv", "/tmp/video.flv"));
+        // The video is not ready the first time
+        when(proxy.downloadTestArtifact("http://localhost/video.flv", "/tmp/video.flv")).thenReturn(false, true);
+        when(proxy.convertVideoFileToMP4()).thenReturn(true);
+
+        queue.add(proxy, "sessionOne", null);
+
+        // Verifying only once the mock is not used by the queue threads anymore
+        await().atMost(10, TimeUnit.SECONDS)
+                .until(() -> !queue.isPending("sessionOne"));
+        verify(proxy).completeDashboardUpdate(testInformation, null);
+        verify(proxy, times(2)).downloadTestArtifact("http://localhost/video.flv", "/tmp/video.flv");
+        verify(proxy, never()).discardTestArtifact(anyString());
+        verify(proxy).convertTestVideo(testInformation);
+
+        // Nothing is left to resume after a restart
+        queue.setJournalFile(journal);
+        Assert.assertEquals(0, queue.getStatus().get("waitingForProvider").getAsInt());
+    }
+
+    @Test
+    public void testsThatCannotBeAddedToTheDashboardStayInTheJournal() throws Exception {
+        CloudTestingRemoteProxy proxy = mockProxy("FailingQueueTestProxy");
+        TestInformation testInformation = new TestInformation("failingSession", "loginTest", "saucelabs", "chrome",
+                "58", "Windows 10", "", ".flv", "http://localhost/video.flv", new ArrayList<>());
+        when(proxy.fetchTestInformation("failingSession")).thenReturn(testInformation);
+        when(proxy.isTestInformationComplete(testInformation)).thenReturn(true);
+        when(proxy.getTestArtifacts(testInformation)).thenReturn(Collections.emptyMap());
+        doThrow(new IOException("Dashboard not writable")).when(proxy).completeDashboardUpdate(testInformation, null);
+
+        queue.add(proxy, "failingSession", null);
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> !queue.isPending("failingSession"));
+        List<String> lines = FileUtils.readLines(journal, StandardCharsets.UTF_8);
+        Assert.assertTrue(lines.stream().anyMatch(line -> line.startsWith("A\t") && line.endsWith("\tfailingSession")));
+        Assert.assertTrue(lines.stream().noneMatch(line -> line.startsWith("D\t") && line.endsWith("\tfailingSession")));
+
+        // Processed again once the provider registers after a restart
+        queue.setJournalFile(journal);
+        queue.setArtifactTimeoutMillis(0);
+        CloudTestingRemoteProxy restartedProxy = mockProxy("FailingQueueTestProxy");
+        queue.resume(restartedProxy);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> !queue.isPending("failingSession"));
+        verify(restartedProxy).fetchTestInformation("failingSession");
+    }
+
+    @Test
+    public void testInformationThatCouldNotBeFetchedIsFetchedAgainLater() throws Exception {
+        CloudTestingRemoteProxy proxy = mockProxy("QueueTestProxy");
+        TestInformation testInformation = new TestInformation("unavailableSession", "loginTest", "saucelabs",
+                "chrome", "58", "Windows 10", "", ".flv", "http://localhost/video.flv", new ArrayList<>());
+        // The provider API fails first, then does not know the test yet
+        when(proxy.fetchTestInformation("unavailableSession"))
+                .thenThrow(new IllegalStateException("Provider API not available"))
+                .thenReturn(null)
+                .thenReturn(testInformation);
+        when(proxy.isTestInformationComplete(testInformation)).thenReturn(true);
+
+        queue.add(proxy, "unavailableSession", null);
+
+        await().atMost(15, TimeUnit.SECONDS).until(() -> !queue.isPending("unavailableSession"));
+        verify(proxy, times(3)).fetchTestInformation("unavailableSession");
+        verify(proxy).completeDashboardUpdate(testInformation, null);
+    }
+
+    @Test
+    public void pendingTestsAreResumedWhenTheirProviderRegisters() throws Exception {
+        long now = System.currentTimeMillis();
+        FileUtils.writeStringToFile(journal,
+                "A\t" + now + "\tQueueTestProxy\tpendingSession\n" +
+                "A\t" + now + "\tQueueTestProxy\tdoneSession\n" +
+                "D\t" + now + "\t\tdoneSession\n" +
+                "A\t" + now + "\tOtherQueueTestProxy\totherProviderSession\n", StandardCharsets.UTF_8);
+        queue.setJournalFile(journal);
+        queue.setArtifactTimeoutMillis(0);
+        Assert.assertEquals(2, queue.getStatus().get("waitingForProvider").getAsInt());
+
+        CloudTestingRemoteProxy proxy = mockProxy("QueueTestProxy");
+        queue.resume(proxy);
+
+        await().atMost(5, TimeUnit.SECONDS)
+                .until(() -> !queue.isPending("pendingSession"));
+        verify(proxy).fetchTestInformation("pendingSession");
+        verify(proxy, never()).fetchTestInformation("doneSession");
+        verify(proxy, never()).fetchTestInformation("otherProviderSession");
+        verify(proxy, never()).completeDashboardUpdate(any(TestInformation.class), isNull());
+        Assert.assertEquals(1, queue.getStatus().get("waitingForProvider").getAsInt());
+    }
+
+    @Test
+    public void journalIsCompactedOnceMostOfItsTestsAreDone() throws Exception {
+        CloudTestingRemoteProxy proxy = mockProxy("QueueTestProxy");
+        queue.setArtifactTimeoutMillis(0);
+        int tests = 150;
+        for (int i = 0; i < tests; i++) {
+            // No test information and no time to wait for it, the tests are done right away
+            queue.add(proxy, "compactedSession" + i, null);
+        }
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> IntStream.range(0, tests)
+                .noneMatch(i -> queue.isPending("compactedSession" + i)));
+        List<String> lines = FileUtils.readLines(journal, StandardCharsets.UTF_8);
+        Assert.assertTrue(lines.size() < 2 * tests);
+        Assert.assertTrue(queue.getDoneEntries() < 100);
+        // Each test left in the journal is also marked as done there
+        long added = lines.stream().filter(line -> line.startsWith("A\t") && line.contains("compactedSession")).count();
+        long done = lines.stream().filter(line -> line.startsWith("D\t") && line.contains("compactedSession")).count();
+        Assert.assertTrue(added <= done);
+    }
+
+    private static CloudTestingRemoteProxy mockProxy(String proxyClassName) {
+        CloudTestingRemoteProxy proxy = mock(CloudTestingRemoteProxy.class);
+        when(proxy.getProxyClassName()).thenReturn(proxyClassName);
+        return proxy;
+    }
+}
@@ -117,6 +117,33 @@ public class DockerSeleniumRemoteProxyTest {
         Assert.assertEquals("anyRandomTestName", proxy.getTestName());
     }
 
+    @Test
+    public void noSessionIsCreatedWhileDraining() {
+        try {
+            DockerSeleniumStarterRemoteProxy.setDraining(true);
+            TestSession newSession = proxy.getNewSession(getCapabilitySupportedByDockerSelenium());
+            Assert.assertNull(newSession);
+            Assert.assertEquals(0, proxy.getAmountOfExecutedTests());
+        } finally {
+            DockerSeleniumStarterRemoteProxy.setDraining(false);
+        }
+    }
+
+    @Test
+    public void unusedNodeShutsDownWhileDraining() {
+        DockerSeleniumRemoteProxy spyProxy = spy(proxy);
+        try {
+            DockerSeleniumStarterRemoteProxy.setDraining(true);
+            spyProxy.startPolling();
+
+            Callable<Boolean> callable = spyProxy::isDown;
+            await().pollInterval(Duration.FIVE_HUNDRED_MILLISECONDS).atMost(Duration.FIVE_SECONDS).until(callable);
+            Assert.assertTrue(spyProxy.isTestSessionLimitReached());
+        } finally {
+            DockerSeleniumStarterRemoteProxy.setDraining(false);
+        }
+    }
+
     @Test
     public void noSessionIsCreatedWhenCapabilitiesAreNotSupported() {
         // Non supported capabilities
@@ -236,6 +263,52 @@ public class DockerSeleniumRemoteProxyTest {
         await().pollInterval(Duration.FIVE_HUNDRED_MILLISECONDS).atMost(Duration.TWO_SECONDS).until(callable);
     }
 
+    @Test
+    public void lastCommandIsKeptInTheSession() {
+        TestSession newSession = proxy.getNewSession(getCapabilitySupportedByDockerSelenium());
+        Assert.assertNotNull(newSession);
+
+        WebDriverRequest request = mock(WebDriverRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getMethod()).thenReturn("POST");
+        when(request.getPathInfo()).thenReturn("/session/123/url");
+        when(request.getRequestType()).thenReturn(RequestType.REGULAR);
+
+        proxy.beforeCommand(newSession, request, response);
+        Assert.assertEquals("POST - /session/123/url executing ...", newSession.get("lastCommand").toString());
+        proxy.afterCommand(newSession, request, response);
+        Assert.assertEquals("POST - /session/123/url executed.", newSession.get("lastCommand").toString());
+    }
+
+    @Test
+    public void requestedCapabilityIsNotModifiedWhenMatching() {
+        Map<String, Object> requestedCapability = getCapabilitySupportedByDockerSelenium();
+        requestedCapability.put(CapabilityType.VERSION, "latest");
+        Map<String, Object> originalCapability = new HashMap<>(requestedCapability);
+
+        Assert.assertTrue(proxy.hasCapability(requestedCapability));
+        Assert.assertTrue(proxy.hasCapability(requestedCapability));
+        Assert.assertEquals(originalCapability, requestedCapability);
+    }
+
+    @Test
+    public void screenResolutionAndTimeZoneAreMatched() {
+        Map<String, Object> requestedCapability = getCapabilitySupportedByDockerSelenium();
+        requestedCapability.put("screenResolution", "1x1");
+        Assert.assertFalse(proxy.hasCapability(requestedCapability));
+
+        requestedCapability = getCapabilitySupportedByDockerSelenium();
+        requestedCapability.put("tz", "Not/A_Time_Zone");
+        Assert.assertFalse(proxy.hasCapability(requestedCapability));
+
+        requestedCapability = getCapabilitySupportedByDockerSelenium();
+        requestedCapability.put("screenResolution", String.format("%sx%s",
+                DockerSeleniumStarterRemoteProxy.getConfiguredScreenWidth(),
+                DockerSeleniumStarterRemoteProxy.getConfiguredScreenHeight()));
+        requestedCapability.put("tz", DockerSeleniumStarterRemoteProxy.getConfiguredTimeZone());
+        Assert.assertTrue(proxy.hasCapability(requestedCapability));
+    }
+
     @Test
     public void nodeShutsDownWhenTestIsIdle() throws IOException {
 
@@ -2,6 +2,7 @@ package de.zalando.ep.zalenium.proxy;
 
 import com.spotify.docker.client.exceptions.DockerException;
 import de.zalando.ep.zalenium.container.ContainerClient;
+import de.zalando.ep.zalenium.matcher.DockerSeleniumStarterCapabilityIndex;
 import de.zalando.ep.zalenium.util.Environment;
 import de.zalando.ep.zalenium.util.TestUtils;
 import org.junit.After;
@@ -109,6 +110,46 @@ public class DockerSeleniumStarterRemoteProxyTest {
         verify(spyProxy, never()).startDockerSeleniumContainer(anyString());
     }
 
+    @Test
+    public void registeredProxyIsIndexedForTheCloudMatchers() {
+        DockerSeleniumStarterCapabilityIndex index = DockerSeleniumStarterCapabilityIndex.forRegistry(registry);
+        Map<String, Object> supportedCapability = new HashMap<>();
+        supportedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+        supportedCapability.put(CapabilityType.PLATFORM, Platform.LINUX);
+        supportedCapability.put(CapabilityType.VERSION, "latest");
+        Map<String, Object> nonSupportedCapability = new HashMap<>();
+        nonSupportedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.SAFARI);
+        nonSupportedCapability.put(CapabilityType.PLATFORM, Platform.MAC);
+
+        Assert.assertFalse(index.canBeServed(supportedCapability));
+
+        registry.add(spyProxy);
+        Assert.assertTrue(index.canBeServed(supportedCapability));
+        Assert.assertFalse(index.canBeServed(nonSupportedCapability));
+        // The requested capability is not modified when checked through the index
+        Assert.assertEquals("latest", supportedCapability.get(CapabilityType.VERSION));
+
+        registry.removeIfPresent(spyProxy);
+        Assert.assertFalse(index.canBeServed(supportedCapability));
+    }
+
+    @Test
+    public void noContainerIsStartedWhileDraining() {
+        try {
+            DockerSeleniumStarterRemoteProxy.setDraining(true);
+            Map<String, Object> supportedCapability = new HashMap<>();
+            supportedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+            supportedCapability.put(CapabilityType.PLATFORM, Platform.LINUX);
+            TestSession testSession = spyProxy.getNewSession(supportedCapability);
+
+            Assert.assertNull(testSession);
+            verify(spyProxy, never()).startDockerSeleniumContainer(anyString());
+            Assert.assertFalse(spyProxy.startDockerSeleniumContainer(BrowserType.CHROME));
+        } finally {
+            DockerSeleniumStarterRemoteProxy.setDraining(false);
+        }
+    }
+
     @Test
     public void containerIsStartedWhenChromeCapabilitiesAreSupported() {
 
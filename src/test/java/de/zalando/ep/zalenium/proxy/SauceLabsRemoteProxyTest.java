@@ -1,6 +1,7 @@
 package de.zalando.ep.zalenium.proxy;
 
 import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
 import de.zalando.ep.zalenium.dashboard.TestInformation;
 import de.zalando.ep.zalenium.util.*;
 import org.apache.http.HttpResponse;
@@ -33,6 +34,8 @@ public class SauceLabsRemoteProxyTest {
 
     @Before
     public void setUp() {
+        // Failures of the sessions of other tests should not open the circuit breaker
+        CloudProviderCircuitBreaker.reset();
         registry = Registry.newInstance();
         // Creating the configuration and the registration request of the proxy (node)
         RegistrationRequest request = TestUtils.getRegistrationRequestForTesting(30001,
@@ -46,6 +49,9 @@ public class SauceLabsRemoteProxyTest {
         request = TestUtils.getRegistrationRequestForTesting(30000,
                 DockerSeleniumStarterRemoteProxy.class.getCanonicalName());
         DockerSeleniumStarterRemoteProxy dsStarterProxy = DockerSeleniumStarterRemoteProxy.getNewInstance(request, registry);
+        // No docker-selenium containers are needed, starting them would keep threads running after the test
+        DockerSeleniumStarterRemoteProxy.setChromeContainersOnStartup(0);
+        DockerSeleniumStarterRemoteProxy.setFirefoxContainersOnStartup(0);
 
         // We add both nodes to the registry
         registry.add(sauceLabsProxy);
@@ -53,7 +59,10 @@ public class SauceLabsRemoteProxyTest {
     }
 
     @After
-    public void tearDown() {
+    public void tearDown() throws InterruptedException {
+        // Stops the concurrency refresh of the proxies and the processing of the tests they finished
+        registry.stop();
+        CloudTestProcessingQueue.getInstance().stopProcessing(sauceLabsProxy.getProxyClassName());
         SauceLabsRemoteProxy.restoreCommonProxyUtilities();
         SauceLabsRemoteProxy.restoreGa();
         SauceLabsRemoteProxy.restoreEnvironment();
@@ -247,5 +256,60 @@ public class SauceLabsRemoteProxyTest {
 
     }
 
+    @Test
+    public void availableSlotsFollowTheAccountConcurrency() {
+        CommonProxyUtilities commonProxyUtilities = mock(CommonProxyUtilities.class);
+        JsonParser jsonParser = new JsonParser();
+        when(commonProxyUtilities.readJSONFromUrl(contains("/rest/v1/users/"), anyString(), anyString()))
+                .thenReturn(jsonParser.parse("{\"concurrency_limit\":{\"overall\":3}}"));
+        when(commonProxyUtilities.readJSONFromUrl(contains("/concurrency"), anyString(), anyString()))
+                .thenReturn(jsonParser.parse("{\"concurrency\":{\"\":{\"current\":{\"overall\":2}}}}"));
+        SauceLabsRemoteProxy.setCommonProxyUtilities(commonProxyUtilities);
+        RegistrationRequest request = TestUtils.getRegistrationRequestForTesting(30002,
+                SauceLabsRemoteProxy.class.getCanonicalName());
+        SauceLabsRemoteProxy proxy = SauceLabsRemoteProxy.getNewInstance(request, registry);
+        Map<String, Object> requestedCapability = new HashMap<>();
+        requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.EDGE);
+        requestedCapability.put(CapabilityType.PLATFORM, Platform.WIN10);
+
+        // Two of the three sessions of the account are used by somebody else
+        proxy.refreshAccountConcurrency();
+
+        Assert.assertEquals(3, proxy.getTestSlots().size());
+        Assert.assertEquals(1, proxy.getAvailableSlots());
+        Assert.assertNotNull(proxy.getNewSession(requestedCapability));
+        Assert.assertNull(proxy.getNewSession(requestedCapability));
 
+        // The other sessions finished
+        when(commonProxyUtilities.readJSONFromUrl(contains("/concurrency"), anyString(), anyString()))
+                .thenReturn(jsonParser.parse("{\"concurrency\":{\"\":{\"current\":{\"overall\":1}}}}"));
+        proxy.refreshAccountConcurrency();
+
+        Assert.assertEquals(3, proxy.getAvailableSlots());
+        Assert.assertNotNull(proxy.getNewSession(requestedCapability));
+    }
+
+    @Test
+    public void slotsAboveTheAccountConcurrencyAreNotUsedBeforeARefresh() {
+        Environment environment = mock(Environment.class, withSettings().useConstructor());
+        when(environment.getIntEnvVariable(any(String.class), any(Integer.class))).thenCallRealMethod();
+        when(environment.getEnvVariable("ZALENIUM_CLOUD_MAX_SLOTS")).thenReturn("5");
+        SauceLabsRemoteProxy.setEnv(environment);
+        CommonProxyUtilities commonProxyUtilities = mock(CommonProxyUtilities.class);
+        when(commonProxyUtilities.readJSONFromUrl(contains("/rest/v1/users/"), anyString(), anyString()))
+                .thenReturn(new JsonParser().parse("{\"concurrency_limit\":{\"overall\":2}}"));
+        SauceLabsRemoteProxy.setCommonProxyUtilities(commonProxyUtilities);
+        RegistrationRequest request = TestUtils.getRegistrationRequestForTesting(30002,
+                SauceLabsRemoteProxy.class.getCanonicalName());
+        SauceLabsRemoteProxy proxy = SauceLabsRemoteProxy.getNewInstance(request, registry);
+        Map<String, Object> requestedCapability = new HashMap<>();
+        requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.EDGE);
+        requestedCapability.put(CapabilityType.PLATFORM, Platform.WIN10);
+
+        Assert.assertEquals(5, proxy.getTestSlots().size());
+        Assert.assertEquals(2, proxy.getAvailableSlots());
+        Assert.assertNotNull(proxy.getNewSession(requestedCapability));
+        Assert.assertNotNull(proxy.getNewSession(requestedCapability));
+        Assert.assertNull(proxy.getNewSession(requestedCapability));
+    }
 }
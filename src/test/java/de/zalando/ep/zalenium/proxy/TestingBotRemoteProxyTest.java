@@ -39,6 +39,8 @@ public class TestingBotRemoteProxyTest {
     @SuppressWarnings("ConstantConditions")
     @Before
     public void setUp() throws IOException {
+        // Failures of the sessions of other tests should not open the circuit breaker
+        CloudProviderCircuitBreaker.reset();
         registry = Registry.newInstance();
         // Creating the configuration and the registration request of the proxy (node)
         RegistrationRequest request = TestUtils.getRegistrationRequestForTesting(30002,
@@ -64,6 +66,9 @@ public class TestingBotRemoteProxyTest {
         request = TestUtils.getRegistrationRequestForTesting(30000,
                 DockerSeleniumStarterRemoteProxy.class.getCanonicalName());
         DockerSeleniumStarterRemoteProxy dsStarterProxy = DockerSeleniumStarterRemoteProxy.getNewInstance(request, registry);
+        // No docker-selenium containers are needed, starting them would keep threads running after the test
+        DockerSeleniumStarterRemoteProxy.setChromeContainersOnStartup(0);
+        DockerSeleniumStarterRemoteProxy.setFirefoxContainersOnStartup(0);
 
         // Temporal folder for dashboard files
         TestUtils.ensureRequiredInputFilesExist(temporaryFolder);
@@ -74,7 +79,10 @@ public class TestingBotRemoteProxyTest {
     }
 
     @After
-    public void tearDown() {
+    public void tearDown() throws InterruptedException {
+        // Stops the concurrency refresh of the proxies and the processing of the tests they finished
+        registry.stop();
+        CloudTestProcessingQueue.getInstance().stopProcessing(testingBotProxy.getProxyClassName());
         TestingBotRemoteProxy.restoreCommonProxyUtilities();
         TestingBotRemoteProxy.restoreGa();
         TestingBotRemoteProxy.restoreEnvironment();
@@ -248,7 +256,7 @@ public class TestingBotRemoteProxyTest {
             File dashboard = new File(videosFolder, "dashboard.html");
             Assert.assertTrue(dashboard.exists());
             Assert.assertTrue(dashboard.isFile());
-            File testList = new File(videosFolder, "list.html");
+            File testList = new File(videosFolder, "tests/page-1.html");
             Assert.assertTrue(testList.exists());
             Assert.assertTrue(testList.isFile());
             File cssFolder = new File(videosFolder, "css");
@@ -0,0 +1,104 @@
+package de.zalando.ep.zalenium.servlet;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.zalando.ep.zalenium.container.ContainerClient;
+import de.zalando.ep.zalenium.container.ContainerFactory;
+import de.zalando.ep.zalenium.proxy.DockerSeleniumRemoteProxy;
+import de.zalando.ep.zalenium.proxy.DockerSeleniumStarterRemoteProxy;
+import de.zalando.ep.zalenium.util.TestUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.grid.common.RegistrationRequest;
+import org.openqa.grid.internal.Registry;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.function.Supplier;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DrainServletTest {
+
+    private Registry registry;
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private Supplier<ContainerClient> originalContainerClient;
+
+    @Before
+    public void setUp() throws IOException {
+        registry = Registry.newInstance();
+        originalContainerClient = ContainerFactory.getDockerContainerClientGenerator();
+        ContainerFactory.setDockerContainerClientGenerator(TestUtils::getMockedDockerContainerClient);
+
+        request = mock(HttpServletRequest.class);
+        response = mock(HttpServletResponse.class);
+        when(response.getOutputStream()).thenReturn(TestUtils.getMockedServletOutputStream());
+    }
+
+    @After
+    public void tearDown() {
+        DockerSeleniumStarterRemoteProxy.setDraining(false);
+        ContainerFactory.setDockerContainerClientGenerator(originalContainerClient);
+    }
+
+    @Test
+    public void drainAndResumeChangeTheDrainMode() throws IOException {
+        DrainServlet drainServlet = new DrainServlet(registry);
+
+        when(request.getParameter("action")).thenReturn("drain");
+        drainServlet.doPost(request, response);
+        Assert.assertTrue(DockerSeleniumStarterRemoteProxy.isDraining());
+        Assert.assertTrue(getResponseJson().get("draining").getAsBoolean());
+        verify(response).setStatus(200);
+
+        when(request.getParameter("action")).thenReturn("resume");
+        when(response.getOutputStream()).thenReturn(TestUtils.getMockedServletOutputStream());
+        drainServlet.doPost(request, response);
+        Assert.assertFalse(DockerSeleniumStarterRemoteProxy.isDraining());
+    }
+
+    @Test
+    public void emptyHubIsReady() throws IOException {
+        new DrainServlet(registry).doGet(request, response);
+
+        Assert.assertTrue(getResponseJson().get("empty").getAsBoolean());
+        verify(response).setStatus(200);
+    }
+
+    @Test
+    public void hubWithDockerSeleniumNodesIsNotReady() throws IOException {
+        RegistrationRequest registrationRequest = TestUtils.getRegistrationRequestForTesting(40000,
+                DockerSeleniumRemoteProxy.class.getCanonicalName());
+        registrationRequest.getConfiguration().capabilities.clear();
+        registrationRequest.getConfiguration().capabilities.addAll(TestUtils.getDockerSeleniumCapabilitiesForTesting());
+        registry.add(DockerSeleniumRemoteProxy.getNewInstance(registrationRequest, registry));
+
+        when(request.getParameter("action")).thenReturn("status");
+        new DrainServlet(registry).doGet(request, response);
+
+        JsonObject status = getResponseJson();
+        Assert.assertFalse(status.get("empty").getAsBoolean());
+        Assert.assertEquals(1, status.get("dockerSeleniumNodes").getAsInt());
+        verify(response).setStatus(503);
+    }
+
+    @Test
+    public void unknownActionIsRejected() throws IOException {
+        when(request.getParameter("action")).thenReturn("anyValue");
+        new DrainServlet(registry).doGet(request, response);
+
+        Assert.assertEquals("ERROR action not implemented. Given action=anyValue",
+                response.getOutputStream().toString());
+        verify(response).setStatus(400);
+    }
+
+    private JsonObject getResponseJson() throws IOException {
+        return new JsonParser().parse(response.getOutputStream().toString()).getAsJsonObject();
+    }
+}
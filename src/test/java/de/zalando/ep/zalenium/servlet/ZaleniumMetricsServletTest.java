@@ -0,0 +1,35 @@
+package de.zalando.ep.zalenium.servlet;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.zalando.ep.zalenium.util.TestUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openqa.grid.internal.Registry;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ZaleniumMetricsServletTest {
+
+    @Test
+    public void metricsOfTheHubAreExposedWithoutTheCommands() throws IOException {
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getOutputStream()).thenReturn(TestUtils.getMockedServletOutputStream());
+
+        new ZaleniumMetricsServlet(Registry.newInstance()).doGet(mock(HttpServletRequest.class), response);
+
+        JsonObject metrics = new JsonParser().parse(response.getOutputStream().toString()).getAsJsonObject();
+        verify(response).setStatus(200);
+        Assert.assertFalse(metrics.has("commands"));
+        for (String section : new String[]{"cloudProviderRequests", "videoConversions", "dashboardRetention",
+                "dashboardTests", "dashboardPublisher"}) {
+            Assert.assertTrue(section, metrics.has(section));
+        }
+    }
+}
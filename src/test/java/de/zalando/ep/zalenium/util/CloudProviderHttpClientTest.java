@@ -0,0 +1,80 @@
+package de.zalando.ep.zalenium.util;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class CloudProviderHttpClientTest {
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        CloudProviderHttpClient.resetMetrics();
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+        CloudProviderHttpClient.resetMetrics();
+    }
+
+    @Test
+    public void jsonIsReadWithBasicAuthenticationAndRequestsAreRecordedPerEndpoint() throws Exception {
+        server.enqueue(new MockResponse().setBody("{\"name\":\"loginTest\",\"passed\":true}"));
+        server.enqueue(new MockResponse().setBody("{\"name\":\"searchTest\",\"passed\":false}"));
+        CloudProviderHttpClient client = CloudProviderHttpClient.getInstance();
+
+        JsonElement first = client.getJson(server.url("/rest/v1/user/jobs/4f2a91").toString(), "user", "key");
+        JsonElement second = client.getJson(server.url("/rest/v1/user/jobs/77b3c0").toString(), "user", "key");
+
+        Assert.assertEquals("loginTest", first.getAsJsonObject().get("name").getAsString());
+        Assert.assertFalse(second.getAsJsonObject().get("passed").getAsBoolean());
+        RecordedRequest recordedRequest = server.takeRequest();
+        Assert.assertEquals(CloudProviderHttpClient.basicAuthentication("user", "key"),
+                recordedRequest.getHeader("Authorization"));
+        // The second request reuses the pooled connection
+        Assert.assertEquals(1, server.takeRequest().getSequenceNumber());
+
+        JsonArray metrics = CloudProviderHttpClient.getMetrics();
+        Assert.assertEquals(1, metrics.size());
+        JsonObject endpoint = metrics.get(0).getAsJsonObject();
+        Assert.assertEquals("/rest/v1/user/jobs/:id", endpoint.get("endpoint").getAsString());
+        Assert.assertEquals(2, endpoint.get("requests").getAsLong());
+        Assert.assertEquals(0, endpoint.get("errors").getAsLong());
+    }
+
+    @Test
+    public void errorResponsesAreThrownAndCounted() {
+        server.enqueue(new MockResponse().setResponseCode(404).setBody("{\"error\":\"not found\"}"));
+        try {
+            CloudProviderHttpClient.getInstance().getJson(server.url("/automate/sessions/1a2b.json").toString(),
+                    "user", "key");
+            Assert.fail("An IOException was expected");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("404"));
+        }
+
+        JsonObject endpoint = CloudProviderHttpClient.getMetrics().get(0).getAsJsonObject();
+        Assert.assertEquals("/automate/sessions/:id", endpoint.get("endpoint").getAsString());
+        Assert.assertEquals(1, endpoint.get("errors").getAsLong());
+    }
+
+    @Test
+    public void idsAreReplacedInTheEndpoint() {
+        Assert.assertEquals("/", CloudProviderHttpClient.getEndpoint(""));
+        Assert.assertEquals("/automate/plan.json", CloudProviderHttpClient.getEndpoint("/automate/plan.json"));
+        Assert.assertEquals("/v1/tests/:id", CloudProviderHttpClient.getEndpoint("/v1/tests/abcdefabcdefabcdefabcdef"));
+    }
+}
@@ -0,0 +1,141 @@
+package de.zalando.ep.zalenium.util;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.CapabilityType;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CommandMetricsTest {
+
+    @After
+    public void resetMetrics() {
+        CommandMetrics.reset();
+    }
+
+    @Test
+    public void commandNamesDoNotContainIds() {
+        Assert.assertEquals("POST /session", CommandMetrics.getCommandName("POST", "/session"));
+        Assert.assertEquals("DELETE /session/:sessionId",
+                CommandMetrics.getCommandName("DELETE", "/session/4f2a9c"));
+        Assert.assertEquals("POST /session/:sessionId/element/:id/click",
+                CommandMetrics.getCommandName("POST", "/session/4f2a9c/element/0.12-1/click"));
+        Assert.assertEquals("POST /session/:sessionId/element/active",
+                CommandMetrics.getCommandName("POST", "/session/4f2a9c/element/active"));
+        Assert.assertEquals("GET /session/:sessionId/element/:id/attribute/:name",
+                CommandMetrics.getCommandName("GET", "/session/4f2a9c/element/0.12-1/attribute/value"));
+        Assert.assertEquals("POST /session/:sessionId/window/:windowHandle/size",
+                CommandMetrics.getCommandName("POST", "/session/4f2a9c/window/CDwindow-1/size"));
+        Assert.assertEquals("GET /session/:sessionId/window/handles",
+                CommandMetrics.getCommandName("GET", "/session/4f2a9c/window/handles"));
+    }
+
+    @Test
+    public void commandNamesAreReusedWithoutBuildingThemAgain() {
+        String commandName = CommandMetrics.getCommandName("GET", "/session/4f2a9c/url");
+        Assert.assertSame(commandName, CommandMetrics.getCommandName("GET", "/session/b71e03/url"));
+
+        StringBuilder builtName = new StringBuilder();
+        long hash = CommandMetrics.scanCommandName("GET", "/session/4f2a9c/url", builtName);
+        Assert.assertEquals(commandName, builtName.toString());
+        Assert.assertEquals(hash, CommandMetrics.scanCommandName("GET", "/session/b71e03/url", null));
+    }
+
+    @Test
+    public void commandNamesWithTheSameHashAreTold() {
+        long hash = CommandMetrics.scanCommandName("GET", "/session/4f2a9c/url", null);
+        String url = CommandMetrics.getCommandName(hash, "GET", "/session/4f2a9c/url");
+
+        Assert.assertEquals("GET /session/:sessionId/title",
+                CommandMetrics.getCommandName(hash, "GET", "/session/4f2a9c/title"));
+        Assert.assertSame(url, CommandMetrics.getCommandName(hash, "GET", "/session/b71e03/url"));
+    }
+
+    @Test
+    public void commandsAfterTheMaximumAreNamedOther() {
+        String url = CommandMetrics.getCommandName("GET", "/session/4f2a9c/url");
+        for (int i = 0; i < 1000; i++) {
+            CommandMetrics.getCommandName("GET", "/custom" + i);
+        }
+
+        Assert.assertEquals(CommandMetrics.OTHER_COMMAND, CommandMetrics.getCommandName("GET", "/custom1000"));
+        Assert.assertEquals(CommandMetrics.OTHER_COMMAND, CommandMetrics.getCommandName("GET", "/custom999"));
+        Assert.assertSame(url, CommandMetrics.getCommandName("GET", "/session/b71e03/url"));
+    }
+
+    @Test
+    public void commandsAreRecordedPerProxyBrowserAndCommand() {
+        TestSession session = getMockedTestSession(BrowserType.CHROME);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("POST");
+        when(request.getPathInfo()).thenReturn("/session/4f2a9c/element");
+
+        for (int i = 0; i < 3; i++) {
+            CommandMetrics.commandStarted(session);
+            CommandMetrics.commandFinished(session, "Zalenium", request, null);
+        }
+
+        JsonArray percentiles = CommandMetrics.getPercentiles();
+        Assert.assertEquals(1, percentiles.size());
+        JsonObject commandPercentiles = percentiles.get(0).getAsJsonObject();
+        Assert.assertEquals("Zalenium", commandPercentiles.get("proxy").getAsString());
+        Assert.assertEquals(BrowserType.CHROME, commandPercentiles.get("browser").getAsString());
+        Assert.assertEquals("POST /session/:sessionId/element", commandPercentiles.get("command").getAsString());
+        Assert.assertEquals(3, commandPercentiles.get("count").getAsLong());
+        Assert.assertTrue(CommandMetrics.getSessionSummary(session).startsWith("3 commands"));
+    }
+
+    @Test
+    public void histogramsAreMergedByTheGivenDimensions() {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getPathInfo()).thenReturn("/session/4f2a9c/screenshot");
+
+        for (String browser : new String[]{BrowserType.CHROME, BrowserType.FIREFOX}) {
+            TestSession session = getMockedTestSession(browser);
+            CommandMetrics.commandStarted(session);
+            CommandMetrics.commandFinished(session, "Zalenium", request, null);
+        }
+
+        Assert.assertEquals(2, CommandMetrics.getPercentiles().size());
+        JsonArray merged = CommandMetrics.getPercentiles(EnumSet.of(CommandMetrics.Dimension.COMMAND));
+        Assert.assertEquals(1, merged.size());
+        Assert.assertEquals(2, merged.get(0).getAsJsonObject().get("count").getAsLong());
+        Assert.assertFalse(merged.get(0).getAsJsonObject().has("browser"));
+    }
+
+    @Test
+    public void commandsWithoutStartAreNotRecorded() {
+        TestSession session = getMockedTestSession(BrowserType.CHROME);
+        CommandMetrics.commandFinished(session, "Zalenium", mock(HttpServletRequest.class), null);
+
+        Assert.assertEquals(0, CommandMetrics.getPercentiles().size());
+        Assert.assertEquals("", CommandMetrics.getSessionSummary(session));
+    }
+
+    private TestSession getMockedTestSession(String browser) {
+        Map<String, Object> requestedCapabilities = new HashMap<>();
+        requestedCapabilities.put(CapabilityType.BROWSER_NAME, browser);
+        Map<String, Object> sessionObjects = new HashMap<>();
+        TestSession session = mock(TestSession.class);
+        when(session.getRequestedCapabilities()).thenReturn(requestedCapabilities);
+        when(session.get(anyString())).thenAnswer(invocation -> sessionObjects.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> sessionObjects.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(session).put(anyString(), any());
+        return session;
+    }
+}
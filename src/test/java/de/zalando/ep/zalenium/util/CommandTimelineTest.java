@@ -0,0 +1,99 @@
+package de.zalando.ep.zalenium.util;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+public class CommandTimelineTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void commandsWithoutStartAreNotRecorded() {
+        CommandTimeline timeline = new CommandTimeline();
+        Assert.assertEquals(-1, timeline.commandFinished("GET /status", 200));
+        Assert.assertEquals(0, timeline.size());
+        Assert.assertEquals("", timeline.getSummary());
+    }
+
+    @Test
+    public void oldestEntriesAreDroppedWhenTheBufferIsFull() {
+        CommandTimeline timeline = new CommandTimeline(4);
+        for (int i = 0; i < 6; i++) {
+            timeline.commandStarted();
+            Assert.assertTrue(timeline.commandFinished("POST /session/:sessionId/url", 200) >= 0);
+        }
+
+        Assert.assertEquals(4, timeline.size());
+        Assert.assertEquals(2, timeline.getDroppedEntries());
+        Assert.assertTrue(timeline.getSummary().startsWith("6 commands"));
+    }
+
+    @Test
+    public void timelineIsWrittenInTheBinaryFormat() throws IOException {
+        CommandTimeline timeline = new CommandTimeline(2);
+        String[] commands = {"POST /session", "GET /session/:sessionId/title", "DELETE /session/:sessionId"};
+        int[] statuses = {200, 404, 200};
+        for (int i = 0; i < commands.length; i++) {
+            timeline.commandStarted();
+            timeline.commandFinished(commands[i], statuses[i]);
+        }
+        File timelineFile = new File(temporaryFolder.getRoot(), "logs/" + CommandTimeline.TIMELINE_FILE_NAME);
+        timeline.writeTo(timelineFile);
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(timelineFile)))) {
+            byte[] magic = new byte[4];
+            in.readFully(magic);
+            Assert.assertEquals("ZTL1", new String(magic, "US-ASCII"));
+            Assert.assertTrue(in.readLong() > 0);
+            Assert.assertEquals(1, in.readInt());
+            short nameCount = in.readShort();
+            Assert.assertEquals(3, nameCount);
+            String[] names = new String[nameCount];
+            for (int i = 0; i < nameCount; i++) {
+                names[i] = in.readUTF();
+            }
+            Assert.assertEquals(2, in.readInt());
+            // Oldest entry first, the first command was dropped
+            for (int i = 1; i < commands.length; i++) {
+                Assert.assertTrue(in.readInt() >= 0);
+                Assert.assertTrue(in.readInt() >= 0);
+                Assert.assertEquals(commands[i], names[in.readShort()]);
+                Assert.assertEquals(statuses[i], in.readShort());
+            }
+            Assert.assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void commandsAfterTheMaximumAreWrittenAsOther() throws IOException {
+        CommandTimeline timeline = new CommandTimeline(1);
+        for (int i = 0; i <= CommandTimeline.MAX_COMMAND_NAMES; i++) {
+            timeline.commandStarted();
+            timeline.commandFinished("GET /custom" + i, 200);
+        }
+        File timelineFile = new File(temporaryFolder.getRoot(), CommandTimeline.TIMELINE_FILE_NAME);
+        timeline.writeTo(timelineFile);
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(timelineFile)))) {
+            in.skipBytes(4 + 8 + 4);
+            Assert.assertEquals(CommandTimeline.MAX_COMMAND_NAMES, in.readShort());
+            String name = null;
+            for (int i = 0; i < CommandTimeline.MAX_COMMAND_NAMES; i++) {
+                name = in.readUTF();
+            }
+            Assert.assertEquals(CommandMetrics.OTHER_COMMAND, name);
+            Assert.assertEquals(1, in.readInt());
+            in.skipBytes(4 + 4);
+            Assert.assertEquals(CommandTimeline.MAX_COMMAND_NAMES - 1, in.readShort());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package de.zalando.ep.zalenium.util;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class CommonProxyUtilitiesTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private CommonProxyUtilities commonProxyUtilities = new CommonProxyUtilities();
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void fileIsStreamedToDiskAndMovedInPlace() throws Exception {
+        server.enqueue(new MockResponse().setBody("video content"));
+        File video = new File(temporaryFolder.getRoot(), "videos/test.mp4");
+
+        commonProxyUtilities.downloadAttempt(server.url("/video.mp4").toString(), video, "user", "key", true);
+
+        Assert.assertEquals("video content", FileUtils.readFileToString(video, StandardCharsets.UTF_8));
+        Assert.assertFalse(new File(video.getPath() + ".part").exists());
+        RecordedRequest request = server.takeRequest();
+        Assert.assertNotNull(request.getHeader("Authorization"));
+        Assert.assertNull(request.getHeader("Range"));
+    }
+
+    @Test
+    public void partialDownloadIsResumed() throws Exception {
+        File video = new File(temporaryFolder.getRoot(), "test.mp4");
+        FileUtils.writeStringToFile(new File(video.getPath() + ".part"), "video ", StandardCharsets.UTF_8);
+        server.enqueue(new MockResponse().setResponseCode(206).setBody(new Buffer().writeUtf8("content")));
+
+        commonProxyUtilities.downloadAttempt(server.url("/video.mp4").toString(), video, "", "", false);
+
+        Assert.assertEquals("video content", FileUtils.readFileToString(video, StandardCharsets.UTF_8));
+        RecordedRequest request = server.takeRequest();
+        Assert.assertEquals("bytes=6-", request.getHeader("Range"));
+        Assert.assertNull(request.getHeader("Authorization"));
+    }
+
+    @Test
+    public void partialDownloadIsRestartedWhenRangesAreNotSupported() throws Exception {
+        File video = new File(temporaryFolder.getRoot(), "test.mp4");
+        FileUtils.writeStringToFile(new File(video.getPath() + ".part"), "stale", StandardCharsets.UTF_8);
+        server.enqueue(new MockResponse().setBody("video content"));
+
+        commonProxyUtilities.downloadAttempt(server.url("/video.mp4").toString(), video, "", "", false);
+
+        Assert.assertEquals("video content", FileUtils.readFileToString(video, StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = IOException.class)
+    public void failedResponseKeepsTheDestinationUntouched() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404));
+        File video = new File(temporaryFolder.getRoot(), "test.mp4");
+        try {
+            commonProxyUtilities.downloadAttempt(server.url("/video.mp4").toString(), video, "", "", false);
+        } finally {
+            Assert.assertFalse(video.exists());
+        }
+    }
+
+    @Test
+    public void fileIsNotDownloadedUntilItIsReady() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(new MockResponse().setResponseCode(200).setHeader("Content-Length", "13"));
+        server.enqueue(new MockResponse().setBody("video content"));
+        File video = new File(temporaryFolder.getRoot(), "test.mp4");
+        String videoUrl = server.url("/video.mp4").toString();
+
+        Assert.assertFalse(commonProxyUtilities.downloadFileIfReady(videoUrl, video.getPath(), "", "", false));
+        Assert.assertFalse(video.exists());
+        Assert.assertTrue(commonProxyUtilities.downloadFileIfReady(videoUrl, video.getPath(), "", "", false));
+
+        Assert.assertEquals("video content", FileUtils.readFileToString(video, StandardCharsets.UTF_8));
+        Assert.assertEquals("HEAD", server.takeRequest().getMethod());
+        Assert.assertEquals("HEAD", server.takeRequest().getMethod());
+        Assert.assertEquals("GET", server.takeRequest().getMethod());
+    }
+}
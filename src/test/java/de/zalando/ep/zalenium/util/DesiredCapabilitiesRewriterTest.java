@@ -0,0 +1,77 @@
+package de.zalando.ep.zalenium.util;
+
+import com.google.gson.JsonParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class DesiredCapabilitiesRewriterTest {
+
+    private static final Map<String, String> VERSION = Collections.singletonMap("version", "latest");
+
+    @Test
+    public void propertiesAreAddedAtTheEndOfTheCapabilities() {
+        String body = "{\"desiredCapabilities\":{\"browserName\":\"chrome\",\"chromeOptions\":" +
+                "{\"extensions\":[\"UEsDBBQ}]\\\"AAgACAA=\"],\"args\":[\"--headless\"]}},\"requiredCapabilities\":{}}";
+
+        String rewritten = DesiredCapabilitiesRewriter.inject(body, credentials("user", "key"), VERSION);
+
+        Assert.assertEquals("{\"desiredCapabilities\":{\"browserName\":\"chrome\",\"chromeOptions\":" +
+                "{\"extensions\":[\"UEsDBBQ}]\\\"AAgACAA=\"],\"args\":[\"--headless\"]},\"username\":\"user\"," +
+                "\"accessKey\":\"key\",\"version\":\"latest\"},\"requiredCapabilities\":{}}", rewritten);
+        assertSameAsTree(body, rewritten, credentials("user", "key"), VERSION);
+    }
+
+    @Test
+    public void existingPropertiesAreReplacedInPlace() {
+        String body = "{ \"desiredCapabilities\" : { \"username\" : \"other\", \"version\" : \"58\", " +
+                "\"platform\" : \"ANY\" } }";
+
+        String rewritten = DesiredCapabilitiesRewriter.inject(body, credentials("user", null), VERSION);
+
+        Assert.assertEquals("{ \"desiredCapabilities\" : { \"username\" : \"user\", \"version\" : \"58\", " +
+                "\"platform\" : \"ANY\" ,\"accessKey\":null} }", rewritten);
+        assertSameAsTree(body, rewritten, credentials("user", null), VERSION);
+    }
+
+    @Test
+    public void emptyCapabilitiesGetTheProperties() {
+        String body = "{\"desiredCapabilities\":{}}";
+
+        String rewritten = DesiredCapabilitiesRewriter.inject(body, credentials("user", "key"),
+                Collections.emptyMap());
+
+        Assert.assertEquals("{\"desiredCapabilities\":{\"username\":\"user\",\"accessKey\":\"key\"}}", rewritten);
+    }
+
+    @Test
+    public void bodiesTheScannerDoesNotHandleAreRewrittenWithTheTree() {
+        String escapedName = "{\"desiredCapabilities\":{\"user\\u006eame\":\"other\"}}";
+        String invalid = "{\"desiredCapabilities\":{\"browserName\" \"chrome\"}}";
+
+        Assert.assertNull(DesiredCapabilitiesRewriter.injectWithScanner(escapedName, credentials("user", "key"),
+                VERSION));
+        Assert.assertNull(DesiredCapabilitiesRewriter.injectWithScanner(invalid, credentials("user", "key"),
+                VERSION));
+        Assert.assertEquals("{\"desiredCapabilities\":{\"username\":\"user\",\"accessKey\":\"key\"," +
+                "\"version\":\"latest\"}}", DesiredCapabilitiesRewriter.inject(escapedName,
+                credentials("user", "key"), VERSION));
+    }
+
+    private static Map<String, String> credentials(String user, String key) {
+        Map<String, String> credentials = new LinkedHashMap<>();
+        credentials.put("username", user);
+        credentials.put("accessKey", key);
+        return credentials;
+    }
+
+    private static void assertSameAsTree(String body, String rewritten, Map<String, String> properties,
+                                         Map<String, String> defaults) {
+        JsonParser jsonParser = new JsonParser();
+        Assert.assertEquals(jsonParser.parse(DesiredCapabilitiesRewriter.injectWithTree(body, properties, defaults)),
+                jsonParser.parse(rewritten));
+    }
+}
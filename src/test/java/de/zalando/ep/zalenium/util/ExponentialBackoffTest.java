@@ -0,0 +1,33 @@
+package de.zalando.ep.zalenium.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ExponentialBackoffTest {
+
+    @Test
+    public void delaysDoubleWithJitterUpToTheMaximum() {
+        AtomicLong now = new AtomicLong();
+        ExponentialBackoff backoff = new ExponentialBackoff(1000, 8000, 60000, now::get);
+
+        long[] expectedMaximums = {1000, 2000, 4000, 8000, 8000};
+        for (long expectedMaximum : expectedMaximums) {
+            long delay = backoff.nextDelayMillis();
+            Assert.assertTrue("Delay was " + delay, delay >= expectedMaximum / 2 && delay <= expectedMaximum);
+        }
+        Assert.assertEquals(5, backoff.getAttempts());
+    }
+
+    @Test
+    public void delaysStopAtTheDeadline() {
+        AtomicLong now = new AtomicLong();
+        ExponentialBackoff backoff = new ExponentialBackoff(1000, 8000, 10000, now::get);
+
+        now.set(9500);
+        Assert.assertTrue(backoff.nextDelayMillis() <= 500);
+        now.set(10000);
+        Assert.assertEquals(ExponentialBackoff.DEADLINE_REACHED, backoff.nextDelayMillis());
+    }
+}
@@ -0,0 +1,399 @@
+package de.zalando.ep.zalenium.util;
+
+import com.beust.jcommander.JCommander;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.zalando.ep.zalenium.proxy.BrowserStackRemoteProxy;
+import de.zalando.ep.zalenium.proxy.CloudTestingRemoteProxy;
+import de.zalando.ep.zalenium.proxy.SauceLabsRemoteProxy;
+import de.zalando.ep.zalenium.proxy.TestingBotRemoteProxy;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.openqa.grid.common.RegistrationRequest;
+import org.openqa.grid.internal.Registry;
+import org.openqa.grid.internal.utils.configuration.GridNodeConfiguration;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stand-in for the Cloud Testing Providers, to run sessions through the cloud proxies from start to end without
+ * reaching the real services. It serves the WebDriver endpoint, the account and test REST endpoints of Sauce Labs,
+ * BrowserStack and TestingBot, and the videos and logs of the tests. The time to create a session, the share of
+ * session requests that fail, the account concurrency and the video size can be configured.
+ *
+ * The proxies created here send the sessions to this server, and the CommonProxyUtilities returned by
+ * getCommonProxyUtilities send the REST calls and downloads of the provider hosts to it as well.
+ */
+@SuppressWarnings("WeakerAccess")
+public class FakeCloudProvider {
+
+    private static final Pattern SESSION = Pattern.compile("/wd/hub/session/([^/]+)(/.*)?");
+    private static final Pattern SAUCE_LABS_ACCOUNT = Pattern.compile("/rest/v1/users/[^/]*");
+    private static final Pattern SAUCE_LABS_CONCURRENCY = Pattern.compile("/rest/v1\\.1/users/([^/]*)/concurrency");
+    private static final Pattern SAUCE_LABS_JOB = Pattern.compile("/rest/v1/[^/]*/jobs/([^/]+)");
+    private static final Pattern BROWSER_STACK_SESSION = Pattern.compile("/automate/sessions/([^/]+)\\.json");
+    private static final Pattern TESTING_BOT_TEST = Pattern.compile("/v1/tests/([^/]+)");
+    private static final String ASSETS = "/assets/";
+    private static final String LOG_CONTENT = "{\"level\":\"INFO\",\"message\":\"log line\"}\n";
+    private static final String NEW_SESSION_BODY =
+            "{\"desiredCapabilities\":{\"browserName\":\"MicrosoftEdge\",\"platform\":\"WIN10\"}}";
+
+    private final MockWebServer server = new MockWebServer();
+    private final Map<String, Long> runningSessions = new ConcurrentHashMap<>();
+    private final AtomicInteger createdSessions = new AtomicInteger();
+    private final AtomicInteger failedSessions = new AtomicInteger();
+    private final AtomicInteger deletedSessions = new AtomicInteger();
+    private final AtomicInteger maxRunningSessions = new AtomicInteger();
+    private final AtomicInteger apiRequests = new AtomicInteger();
+    private final LongAdder servedAssetBytes = new LongAdder();
+    private volatile long sessionStartMillis;
+    private volatile double sessionFailureRate;
+    private volatile int accountConcurrency = 10;
+    private volatile byte[] video = new byte[64 * 1024];
+    private int proxyPort = 31000;
+
+    public FakeCloudProvider() {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return respond(request);
+            }
+        });
+    }
+
+    public FakeCloudProvider withSessionStartMillis(long millis) {
+        this.sessionStartMillis = millis;
+        return this;
+    }
+
+    public FakeCloudProvider withSessionFailureRate(double failureRate) {
+        this.sessionFailureRate = failureRate;
+        return this;
+    }
+
+    public FakeCloudProvider withAccountConcurrency(int concurrency) {
+        this.accountConcurrency = concurrency;
+        return this;
+    }
+
+    public FakeCloudProvider withVideoSizeBytes(int size) {
+        this.video = new byte[size];
+        ThreadLocalRandom.current().nextBytes(video);
+        return this;
+    }
+
+    public void start() throws IOException {
+        server.start();
+    }
+
+    public void shutdown() throws IOException {
+        server.shutdown();
+    }
+
+    public String getUrl() {
+        String url = server.url("/").toString();
+        return url.substring(0, url.length() - 1);
+    }
+
+    public int getCreatedSessions() {
+        return createdSessions.get();
+    }
+
+    public int getFailedSessions() {
+        return failedSessions.get();
+    }
+
+    public int getDeletedSessions() {
+        return deletedSessions.get();
+    }
+
+    public int getRunningSessions() {
+        return runningSessions.size();
+    }
+
+    public int getMaxRunningSessions() {
+        return maxRunningSessions.get();
+    }
+
+    public int getApiRequests() {
+        return apiRequests.get();
+    }
+
+    public long getServedAssetBytes() {
+        return servedAssetBytes.sum();
+    }
+
+    /*
+        Utilities that call this server instead of the provider hosts, keeping the path of the URL. Files are stored
+        under the given folder, which needs the dashboard templates (see TestUtils.ensureRequiredInputFilesExist).
+     */
+    public CommonProxyUtilities getCommonProxyUtilities(String localPath) {
+        return new CommonProxyUtilities() {
+            @Override
+            public JsonElement readJSONFromUrl(String jsonUrl, String user, String password) {
+                return super.readJSONFromUrl(redirect(jsonUrl), user, password);
+            }
+
+            @Override
+            public boolean isFileReady(String fileUrl, String user, String password, boolean authenticate) {
+                return super.isFileReady(redirect(fileUrl), user, password, authenticate);
+            }
+
+            @Override
+            public boolean downloadFileIfReady(String fileUrl, String fileNameWithFullPath, String user,
+                                               String password, boolean authenticate)
+                    throws IOException, InterruptedException {
+                return super.downloadFileIfReady(redirect(fileUrl), fileNameWithFullPath, user, password,
+                        authenticate);
+            }
+
+            @Override
+            public String currentLocalPath() {
+                return localPath;
+            }
+        };
+    }
+
+    /*
+        A proxy of the given provider whose sessions go to this server. The utilities returned by
+        getCommonProxyUtilities need to be set before, the account concurrency is fetched when the proxy is created.
+     */
+    public CloudTestingRemoteProxy newProxy(Class<? extends CloudTestingRemoteProxy> proxyClass, Registry registry) {
+        RegistrationRequest request = getRegistrationRequest(proxyClass);
+        if (proxyClass == SauceLabsRemoteProxy.class) {
+            return new SauceLabsRemoteProxy(request, registry) {
+                @Override
+                public String getCloudTestingServiceUrl() {
+                    return getUrl();
+                }
+            };
+        }
+        if (proxyClass == BrowserStackRemoteProxy.class) {
+            return new BrowserStackRemoteProxy(request, registry) {
+                @Override
+                public String getCloudTestingServiceUrl() {
+                    return getUrl();
+                }
+            };
+        }
+        if (proxyClass == TestingBotRemoteProxy.class) {
+            return new TestingBotRemoteProxy(request, registry) {
+                @Override
+                public String getCloudTestingServiceUrl() {
+                    return getUrl();
+                }
+            };
+        }
+        throw new IllegalArgumentException("No fake provider for " + proxyClass);
+    }
+
+    /*
+        Creates a session through the hub, sends a few commands and stops it, like a short test would. Returns false
+        when the session could not be created.
+     */
+    public static boolean runSession(CloseableHttpClient client, String hubUrl, int commands) throws IOException {
+        HttpPost newSession = new HttpPost(hubUrl + "/wd/hub/session");
+        newSession.setEntity(new StringEntity(NEW_SESSION_BODY, ContentType.APPLICATION_JSON));
+        JsonElement response = execute(client, newSession);
+        if (response == null || !response.isJsonObject() || !response.getAsJsonObject().has("sessionId")
+                || response.getAsJsonObject().get("sessionId").isJsonNull()) {
+            return false;
+        }
+        String sessionUrl = hubUrl + "/wd/hub/session/" + response.getAsJsonObject().get("sessionId").getAsString();
+        for (int i = 0; i < commands; i++) {
+            execute(client, new HttpGet(sessionUrl + "/url"));
+        }
+        execute(client, new HttpDelete(sessionUrl));
+        return true;
+    }
+
+    private static JsonElement execute(CloseableHttpClient client, HttpRequestBase request) throws IOException {
+        try (CloseableHttpResponse response = client.execute(request)) {
+            String body = response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity());
+            if (response.getStatusLine().getStatusCode() >= 400) {
+                return null;
+            }
+            return new JsonParser().parse(body);
+        }
+    }
+
+    private synchronized RegistrationRequest getRegistrationRequest(Class<? extends CloudTestingRemoteProxy> proxyClass) {
+        // Each proxy needs its own id, which comes from the node host and port
+        GridNodeConfiguration nodeConfiguration = new GridNodeConfiguration();
+        new JCommander(nodeConfiguration, "-role", "wd", "-hubHost", "localhost", "-hubPort", "4444",
+                "-host", "localhost", "-port", String.valueOf(proxyPort++), "-proxy", proxyClass.getCanonicalName(),
+                "-maxSession", String.valueOf(accountConcurrency));
+        return RegistrationRequest.build(nodeConfiguration);
+    }
+
+    private String redirect(String url) {
+        URI uri = URI.create(url);
+        String query = uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery();
+        return getUrl() + uri.getRawPath() + query;
+    }
+
+    private MockResponse respond(RecordedRequest request) throws InterruptedException {
+        String path = HttpUrl.parse(getUrl() + request.getPath()).encodedPath();
+        String method = request.getMethod();
+        if ("/wd/hub/session".equals(path) && "POST".equals(method)) {
+            return newSession();
+        }
+        Matcher matcher = SESSION.matcher(path);
+        if (matcher.matches()) {
+            String sessionId = matcher.group(1);
+            if (matcher.group(2) == null && "DELETE".equals(method)) {
+                if (runningSessions.remove(sessionId) != null) {
+                    deletedSessions.incrementAndGet();
+                }
+                return json(webDriverResponse(sessionId, null));
+            }
+            if (!runningSessions.containsKey(sessionId)) {
+                return json(webDriverError(6, "No active session with ID " + sessionId)).setResponseCode(404);
+            }
+            return json(webDriverResponse(sessionId, null));
+        }
+        if (path.contains(ASSETS)) {
+            return asset(path, method);
+        }
+        apiRequests.incrementAndGet();
+        if (SAUCE_LABS_ACCOUNT.matcher(path).matches()) {
+            JsonObject limit = new JsonObject();
+            limit.addProperty("overall", accountConcurrency);
+            JsonObject account = new JsonObject();
+            account.add("concurrency_limit", limit);
+            return json(account);
+        }
+        if ((matcher = SAUCE_LABS_CONCURRENCY.matcher(path)).matches()) {
+            JsonObject current = new JsonObject();
+            current.addProperty("overall", runningSessions.size());
+            JsonObject user = new JsonObject();
+            user.add("current", current);
+            JsonObject users = new JsonObject();
+            users.add(matcher.group(1), user);
+            JsonObject concurrency = new JsonObject();
+            concurrency.add("concurrency", users);
+            return json(concurrency);
+        }
+        if ((matcher = SAUCE_LABS_JOB.matcher(path)).matches()) {
+            JsonObject job = new JsonObject();
+            job.addProperty("name", "fakeTest-" + matcher.group(1));
+            job.addProperty("browser", "MicrosoftEdge");
+            job.addProperty("browser_short_version", "14");
+            job.addProperty("os", "Windows 10");
+            job.addProperty("passed", true);
+            return json(job);
+        }
+        if ("/automate/plan.json".equals(path)) {
+            JsonObject plan = new JsonObject();
+            plan.addProperty("parallel_sessions_max_allowed", accountConcurrency);
+            plan.addProperty("parallel_sessions_running", runningSessions.size());
+            return json(plan);
+        }
+        if ((matcher = BROWSER_STACK_SESSION.matcher(path)).matches()) {
+            JsonObject session = new JsonObject();
+            session.addProperty("name", "fakeTest-" + matcher.group(1));
+            session.addProperty("browser", "edge");
+            session.addProperty("browser_version", "14.0");
+            session.addProperty("os", "Windows");
+            session.addProperty("os_version", "10");
+            session.addProperty("video_url", getUrl() + ASSETS + matcher.group(1) + "/video.mp4");
+            session.addProperty("status", "done");
+            JsonObject automationSession = new JsonObject();
+            automationSession.add("automation_session", session);
+            return json(automationSession);
+        }
+        if ("/v1/user".equals(path)) {
+            JsonObject user = new JsonObject();
+            user.addProperty("max_concurrent", accountConcurrency);
+            return json(user);
+        }
+        if ((matcher = TESTING_BOT_TEST.matcher(path)).matches()) {
+            JsonObject test = new JsonObject();
+            test.addProperty("name", "fakeTest-" + matcher.group(1));
+            test.addProperty("browser", "microsoftedge");
+            test.addProperty("browser_version", "14");
+            test.addProperty("os", "WIN10");
+            test.addProperty("video", getUrl() + ASSETS + matcher.group(1) + "/video.mp4");
+            test.addProperty("success", true);
+            return json(test);
+        }
+        return new MockResponse().setResponseCode(404);
+    }
+
+    private MockResponse newSession() throws InterruptedException {
+        if (sessionStartMillis > 0) {
+            TimeUnit.MILLISECONDS.sleep(sessionStartMillis);
+        }
+        if (ThreadLocalRandom.current().nextDouble() < sessionFailureRate) {
+            failedSessions.incrementAndGet();
+            return json(webDriverError(13, "The fake provider failed to start the session"))
+                    .setResponseCode(500);
+        }
+        String sessionId = UUID.randomUUID().toString().replace("-", "");
+        runningSessions.put(sessionId, System.currentTimeMillis());
+        createdSessions.incrementAndGet();
+        maxRunningSessions.accumulateAndGet(runningSessions.size(), Math::max);
+        JsonObject capabilities = new JsonObject();
+        capabilities.addProperty("browserName", "MicrosoftEdge");
+        capabilities.addProperty("platform", "WIN10");
+        return json(webDriverResponse(sessionId, capabilities));
+    }
+
+    private MockResponse asset(String path, String method) {
+        byte[] content = path.endsWith(".mp4") || path.endsWith(".flv") ? video : LOG_CONTENT.getBytes(StandardCharsets.UTF_8);
+        MockResponse response = new MockResponse().setHeader("Content-Type", "application/octet-stream");
+        if ("HEAD".equals(method)) {
+            return response.setHeader("Content-Length", content.length);
+        }
+        servedAssetBytes.add(content.length);
+        return response.setBody(new Buffer().write(content));
+    }
+
+    private static JsonObject webDriverResponse(String sessionId, JsonElement value) {
+        JsonObject response = new JsonObject();
+        response.addProperty("sessionId", sessionId);
+        response.addProperty("status", 0);
+        response.add("value", value);
+        return response;
+    }
+
+    private static JsonObject webDriverError(int status, String message) {
+        JsonObject value = new JsonObject();
+        value.addProperty("message", message);
+        JsonObject response = new JsonObject();
+        response.add("sessionId", null);
+        response.addProperty("status", status);
+        response.add("value", value);
+        return response;
+    }
+
+    private static MockResponse json(JsonObject body) {
+        return new MockResponse().setHeader("Content-Type", "application/json;charset=utf-8")
+                .setBody(body.toString());
+    }
+}
@@ -0,0 +1,48 @@
+package de.zalando.ep.zalenium.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openqa.selenium.Platform;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.CapabilityType;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class NormalizedCapabilitiesTest {
+
+    @Test
+    public void equalCapabilitiesShareOneInstance() {
+        Map<String, Object> requestedCapability = new HashMap<>();
+        requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+        requestedCapability.put(CapabilityType.PLATFORM, Platform.LINUX);
+        requestedCapability.put(CapabilityType.VERSION, null);
+        Map<String, Object> sameCapability = new LinkedHashMap<>();
+        sameCapability.put(CapabilityType.PLATFORM, Platform.LINUX);
+        sameCapability.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+
+        NormalizedCapabilities normalized = NormalizedCapabilities.of(requestedCapability);
+        Assert.assertSame(normalized, NormalizedCapabilities.of(sameCapability));
+        Assert.assertSame(normalized, NormalizedCapabilities.of(requestedCapability));
+        Assert.assertSame(normalized.toString(), NormalizedCapabilities.of(sameCapability).toString());
+        Assert.assertEquals("{browserName=chrome, platform=LINUX}", normalized.toString());
+        Assert.assertNull(normalized.get(CapabilityType.VERSION));
+    }
+
+    @Test
+    public void changesInTheRequestedCapabilityArePickedUp() {
+        Map<String, Object> requestedCapability = new HashMap<>();
+        requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.FIREFOX);
+        NormalizedCapabilities normalized = NormalizedCapabilities.of(requestedCapability);
+
+        requestedCapability.put("screenResolution", "1920x1080");
+        NormalizedCapabilities changed = NormalizedCapabilities.of(requestedCapability);
+        Assert.assertNotSame(normalized, changed);
+        Assert.assertEquals("1920x1080", changed.get("screenResolution"));
+
+        requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+        Assert.assertEquals(BrowserType.CHROME, NormalizedCapabilities.of(requestedCapability)
+                .get(CapabilityType.BROWSER_NAME));
+    }
+}
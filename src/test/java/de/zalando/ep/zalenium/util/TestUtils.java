@@ -32,6 +32,7 @@ import java.io.IOException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
@@ -221,10 +222,19 @@ public class TestUtils {
             when(dockerClient.execStart(anyString())).thenReturn(logStream);
             doNothing().when(dockerClient).stopContainer(anyString(), anyInt());
 
-            when(dockerClient.createContainer(any(ContainerConfig.class), anyString())).thenReturn(containerCreation);
+            // Created containers are listed too, so the threads starting them do not fail after the test
+            List<Container> containers = new CopyOnWriteArrayList<>(Arrays.asList(container_40000, container_40001,
+                    zalenium));
+            when(dockerClient.createContainer(any(ContainerConfig.class), anyString())).thenAnswer(invocation -> {
+                Container created = mock(Container.class);
+                when(created.names()).thenReturn(ImmutableList.of("/" + invocation.getArgument(1)));
+                when(created.status()).thenReturn("running");
+                containers.add(created);
+                return containerCreation;
+            });
 
             when(dockerClient.listContainers(DockerClient.ListContainersParam.allContainers()))
-                    .thenReturn(Arrays.asList(container_40000, container_40001, zalenium));
+                    .thenAnswer(invocation -> new ArrayList<>(containers));
 
             when(containerConfig.labels()).thenReturn(ImmutableMap.of("selenium_firefox_version", "52",
                     "selenium_chrome_version", "58"));
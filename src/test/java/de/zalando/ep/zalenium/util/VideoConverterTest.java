@@ -0,0 +1,76 @@
+package de.zalando.ep.zalenium.util;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+public class VideoConverterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void streamsAreCopiedBeforeEncodingAgain() {
+        File source = new File("/videos/test.flv");
+        File target = new File("/videos/test.mp4");
+
+        List<String> remux = Arrays.asList(VideoConverter.remuxCommand(source, target).toStrings());
+        List<String> encode = Arrays.asList(VideoConverter.encodeCommand(source, target).toStrings());
+
+        Assert.assertTrue(remux.containsAll(Arrays.asList("-c", "copy", "+faststart")));
+        Assert.assertFalse(encode.contains("copy"));
+        Assert.assertEquals("1", encode.get(encode.indexOf("-threads") + 1));
+        Assert.assertEquals(target.getAbsolutePath(), encode.get(encode.size() - 1));
+    }
+
+    @Test
+    public void timeoutScalesWithTheVideoDuration() {
+        long shortRemux = VideoConverter.getTimeoutMillis(10, false);
+        long longRemux = VideoConverter.getTimeoutMillis(3600, false);
+        long longEncoding = VideoConverter.getTimeoutMillis(3600, true);
+
+        Assert.assertTrue(shortRemux >= 30000);
+        Assert.assertTrue(longRemux > shortRemux);
+        Assert.assertTrue(longEncoding > 3600 * 1000);
+    }
+
+    @Test
+    public void failedConversionLeavesNoTargetFile() throws Exception {
+        File source = temporaryFolder.newFile("test.flv");
+        FileUtils.writeStringToFile(source, "not a video", StandardCharsets.UTF_8);
+        File target = new File(temporaryFolder.getRoot(), "test.mp4");
+        long failedBefore = VideoConverter.getMetrics().get("failed").getAsLong();
+
+        Assert.assertFalse(VideoConverter.convertToMp4(source, target));
+
+        Assert.assertFalse(target.exists());
+        Assert.assertTrue(source.exists());
+        Assert.assertEquals(failedBefore + 1, VideoConverter.getMetrics().get("failed").getAsLong());
+    }
+
+    @Test
+    public void posterIsASmallFrameOfTheVideo() throws Exception {
+        File video = new File("/videos/test.mp4");
+        File poster = new File("/videos/logs/test/poster.jpg");
+
+        List<String> command = Arrays.asList(VideoConverter.posterCommand(video, poster, 1).toStrings());
+
+        Assert.assertTrue(command.indexOf("-ss") < command.indexOf("-i"));
+        Assert.assertEquals("1.00", command.get(command.indexOf("-ss") + 1));
+        Assert.assertEquals("1", command.get(command.indexOf("-frames:v") + 1));
+        Assert.assertEquals(poster.getAbsolutePath(), command.get(command.size() - 1));
+
+        File notAVideo = temporaryFolder.newFile("test.mp4");
+        FileUtils.writeStringToFile(notAVideo, "not a video", StandardCharsets.UTF_8);
+        File failedPoster = new File(temporaryFolder.getRoot(), "poster.jpg");
+        Assert.assertFalse(VideoConverter.createPoster(notAVideo, failedPoster, 0));
+        Assert.assertFalse(failedPoster.exists());
+    }
+}